@@ -0,0 +1,91 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.*;
+import com.charrey.game.settings.NewBlockFactory;
+import com.charrey.game.settings.Settings;
+import com.charrey.game.simulator.SerialSemanticSimulationStep;
+import com.charrey.game.simulator.SerialStateSwitchSimulationStep;
+import com.charrey.game.util.GridItem;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compares a single loop over a population that mixes WeakExplorers, SplitExplorers and RandomExplorers against the
+ * serial steps, which run each class in a loop of its own. Each benchmark method runs in forks of its own, so that the
+ * type profile the mixed loop builds up at its call sites (megamorphic) cannot leak into the loops per class
+ * (monomorphic), or the other way around. Each invocation is one step from the same seeded population, which is
+ * rebuilt before every invocation, since a step moves, splits and breaks explorers and later steps would measure a
+ * different population. A step takes milliseconds, so the timestamps around each invocation do not skew the result.
+ * The number of simulatables after the step is returned so that the step cannot be eliminated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class DispatchBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int EXPLORERS = 100_000;
+    private static final int BARRIERS = 50_000;
+
+    private final SerialSemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+    private final SerialStateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+    private SimulatableRegistry masterSet;
+
+    @Setup(Level.Invocation)
+    public void populate() {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        List<Function<Direction, NewBlockFactory<? extends Simulatable>>> factories = List.of(
+                direction -> {
+                    Settings.newBlockDirection = direction;
+                    return WeakExplorer.factory();
+                },
+                SplitExplorer::factory,
+                RandomExplorer::factory);
+        Grid grid = new Grid(SIZE, SIZE);
+        for (int i = 0; i < BARRIERS; i++) {
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        for (int i = 0; i < EXPLORERS; i++) {
+            Direction direction = directions[random.nextInt(directions.length)];
+            grid.add(factories.get(i % factories.size()).apply(direction).makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        masterSet = new SimulatableRegistry();
+        for (Simulatable simulatable : grid.getSimulatables()) {
+            simulatable.setMasterSet(masterSet);
+            if (!simulatable.isStatic()) {
+                masterSet.add(simulatable);
+            }
+        }
+        RandomExplorer.seedStreams(masterSet, 1904735);
+    }
+
+    @Benchmark
+    public int mixedLoop() {
+        masterSet.forEach(Simulatable::simulateStep);
+        masterSet.forEach(Simulatable::stateSwitchStep);
+        return commit();
+    }
+
+    @Benchmark
+    public int loopPerClass() {
+        semanticStep.executeOneStep(masterSet);
+        stateSwitchStep.nextStep(masterSet);
+        return commit();
+    }
+
+    private int commit() {
+        masterSet.forEachChangedGrid(Grid::updateMapAndDeduplicate);
+        masterSet.compact();
+        return masterSet.size();
+    }
+}
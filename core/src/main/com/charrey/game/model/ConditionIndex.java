@@ -0,0 +1,104 @@
+package com.charrey.game.model;
+
+import com.charrey.game.model.simulatable.ConditionalBarrier;
+
+import java.util.*;
+
+/**
+ * Reverse index from the cells of a Grid to the ConditionalBarriers whose condition watches them. Whenever a simulatable
+ * enters or leaves a watched cell, the barriers that watch it are marked stale, and the Grid has them update whether
+ * they block once it is done changing its occupancy. Conditions are thus evaluated once per change of what they watch,
+ * instead of on every query of a barrier. Barriers in other grids may watch the grid of this index, so the index
+ * guards itself rather than relying on the locks of the grid.
+ */
+class ConditionIndex {
+
+    private final List<ConditionalBarrier> watchers = new ArrayList<>();
+    private final Map<Integer, List<ConditionalBarrier>> watchersOfCell = new HashMap<>();
+    private final Set<ConditionalBarrier> stale = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long[] watched = new long[0];
+
+    /**
+     * Adds a barrier whose condition watches cells of the grid of this index
+     *
+     * @param barrier barrier
+     */
+    synchronized void watch(ConditionalBarrier barrier) {
+        watchers.add(barrier);
+        index(barrier);
+    }
+
+    /**
+     * Removes a barrier that was added earlier
+     *
+     * @param barrier barrier
+     */
+    synchronized void unwatch(ConditionalBarrier barrier) {
+        watchers.remove(barrier);
+        stale.remove(barrier);
+        barrier.getCondition().forEachWatchedCell(cell -> {
+            List<ConditionalBarrier> ofCell = watchersOfCell.get(cell);
+            if (ofCell != null) {
+                ofCell.remove(barrier);
+                if (ofCell.isEmpty()) {
+                    watchersOfCell.remove(cell);
+                    watched[cell >>> 6] &= ~(1L << cell);
+                }
+            }
+        });
+    }
+
+    /**
+     * Indexes all barriers anew for a grid with some number of cells, after its cells have been laid out anew, and
+     * marks them all stale
+     *
+     * @param cells number of cells of the grid
+     */
+    synchronized void reindex(int cells) {
+        watchersOfCell.clear();
+        watched = new long[(cells + 63) / 64];
+        for (ConditionalBarrier barrier : watchers) {
+            index(barrier);
+        }
+        stale.addAll(watchers);
+    }
+
+    private void index(ConditionalBarrier barrier) {
+        barrier.getCondition().forEachWatchedCell(cell -> {
+            if (cell >>> 6 >= watched.length) {
+                watched = Arrays.copyOf(watched, (cell >>> 6) + 1);
+            }
+            watched[cell >>> 6] |= 1L << cell;
+            watchersOfCell.computeIfAbsent(cell, key -> new ArrayList<>(1)).add(barrier);
+        });
+    }
+
+    /**
+     * Marks the barriers that watch a cell stale, after a simulatable entered or left that cell
+     *
+     * @param cell cell key
+     */
+    synchronized void touch(int cell) {
+        if (cell >>> 6 < watched.length && (watched[cell >>> 6] & (1L << cell)) != 0) {
+            stale.addAll(watchersOfCell.get(cell));
+        }
+    }
+
+    /**
+     * Has all stale barriers update whether they block
+     */
+    void refresh() {
+        ConditionalBarrier[] toUpdate;
+        synchronized (this) {
+            if (stale.isEmpty()) {
+                return;
+            }
+            toUpdate = stale.toArray(new ConditionalBarrier[0]);
+            stale.clear();
+        }
+        //outside the lock, as a barrier may update the blocking cells of another grid
+        for (ConditionalBarrier barrier : toUpdate) {
+            barrier.updateBlocking();
+        }
+    }
+}
@@ -3,8 +3,11 @@ package com.charrey.game.model;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.charrey.game.model.simulatable.Barrier;
+import com.charrey.game.model.simulatable.ConditionalBarrier;
+import com.charrey.game.model.simulatable.DirectionalSimulatable;
 import com.charrey.game.model.simulatable.EdgeType;
 import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableSet;
 import com.charrey.game.model.simulatable.subgrid.SubGrid;
 import com.charrey.game.texture.CachedTexture;
 import com.charrey.game.texture.Drawable;
@@ -14,8 +17,10 @@ import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 /**
  * Class that houses the entire model that can be specified or simulated. This consists of a 2D grid with simulatable
@@ -24,6 +29,12 @@ import java.util.concurrent.CopyOnWriteArraySet;
 public class Grid {
 
     private static final CachedTexture emptyGridItem;
+    private static final Comparator<Simulatable> BY_ID = Comparator.comparingLong(Simulatable::getId);
+    private static final Comparator<Simulatable> BY_STATE = Comparator.<Simulatable>comparingInt(simulatable -> simulatable.getLocation().y())
+            .thenComparingInt(simulatable -> simulatable.getLocation().x())
+            .thenComparing(simulatable -> simulatable.getClass().getName())
+            .thenComparingInt(simulatable -> simulatable instanceof DirectionalSimulatable directional ? directional.getDirection().ordinal() : -1);
+    private static final Predicate<Simulatable> BARRIER = Barrier.class::isInstance;
 
     static {
         emptyGridItem = new CachedTexture() {
@@ -40,8 +51,22 @@ public class Grid {
     private final Map<Direction, Set<Integer>> exports;
     private final Map<Direction, Set<Integer>> pads;
     private final Set<Simulatable> simulatables;
-    private final Map<GridItem, Set<Simulatable>> map = new ConcurrentHashMap<>(); //only updated in stateChange
+    private final OccupancyIndex occupancy;
+    private final ConditionIndex conditions = new ConditionIndex(); //barriers whose condition watches cells of this grid
+    private long[] blockingCells; //one bit per cell, set iff a blocking barrier occupies it
+    private volatile OccupancyCounts counts = null; //built on first use by a condition on a region
+    private final Object occupancyLock = new Object();
+    private final List<StagedChanges> stagingBuffers = new CopyOnWriteArrayList<>(); //merged in updateMapAndDeduplicate
+    private final ThreadLocal<StagedChanges> stagingBuffer = ThreadLocal.withInitial(this::newStagingBuffer);
+    private final AtomicBoolean changesStaged = new AtomicBoolean();
+    private Simulatable[] merged = new Simulatable[16]; //reused by each updateMapAndDeduplicate, so that it does not allocate
+    private int mergedCount = 0;
+    private GridItem[] items; //flyweights, created on first use
+    private final Object portalLock = new Object();
+    private volatile PortalTable portals = null; //built on first use after a change to the edges or SubGrids
     private SubGrid parent = null;
+    private long hashedZobristId = Zobrist.ROOT_GRID;
+    private long randomSeed = ThreadLocalRandom.current().nextLong(); //drawn anew for each model, unless one is set
     private int width;
     private int height;
 
@@ -54,13 +79,10 @@ public class Grid {
     public Grid(int width, int height) {
         this.width = width;
         this.height = height;
-        this.simulatables = Collections.synchronizedSet(new HashSet<>());
-        for (int columnIndex = 0; columnIndex < width; columnIndex++) {
-            for (int rowIndex = 0; rowIndex < height; rowIndex++) {
-                GridItem gridItem = new GridItem(columnIndex, rowIndex);
-                map.put(gridItem, new CopyOnWriteArraySet<>());
-            }
-        }
+        this.simulatables = Collections.synchronizedSet(new SimulatableSet()); //duplicate simulatables are removed explicitly
+        this.occupancy = new OccupancyIndex(width, height, this::cellChanged);
+        this.blockingCells = new long[(width * height + 63) / 64];
+        this.items = new GridItem[width * height];
         this.exports = new EnumMap<>(Direction.class);
         this.pads = new EnumMap<>(Direction.class);
         for (Direction direction : Direction.values()) {
@@ -83,6 +105,7 @@ public class Grid {
         } else {
             exports.get(direction).remove(index);
         }
+        portals = null;
         assert CollectionUtils.separate(pads.get(direction), exports.get(direction));
     }
 
@@ -100,6 +123,7 @@ public class Grid {
         } else {
             pads.get(direction).remove(index);
         }
+        portals = null;
         assert CollectionUtils.separate(pads.get(direction), exports.get(direction));
     }
 
@@ -142,6 +166,29 @@ public class Grid {
      */
     public void setParent(SubGrid parent) {
         this.parent = parent;
+        this.portals = null;
+    }
+
+    /**
+     * Returns the seed from which the random streams of the RandomExplorers are derived when a simulation of this model
+     * starts. Two simulations of the same model with the same seed make the same random choices, whichever execution
+     * types they use. The seed is stored in the save file. A new model, or a model loaded from a file without a seed,
+     * has a seed drawn at random, so that different models do not all make the same choices.
+     *
+     * @return the seed
+     */
+    public long getRandomSeed() {
+        return randomSeed;
+    }
+
+    /**
+     * Sets the seed from which the random streams of the RandomExplorers are derived when a simulation of this model
+     * starts
+     *
+     * @param randomSeed the seed
+     */
+    public void setRandomSeed(long randomSeed) {
+        this.randomSeed = randomSeed;
     }
 
     /**
@@ -152,12 +199,19 @@ public class Grid {
     public void copy(Grid other) {
         this.width = other.width;
         this.height = other.height;
+        this.randomSeed = other.randomSeed;
+        resizeItems();
+        detachConditions();
         this.simulatables.clear();
-        other.simulatables.forEach(simulatable -> simulatables.add(simulatable.copy()));
+        //copy in order of id, so that the copies have the same relative ids as the originals and deduplicate alike
+        Simulatable[] originals = other.simulatables.toArray(new Simulatable[0]);
+        Arrays.sort(originals, BY_ID);
+        for (Simulatable original : originals) {
+            simulatables.add(original.copy());
+        }
         Grid thisGrid = this;
         this.simulatables.forEach(simulatable -> simulatable.setContainingGrid(thisGrid));
-        map.clear();
-        updateMapAndDeduplicate();
+        rebuildMapAndDeduplicate();
         for (Direction direction : Direction.values()) {
             exports.get(direction).clear();
             for (Integer index : other.getExport(direction)) {
@@ -171,18 +225,67 @@ public class Grid {
     }
 
     /**
-     * Adds a simulatable to this model
+     * Adds a simulatable to this model. If a duplicate of it already occupies the same location, the added simulatable
+     * is discarded.
      *
      * @param simulatable simulatable to add
      */
     public void add(Simulatable simulatable) {
+        spawn(simulatable);
+        updateMapAndDeduplicate();
+    }
+
+    /**
+     * Adds a simulatable to this model during the state switch of a simulation step. Unlike {@link #add(Simulatable)},
+     * this defers joining the grid, occupying it and deduplicating to the next call to
+     * {@link #updateMapAndDeduplicate()}, so that simulatables that have not switched state yet cannot be mistaken for
+     * duplicates.
+     *
+     * @param simulatable simulatable to add
+     * @return true iff this is the first pending change since the previous call to {@link #updateMapAndDeduplicate()}
+     */
+    public boolean spawn(Simulatable simulatable) {
         outOfBoundsCheck("X", 0, width - 1, simulatable.getLocation().x());
         outOfBoundsCheck("Y", 0, height - 1, simulatable.getLocation().y());
         outOfBoundsCheck("width", 1, width, simulatable.getWidth());
         outOfBoundsCheck("height", 1, height, simulatable.getHeight());
-        simulatables.add(simulatable);
         simulatable.setContainingGrid(this);
-        updateMapAndDeduplicate();
+        stagingBuffer.get().spawned.add(simulatable);
+        return stageChange();
+    }
+
+    /**
+     * Records that the location or other identifying state of a simulatable in this model has changed. The occupancy
+     * of the grid is updated on the next call to {@link #updateMapAndDeduplicate()}.
+     *
+     * @param simulatable simulatable that changed
+     * @return true iff this is the first pending change since the previous call to {@link #updateMapAndDeduplicate()}
+     */
+    public boolean relocate(Simulatable simulatable) {
+        stagingBuffer.get().relocated.add(simulatable);
+        return stageChange();
+    }
+
+    /**
+     * Removes a simulatable from this model during the state switch of a simulation step. Unlike
+     * {@link #remove(Simulatable)}, this defers leaving the grid to the next call to {@link #updateMapAndDeduplicate()}.
+     *
+     * @param simulatable simulatable to remove
+     * @return true iff this is the first pending change since the previous call to {@link #updateMapAndDeduplicate()}
+     */
+    public boolean despawn(Simulatable simulatable) {
+        stagingBuffer.get().removed.add(simulatable);
+        return stageChange();
+    }
+
+    private boolean stageChange() {
+        return !changesStaged.get() && changesStaged.compareAndSet(false, true);
+    }
+
+    private StagedChanges newStagingBuffer() {
+        StagedChanges res = new StagedChanges();
+        stagingBuffers.add(res);
+        return res;
     }
 
     private void outOfBoundsCheck(String propertyName, int lowerBound, int upperBound, int actualValue) {
@@ -199,12 +302,14 @@ public class Grid {
     public void remove(GridItem location) {
         outOfBoundsCheck("X", 0, width - 1, location.x());
         outOfBoundsCheck("Y", 0, height - 1, location.y());
-        if (!map.containsKey(location)) {
-            return;
+        List<Simulatable> toRemove = new ArrayList<>();
+        synchronized (occupancyLock) {
+            int cell = occupancy.cell(location.x(), location.y());
+            for (int slot = occupancy.head(cell); slot != OccupancyIndex.NONE; slot = occupancy.next(slot)) {
+                toRemove.add(occupancy.occupant(slot));
+            }
         }
-        Set<Simulatable> simulatablesAtCoordinates = map.get(location);
-        simulatablesAtCoordinates.forEach(simulatables::remove);
-        updateMapAndDeduplicate();
+        toRemove.forEach(this::remove);
     }
 
     /**
@@ -214,6 +319,13 @@ public class Grid {
      */
     public void remove(Simulatable simulatable) {
         simulatables.remove(simulatable);
+        synchronized (occupancyLock) {
+            displace(simulatable);
+        }
+        if (simulatable instanceof SubGrid) {
+            portals = null;
+        }
+        conditions.refresh();
     }
 
     /**
@@ -223,7 +335,10 @@ public class Grid {
      * @return view of all simulatables at those coordinates
      */
     public Set<Simulatable> getAtStrictGridLocation(GridItem location) {
-        return Collections.unmodifiableSet(Objects.requireNonNullElse(map.get(location), Collections.emptySet()));
+        if (!occupancy.contains(location.x(), location.y())) {
+            return Collections.emptySet();
+        }
+        return occupancy.view(occupancy.cell(location.x(), location.y()));
     }
 
     /**
@@ -233,7 +348,102 @@ public class Grid {
      * @return view of all simulatables at those coordinates
      */
     public Set<Simulatable> getAtWrappedGridLocation(GridItem location) {
-        return getAtStrictGridLocation(new GridItem(Math.floorMod(location.x(), width), Math.floorMod(location.y(), height)));
+        return getAtCell(cell(location.x(), location.y()));
+    }
+
+    /**
+     * Returns a view of all simulatables in a specific cell
+     *
+     * @param cell cell key, see {@link #cell(int, int)}
+     * @return view of all simulatables in that cell
+     */
+    public Set<Simulatable> getAtCell(int cell) {
+        return occupancy.view(cell);
+    }
+
+    /**
+     * Returns the key of the cell at specific coordinates, correcting for coordinates outside the model. Cells are
+     * numbered row by row from the bottom left ({@code y * width + x}), so that the simulation can address them with a
+     * single int instead of a GridItem.
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return cell key
+     */
+    public int cell(int x, int y) {
+        return occupancy.wrappedCell(x, y);
+    }
+
+    /**
+     * Returns the key of the cell at a location inside the model
+     *
+     * @param location location
+     * @return cell key
+     */
+    public int cellOf(GridItem location) {
+        return occupancy.cell(location.x(), location.y());
+    }
+
+    /**
+     * Returns the horizontal coordinate of a cell
+     *
+     * @param cell cell key
+     * @return horizontal coordinate
+     */
+    public int cellX(int cell) {
+        return cell % width;
+    }
+
+    /**
+     * Returns the vertical coordinate of a cell
+     *
+     * @param cell cell key
+     * @return vertical coordinate
+     */
+    public int cellY(int cell) {
+        return cell / width;
+    }
+
+    /**
+     * Returns the key of the cell adjacent to a cell in a specific direction, wrapping around the edges of the model
+     *
+     * @param cell      cell key
+     * @param direction direction of the adjacent cell
+     * @return key of the adjacent cell
+     */
+    public int neighbour(int cell, Direction direction) {
+        return switch (direction) {
+            case UP -> cell >= (height - 1) * width ? cell - (height - 1) * width : cell + width;
+            case DOWN -> cell < width ? cell + (height - 1) * width : cell - width;
+            case LEFT -> cell % width == 0 ? cell + width - 1 : cell - 1;
+            case RIGHT -> cell % width == width - 1 ? cell - width + 1 : cell + 1;
+        };
+    }
+
+    /**
+     * Returns the location of a cell. Each cell has a single GridItem instance per grid dimensions, so that code that
+     * needs locations as objects does not allocate one each time.
+     *
+     * @param cell cell key
+     * @return location of the cell
+     */
+    public GridItem item(int cell) {
+        GridItem[] cache = items;
+        GridItem res = cache[cell];
+        if (res == null) {
+            //threads racing here create equal instances; either may be kept
+            res = new GridItem(cell % width, cell / width);
+            cache[cell] = res;
+        }
+        return res;
+    }
+
+    private void resizeItems() {
+        if (items.length != width * height) {
+            items = new GridItem[width * height];
+        } else {
+            Arrays.fill(items, null); //the same number of cells may be laid out differently
+        }
     }
 
     /**
@@ -264,33 +474,335 @@ public class Grid {
     public void clear(int width, int height) {
         this.width = width;
         this.height = height;
+        this.randomSeed = ThreadLocalRandom.current().nextLong();
+        resizeItems();
+        detachConditions();
         simulatables.clear();
-        map.clear();
+        synchronized (occupancyLock) {
+            occupancy.reset(width, height);
+            blockingCells = new long[(width * height + 63) / 64];
+            counts = null;
+            stagingBuffers.forEach(StagedChanges::clear);
+        }
+        portals = null;
+        conditions.reindex(width * height);
+        conditions.refresh();
     }
 
     /**
-     * Recalculates the map based on the containing simulatables and removes any duplicate simulatables at the same location.
+     * Merges all changes recorded since the previous call, by any thread, into the map and removes any changed
+     * simulatables that duplicate another simulatable at the same location. Removals are applied first; the other
+     * changes are applied in order of simulatable id, so that the outcome (such as which of two duplicates remains)
+     * does not depend on which threads recorded the changes or in what order. The cost is proportional to the number
+     * of changes rather than to the number of simulatables in this model. This must not be called while other threads
+     * record changes to this grid.
      */
     public void updateMapAndDeduplicate() {
-        //remove map entries that are no longer valid
-        for (Map.Entry<GridItem, Set<Simulatable>> entry : map.entrySet()) {
-            entry.getValue().removeIf(simulatable -> !simulatables.contains(simulatable) || !simulatable.getLocation().equals(entry.getKey()));
-        }
-        map.entrySet().removeIf(e -> e.getValue().isEmpty());
-        //add map entries
-        List<Simulatable> simulatablesCopy = new ArrayList<>(simulatables);
-        for (Simulatable simulatable : simulatablesCopy) {
-            for (GridItem location : simulatable.getLocations()) {
-                location = new GridItem(Math.floorMod(location.x(), getWidth()), Math.floorMod(location.y(), getHeight()));
-                map.computeIfAbsent(location, coords -> Collections.synchronizedSet(new HashSet<>()));
-                Set<Simulatable> simulatablesAtLocation = map.get(location);
-                if (simulatablesAtLocation.stream().anyMatch(x -> x != simulatable && x.equals(simulatable))) {
+        synchronized (occupancyLock) {
+            changesStaged.set(false);
+            //indexed loops throughout, as iterators would be allocated anew on each step
+            for (int i = 0; i < stagingBuffers.size(); i++) {
+                StagedChanges staged = stagingBuffers.get(i);
+                for (int j = 0; j < staged.removed.size(); j++) {
+                    Simulatable simulatable = staged.removed.get(j);
+                    simulatables.remove(simulatable);
+                    displace(simulatable);
+                    if (simulatable instanceof SubGrid) {
+                        portals = null;
+                    }
+                }
+                for (int j = 0; j < staged.spawned.size(); j++) {
+                    Simulatable simulatable = staged.spawned.get(j);
+                    if (simulatable.getContainerGrid() == this) {
+                        merge(simulatable);
+                    }
+                }
+            }
+            sortMergedById();
+            for (int i = 0; i < mergedCount; i++) {
+                simulatables.add(merged[i]);
+            }
+            for (int i = stagingBuffers.size() - 1; i >= 0; i--) {
+                StagedChanges staged = stagingBuffers.get(i);
+                for (int j = 0; j < staged.relocated.size(); j++) {
+                    Simulatable simulatable = staged.relocated.get(j);
+                    if (simulatables.contains(simulatable)) {
+                        merge(simulatable);
+                    }
+                }
+                staged.clear();
+                if (!staged.owner.isAlive()) {
+                    //short-lived (e.g. virtual) threads would otherwise leave a buffer behind each
+                    stagingBuffers.remove(i);
+                }
+            }
+            sortMergedById();
+            Simulatable previous = null;
+            for (int i = 0; i < mergedCount; i++) {
+                Simulatable simulatable = merged[i];
+                if (simulatable == previous) {
+                    continue;
+                }
+                previous = simulatable;
+                displace(simulatable);
+                if (simulatable instanceof SubGrid) {
+                    portals = null;
+                }
+                if (isDuplicate(simulatable)) {
                     simulatables.remove(simulatable);
+                    simulatable.removeFromMaster();
                 } else {
-                    simulatablesAtLocation.add(simulatable);
+                    place(simulatable);
                 }
             }
+            Arrays.fill(merged, 0, mergedCount, null);
+            mergedCount = 0;
+        }
+        conditions.refresh();
+    }
+
+    private void merge(Simulatable simulatable) {
+        if (mergedCount == merged.length) {
+            merged = Arrays.copyOf(merged, 2 * mergedCount);
         }
+        merged[mergedCount++] = simulatable;
+    }
+
+    /**
+     * Sorts the simulatables merged so far by id, in place. This is a heapsort rather than a library sort, as the latter
+     * allocates a temporary array on each call. It is not stable, which does not matter here: simulatables with the same
+     * id are the same simulatable.
+     */
+    private void sortMergedById() {
+        for (int i = mergedCount / 2 - 1; i >= 0; i--) {
+            siftDown(i, mergedCount);
+        }
+        for (int end = mergedCount - 1; end > 0; end--) {
+            Simulatable largest = merged[0];
+            merged[0] = merged[end];
+            merged[end] = largest;
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(int root, int end) {
+        Simulatable item = merged[root];
+        int child;
+        while ((child = 2 * root + 1) < end) {
+            if (child + 1 < end && merged[child + 1].getId() > merged[child].getId()) {
+                child++;
+            }
+            if (merged[child].getId() <= item.getId()) {
+                break;
+            }
+            merged[root] = merged[child];
+            root = child;
+        }
+        merged[root] = item;
+    }
+
+    private void rebuildMapAndDeduplicate() {
+        portals = null;
+        synchronized (occupancyLock) {
+            occupancy.reset(width, height);
+            blockingCells = new long[(width * height + 63) / 64];
+            counts = null;
+            stagingBuffers.forEach(StagedChanges::clear);
+            conditions.reindex(width * height);
+            List<Simulatable> simulatablesCopy = new ArrayList<>(simulatables);
+            for (Simulatable simulatable : simulatablesCopy) {
+                if (isDuplicate(simulatable)) {
+                    simulatables.remove(simulatable);
+                } else {
+                    place(simulatable);
+                }
+            }
+        }
+        conditions.refresh();
+    }
+
+    /**
+     * Marks the cells covered by a simulatable as occupied by it. A barrier also marks its cell as blocking if it
+     * blocks, and a ConditionalBarrier starts watching the cells its condition depends on.
+     *
+     * @param simulatable simulatable to place
+     */
+    private void place(Simulatable simulatable) {
+        occupancy.place(simulatable, simulatable.getLocation().x(), simulatable.getLocation().y(), simulatable.getWidth(), simulatable.getHeight(), zobristKey(simulatable));
+        if (simulatable instanceof ConditionalBarrier barrier) {
+            barrier.attachCondition();
+        }
+        if (simulatable instanceof Barrier) {
+            refreshBlocking(occupancy.cell(simulatable.getLocation().x(), simulatable.getLocation().y()));
+        }
+    }
+
+    private void displace(Simulatable simulatable) {
+        if (occupancy.displace(simulatable) && simulatable instanceof Barrier) {
+            if (simulatable instanceof ConditionalBarrier barrier) {
+                barrier.detachCondition();
+            }
+            refreshBlocking(occupancy.cell(simulatable.getLocation().x(), simulatable.getLocation().y()));
+        }
+    }
+
+    private void detachConditions() {
+        synchronized (simulatables) {
+            for (Simulatable simulatable : simulatables) {
+                if (simulatable instanceof ConditionalBarrier barrier) {
+                    barrier.detachCondition();
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes whether a barrier that blocks occupies a cell, after a barrier in that cell was placed, displaced, or
+     * started or stopped blocking
+     *
+     * @param cell cell key, see {@link #cell(int, int)}
+     */
+    public void refreshBlocking(int cell) {
+        synchronized (occupancyLock) {
+            boolean blocking = false;
+            for (int slot = occupancy.head(cell); slot != OccupancyIndex.NONE && !blocking; slot = occupancy.next(slot)) {
+                blocking = occupancy.occupant(slot) instanceof Barrier barrier && barrier.isBlocking();
+            }
+            if (blocking) {
+                blockingCells[cell >>> 6] |= 1L << cell;
+            } else {
+                blockingCells[cell >>> 6] &= ~(1L << cell);
+            }
+        }
+    }
+
+    /**
+     * Starts tracking a ConditionalBarrier whose condition depends on the occupancy of this grid, so that it updates
+     * whether it blocks whenever a simulatable enters or leaves a cell that its condition watches
+     *
+     * @param barrier barrier, whose condition watches this grid
+     */
+    public void watch(ConditionalBarrier barrier) {
+        conditions.watch(barrier);
+    }
+
+    /**
+     * Stops tracking a ConditionalBarrier that was tracked through {@link #watch(ConditionalBarrier)}
+     *
+     * @param barrier barrier
+     */
+    public void unwatch(ConditionalBarrier barrier) {
+        conditions.unwatch(barrier);
+    }
+
+    private void cellChanged(int cell, int delta, Simulatable occupant) {
+        conditions.touch(cell);
+        OccupancyCounts res = counts;
+        if (res != null && occupant instanceof DirectionalSimulatable) {
+            res.add(cell % width, cell / width, delta);
+        }
+    }
+
+    /**
+     * Returns the number of explorers that occupy the cells of a rectangle of this grid, counting an explorer once for
+     * each cell of the rectangle it covers. Barriers and SubGrids are not counted, so that a region may contain walls,
+     * or the ConditionalBarrier that refers to it. The part of the rectangle outside the grid is ignored. Counts are
+     * kept in a Fenwick tree that is built on the first call, so each call takes logarithmic time, however large the
+     * rectangle.
+     *
+     * @param x      horizontal coordinate of the left-bottommost cell of the rectangle
+     * @param y      vertical coordinate of the left-bottommost cell of the rectangle
+     * @param width  width of the rectangle
+     * @param height height of the rectangle
+     * @return the number of explorers
+     */
+    public int countExplorersInRegion(int x, int y, int width, int height) {
+        int left = Math.max(x, 0);
+        int bottom = Math.max(y, 0);
+        int right = Math.min(x + width, this.width);
+        int top = Math.min(y + height, this.height);
+        if (left >= right || bottom >= top) {
+            return 0;
+        }
+        return occupancyCounts().count(left, bottom, right - left, top - bottom);
+    }
+
+    private OccupancyCounts occupancyCounts() {
+        OccupancyCounts res = counts;
+        if (res == null) {
+            synchronized (occupancyLock) {
+                res = counts;
+                if (res == null) {
+                    res = new OccupancyCounts(width, height);
+                    for (int cell = 0; cell < width * height; cell++) {
+                        for (int slot = occupancy.head(cell); slot != OccupancyIndex.NONE; slot = occupancy.next(slot)) {
+                            if (occupancy.occupant(slot) instanceof DirectionalSimulatable) {
+                                res.add(cell % width, cell / width, 1);
+                            }
+                        }
+                    }
+                    counts = res;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns whether any simulatable occupies a cell
+     *
+     * @param cell cell key, see {@link #cell(int, int)}
+     * @return true iff the cell is occupied
+     */
+    public boolean isOccupied(int cell) {
+        return occupancy.head(cell) != OccupancyIndex.NONE;
+    }
+
+    private long zobristKey(Simulatable simulatable) {
+        int direction = simulatable instanceof DirectionalSimulatable directional ? directional.getDirection().ordinal() : Zobrist.NO_DIRECTION;
+        return Zobrist.key(getZobristId(), occupancy.cell(simulatable.getLocation().x(), simulatable.getLocation().y()), simulatable.getClass(), direction);
+    }
+
+    /**
+     * Returns the identifier of this grid used in Zobrist keys. It depends only on where this grid is nested in the
+     * model, so that copies of a model hash identically.
+     *
+     * @return the identifier
+     */
+    public long getZobristId() {
+        if (parent == null || parent.getContainerGrid() == null) {
+            return Zobrist.ROOT_GRID;
+        }
+        return Zobrist.subgrid(parent.getContainerGrid().getZobristId(), parent.getLocation().x(), parent.getLocation().y());
+    }
+
+    /**
+     * Returns a hash of the simulatables that currently occupy this grid (not including nested grids): the exclusive or
+     * of their Zobrist keys. It is updated incrementally by {@link #updateMapAndDeduplicate()}, so changes that are
+     * still pending are not reflected. Keys computed before this grid was nested where it is now are recomputed once.
+     *
+     * @return the hash
+     */
+    public long getStateHash() {
+        synchronized (occupancyLock) {
+            long zobristId = getZobristId();
+            if (zobristId != hashedZobristId) {
+                hashedZobristId = zobristId;
+                occupancy.rekey(this::zobristKey);
+            }
+            return occupancy.hash();
+        }
+    }
+
+    private boolean isDuplicate(Simulatable simulatable) {
+        for (int x = 0; x < simulatable.getWidth(); x++) {
+            for (int y = 0; y < simulatable.getHeight(); y++) {
+                if (occupancy.containsDuplicate(occupancy.wrappedCell(simulatable.getLocation().x() + x, simulatable.getLocation().y() + y), simulatable)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     /**
@@ -311,6 +823,33 @@ public class Grid {
         return height;
     }
 
+    /**
+     * Returns whether this grid is in the same state as another one: whether both hold simulatables in the same states
+     * (see {@link Simulatable#sameState(Simulatable)}), including those in nested grids. Unlike a comparison of
+     * {@link #getStateHash()}, this cannot mistake two different states for the same one.
+     *
+     * @param other grid to compare to
+     * @return true iff both grids are in the same state
+     */
+    public boolean sameState(Grid other) {
+        if (width != other.width || height != other.height) {
+            return false;
+        }
+        Simulatable[] these = simulatables.toArray(new Simulatable[0]);
+        Simulatable[] those = other.simulatables.toArray(new Simulatable[0]);
+        if (these.length != those.length) {
+            return false;
+        }
+        Arrays.sort(these, BY_STATE);
+        Arrays.sort(those, BY_STATE);
+        for (int i = 0; i < these.length; i++) {
+            if (!these[i].sameState(those[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
 
     @Override
     public String toString() {
@@ -318,12 +857,8 @@ public class Grid {
         sb.append("Grid with ").append(simulatables.size()).append(" simulatables").append("\n");
         for (int row = height - 1; row >= 0; row--) {
             for (int column = 0; column < width; column++) {
-                Set<Simulatable> atLocation = map.get(new GridItem(column, row));
-                if (atLocation != null) {
-                    sb.append(StringUtils.rightPad(map.get(new GridItem(column, row)).stream().map(Simulatable::shortName).toList().toString(), 10, " "));
-                } else {
-                    sb.append("[]        ");
-                }
+                Set<Simulatable> atLocation = occupancy.view(occupancy.cell(column, row));
+                sb.append(StringUtils.rightPad(atLocation.stream().map(Simulatable::shortName).toList().toString(), 10, " "));
             }
             sb.append("\n");
         }
@@ -340,18 +875,76 @@ public class Grid {
      * @return type of edge present
      */
     public EdgeType gridEdgeInDirection(GridItem location, Direction direction) {
-        EdgeType ifAtEdge = EdgeType.UNMARKED;
-        if (getExport(direction).contains(direction.isHorizontal() ? location.y() : location.x())) {
-            ifAtEdge = EdgeType.EXPORT;
-        } else if (getPad(direction).contains(direction.isHorizontal() ? location.y() : location.x())) {
-            ifAtEdge = EdgeType.PAD;
-        }
-        return switch (direction) {
-            case UP -> location.y() == getHeight() - 1 ? ifAtEdge : EdgeType.EMPTY;
-            case DOWN -> location.y() == 0 ? ifAtEdge : EdgeType.EMPTY;
-            case LEFT -> location.x() == 0 ? ifAtEdge : EdgeType.EMPTY;
-            case RIGHT -> location.x() == getWidth() - 1 ? ifAtEdge : EdgeType.EMPTY;
+        return gridEdgeInDirection(cellOf(location), direction);
+    }
+
+    /**
+     * This method provides information on whether a particular cell of the grid is at an edge (on a specific face of
+     * the cell) and whether that face is marked as exported or padded.
+     *
+     * @param cell      cell key, see {@link #cell(int, int)}
+     * @param direction direction from that cell
+     * @return type of edge present
+     */
+    public EdgeType gridEdgeInDirection(int cell, Direction direction) {
+        int x = cell % width;
+        int y = cell / width;
+        boolean atEdge = switch (direction) {
+            case UP -> y == height - 1;
+            case DOWN -> y == 0;
+            case LEFT -> x == 0;
+            case RIGHT -> x == width - 1;
         };
+        if (!atEdge) {
+            return EdgeType.EMPTY;
+        }
+        return portals().edgeType(direction, direction.isHorizontal() ? y : x);
+    }
+
+    /**
+     * Returns the cell of the grid around the parent SubGrid that a simulatable enters when it crosses an exported edge
+     * of this grid
+     *
+     * @param cell      key of a cell at that edge, see {@link #cell(int, int)}
+     * @param direction direction of the edge from that cell
+     * @return cell key in the grid that contains the parent SubGrid
+     */
+    public int exitCell(int cell, Direction direction) {
+        return portals().edgeTarget(direction, direction.isHorizontal() ? cellY(cell) : cellX(cell));
+    }
+
+    /**
+     * Returns where a simulatable of a single cell would end up when moving from a cell in a specific direction into
+     * the edge of a SubGrid
+     *
+     * @param cell      cell key, see {@link #cell(int, int)}
+     * @param direction direction of movement
+     * @return the portal into the grid of the SubGrid, or null if no SubGrid resides in that direction
+     */
+    public Portal portal(int cell, Direction direction) {
+        return portals().portal(cell, direction);
+    }
+
+    private PortalTable portals() {
+        PortalTable res = portals;
+        if (res == null) {
+            synchronized (portalLock) {
+                res = portals;
+                if (res == null) {
+                    List<SubGrid> subGrids = new ArrayList<>();
+                    synchronized (simulatables) {
+                        for (Simulatable simulatable : simulatables) {
+                            if (simulatable instanceof SubGrid subGrid) {
+                                subGrids.add(subGrid);
+                            }
+                        }
+                    }
+                    res = new PortalTable(this, subGrids);
+                    portals = res;
+                }
+            }
+        }
+        return res;
     }
 
     /**
@@ -366,70 +959,184 @@ public class Grid {
      * @return true iff movement would be blocked
      */
     public boolean blockedInDirection(GridItem fromLocation, Direction direction, int width, int height) {
-        return switch (gridEdgeInDirection(fromLocation, direction)) {
-            case EMPTY, PAD, UNMARKED -> {
-                boolean blockedByBarrier = getInDirection(fromLocation, direction, width, height).stream().anyMatch(obj -> obj instanceof Barrier barrier && barrier.isBlocking());
-                if (blockedByBarrier) {
-                    yield true;
-                }
-                yield getInDirection(fromLocation, direction, width, height).stream().anyMatch(simulatable -> {
-                    if (simulatable instanceof SubGrid subGrid) {
-                        if (direction.isHorizontal()) {
-                            return !subGrid.isInwardLinked(direction.opposite(), fromLocation.y() - subGrid.getLocation().y());
-                        } else {
-                            return !subGrid.isInwardLinked(direction.opposite(), fromLocation.x() - subGrid.getLocation().x());
-                        }
-                    } else {
-                        return false;
-                    }
-                });
-            }
-            case EXPORT -> {
-                SubGrid parent = getParent();
-                if (parent == null) {
-                    yield false;
-                }
-                GridItem linkedTo = parent.getOutwardLink(direction, direction.isHorizontal() ? fromLocation.y() : fromLocation.x());
-                linkedTo = linkedTo.copyInDirection(direction.opposite());
-                yield blockedInDirection(linkedTo, direction, width, height);
+        return blockedInDirection(cellOf(fromLocation), direction, width, height);
+    }
+
+    /**
+     * This method provides information on whether a movement from a specific cell in the grid in a given direction
+     * of a simulatable with specific width and height would be blocked by a barrier, subgrid with padded edge or otherwise
+     * blocking simulatable.
+     *
+     * @param fromCell  key of the cell moved from, see {@link #cell(int, int)}
+     * @param direction direction from that cell
+     * @param width     width of the requesting simulatable
+     * @param height    height of the requesting simulatable
+     * @return true iff movement would be blocked
+     */
+    public boolean blockedInDirection(int fromCell, Direction direction, int width, int height) {
+        Grid grid = this;
+        int cell = fromCell;
+        //an exported edge is blocked iff the edge of the parent SubGrid is blocked from within its own grid
+        while (grid.gridEdgeInDirection(cell, direction) == EdgeType.EXPORT) {
+            if (grid.parent == null || grid.parent.getContainerGrid() == null) {
+                return false;
             }
-        };
+            Grid container = grid.parent.getContainerGrid();
+            cell = container.neighbour(grid.exitCell(cell, direction), direction.opposite());
+            grid = container;
+        }
+        return grid.blockingBarrierInDirection(cell, direction, width, height)
+                || grid.blockingSubGridInDirection(cell, direction, width, height);
     }
 
 
     /**
-     * Returns the set of simulatables that reside in a specific direction of a location (additive across its width/height)
+     * Returns the set of simulatables that reside in a specific direction of a location (additive across its width/height).
+     * This allocates a new set on each call, so it is not meant for the simulation step, which uses
+     * {@link #anyInDirection(int, Direction, int, int, Predicate)} instead.
      *
      * @param location  location
      * @param direction direction of which to request simulatables
      * @param width     width of the requesting simulatable
      * @param height    height of the requesting simulatable
-     * @return a view of simulatables in that direction
+     * @return an unmodifiable set of simulatables in that direction
      */
     public @NotNull Set<Simulatable> getInDirection(GridItem location, Direction direction, int width, int height) {
         Set<Simulatable> toReturn = new HashSet<>();
-        switch (direction) {
-            case UP -> {
-                for (int simulatableColumn = location.x(); simulatableColumn < location.x() + width; simulatableColumn++) {
-                    toReturn.addAll(getAtWrappedGridLocation(new GridItem(simulatableColumn, location.y() + height)));
-                }
+        for (int offset = 0; offset < (direction.isHorizontal() ? height : width); offset++) {
+            int cell = cellInDirection(cellOf(location), direction, width, height, offset);
+            for (int slot = occupancy.head(cell); slot != OccupancyIndex.NONE; slot = occupancy.next(slot)) {
+                toReturn.add(occupancy.occupant(slot));
             }
-            case DOWN -> {
-                for (int simulatableColumn = location.x(); simulatableColumn < location.x() + width; simulatableColumn++) {
-                    toReturn.addAll(getAtWrappedGridLocation(new GridItem(simulatableColumn, location.y() - 1)));
+        }
+        return Collections.unmodifiableSet(toReturn);
+    }
+
+    /**
+     * Returns whether any simulatable that resides in a specific direction of a cell (across its width/height)
+     * satisfies a predicate. Unlike {@link #getInDirection(GridItem, Direction, int, int)}, this scans the occupancy of
+     * the grid without allocating anything (provided the predicate does not).
+     *
+     * @param cell      cell key, see {@link #cell(int, int)}
+     * @param direction direction of which to test simulatables
+     * @param width     width of the requesting simulatable
+     * @param height    height of the requesting simulatable
+     * @param predicate predicate to test
+     * @return true iff some simulatable in that direction satisfies the predicate
+     */
+    public boolean anyInDirection(int cell, Direction direction, int width, int height, Predicate<Simulatable> predicate) {
+        for (int offset = 0; offset < (direction.isHorizontal() ? height : width); offset++) {
+            int adjacent = cellInDirection(cell, direction, width, height, offset);
+            for (int slot = occupancy.head(adjacent); slot != OccupancyIndex.NONE; slot = occupancy.next(slot)) {
+                if (predicate.test(occupancy.occupant(slot))) {
+                    return true;
                 }
             }
-            case LEFT -> {
-                for (int simulatableRow = location.y(); simulatableRow < location.y() + height; simulatableRow++) {
-                    toReturn.addAll(getAtWrappedGridLocation(new GridItem(location.x() - 1, simulatableRow)));
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a barrier that currently blocks resides in a specific direction of a cell. This only looks up
+     * bits that are kept up to date as barriers are placed and as their conditions change, so no barrier is asked
+     * whether it blocks and no condition is tested.
+     *
+     * @param cell      cell key, see {@link #cell(int, int)}
+     * @param direction direction in which to look
+     * @param width     width of the requesting simulatable
+     * @param height    height of the requesting simulatable
+     * @return true iff a blocking barrier resides in that direction
+     */
+    public boolean blockingBarrierInDirection(int cell, Direction direction, int width, int height) {
+        for (int offset = 0; offset < (direction.isHorizontal() ? height : width); offset++) {
+            int adjacent = cellInDirection(cell, direction, width, height, offset);
+            if ((blockingCells[adjacent >>> 6] & (1L << adjacent)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether any barrier, blocking or not, resides in a specific direction of a cell
+     *
+     * @param cell      cell key, see {@link #cell(int, int)}
+     * @param direction direction in which to look
+     * @param width     width of the requesting simulatable
+     * @param height    height of the requesting simulatable
+     * @return true iff a barrier resides in that direction
+     */
+    public boolean barrierInDirection(int cell, Direction direction, int width, int height) {
+        return anyInDirection(cell, direction, width, height, BARRIER);
+    }
+
+    /**
+     * Returns the first SubGrid that resides in a specific direction of a cell
+     *
+     * @param cell      cell key, see {@link #cell(int, int)}
+     * @param direction direction in which to look
+     * @param width     width of the requesting simulatable
+     * @param height    height of the requesting simulatable
+     * @return the SubGrid, or null if there is none
+     */
+    public SubGrid subGridInDirection(int cell, Direction direction, int width, int height) {
+        for (int offset = 0; offset < (direction.isHorizontal() ? height : width); offset++) {
+            int adjacent = cellInDirection(cell, direction, width, height, offset);
+            for (int slot = occupancy.head(adjacent); slot != OccupancyIndex.NONE; slot = occupancy.next(slot)) {
+                if (occupancy.occupant(slot) instanceof SubGrid subGrid) {
+                    return subGrid;
                 }
             }
-            case RIGHT -> {
-                for (int simulatableRow = location.y(); simulatableRow < location.y() + height; simulatableRow++) {
-                    toReturn.addAll(getAtWrappedGridLocation(new GridItem(location.x() + width, simulatableRow)));
+        }
+        return null;
+    }
+
+    private boolean blockingSubGridInDirection(int fromCell, Direction direction, int width, int height) {
+        if (width == 1 && height == 1) {
+            Portal portal = portal(fromCell, direction);
+            return portal != null && !portal.isLinked();
+        }
+        for (int offset = 0; offset < (direction.isHorizontal() ? height : width); offset++) {
+            int cell = cellInDirection(fromCell, direction, width, height, offset);
+            for (int slot = occupancy.head(cell); slot != OccupancyIndex.NONE; slot = occupancy.next(slot)) {
+                if (occupancy.occupant(slot) instanceof SubGrid subGrid) {
+                    int index = direction.isHorizontal() ? cellY(fromCell) - subGrid.getLocation().y() : cellX(fromCell) - subGrid.getLocation().x();
+                    if (!subGrid.isInwardLinked(direction.opposite(), index)) {
+                        return true;
+                    }
                 }
             }
         }
-        return Collections.unmodifiableSet(toReturn);
+        return false;
+    }
+
+    private int cellInDirection(int cell, Direction direction, int width, int height, int offset) {
+        if (width == 1 && height == 1) {
+            return neighbour(cell, direction);
+        }
+        int x = cell % this.width;
+        int y = cell / this.width;
+        return switch (direction) {
+            case UP -> occupancy.wrappedCell(x + offset, y + height);
+            case DOWN -> occupancy.wrappedCell(x + offset, y - 1);
+            case LEFT -> occupancy.wrappedCell(x - 1, y + offset);
+            case RIGHT -> occupancy.wrappedCell(x + width, y + offset);
+        };
+    }
+
+    /**
+     * Changes to a grid recorded by a single thread since the grid was last updated
+     */
+    private static class StagedChanges {
+        private final Thread owner = Thread.currentThread();
+        private final List<Simulatable> spawned = new ArrayList<>();
+        private final List<Simulatable> relocated = new ArrayList<>();
+        private final List<Simulatable> removed = new ArrayList<>();
+
+        private void clear() {
+            spawned.clear();
+            relocated.clear();
+            removed.clear();
+        }
     }
 }
@@ -0,0 +1,64 @@
+package com.charrey.game.model;
+
+/**
+ * Two-dimensional Fenwick tree over the number of explorers that occupy each cell of a Grid, so that the number of
+ * explorers in any rectangle of the grid is counted in O(log(width) * log(height)), regardless of its size. It is kept
+ * up to date with each placement and displacement of an explorer in the grid.
+ */
+class OccupancyCounts {
+
+    private final int width;
+    private final int height;
+    private final int[] tree; //1-based in both dimensions, row-major with a stride of width + 1
+
+    /**
+     * Creates a new OccupancyCounts of a grid in which no cell is occupied
+     *
+     * @param width  width of the grid
+     * @param height height of the grid
+     */
+    OccupancyCounts(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.tree = new int[(width + 1) * (height + 1)];
+    }
+
+    /**
+     * Changes the number of explorers that occupy a cell
+     *
+     * @param x     horizontal coordinate of the cell
+     * @param y     vertical coordinate of the cell
+     * @param delta change of the number of explorers
+     */
+    void add(int x, int y, int delta) {
+        for (int i = y + 1; i <= height; i += i & -i) {
+            for (int j = x + 1; j <= width; j += j & -j) {
+                tree[i * (width + 1) + j] += delta;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of explorers that occupy the cells of a rectangle, counting an explorer once for each cell
+     * of the rectangle it covers
+     *
+     * @param x      horizontal coordinate of the left-bottommost cell, at least 0
+     * @param y      vertical coordinate of the left-bottommost cell, at least 0
+     * @param width  width of the rectangle, such that it does not exceed the grid
+     * @param height height of the rectangle, such that it does not exceed the grid
+     * @return the number of explorers
+     */
+    int count(int x, int y, int width, int height) {
+        return prefix(x + width, y + height) - prefix(x, y + height) - prefix(x + width, y) + prefix(x, y);
+    }
+
+    private int prefix(int columns, int rows) {
+        int res = 0;
+        for (int i = rows; i > 0; i -= i & -i) {
+            for (int j = columns; j > 0; j -= j & -j) {
+                res += tree[i * (width + 1) + j];
+            }
+        }
+        return res;
+    }
+}
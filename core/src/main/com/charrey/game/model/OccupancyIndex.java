@@ -0,0 +1,356 @@
+package com.charrey.game.model;
+
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableSet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.ToLongFunction;
+
+/**
+ * Dense, array-backed record of which simulatables occupy which cell of a Grid. Each cell is addressed by
+ * {@code y * width + x} and holds the first slot of a compact entity table. Slots that occupy the same cell are chained
+ * together, so a cell may hold any number of simulatables. A simulatable that spans multiple cells takes one slot per cell;
+ * the slots of one simulatable are chained as well so that it can be displaced without scanning the grid; the first slot
+ * of each placed simulatable is kept in an array that runs parallel to the set of placed simulatables. Freed slots are
+ * reused by later placements. The index also maintains the exclusive or of the state keys of all placed
+ * simulatables, which serves as a hash of the state of the grid, and reports each cell that a simulatable enters or
+ * leaves to a listener.
+ */
+class OccupancyIndex {
+
+    /**
+     * Slot value denoting the absence of a slot (an empty cell or the end of a chain)
+     */
+    static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final SimulatableSet placed = new SimulatableSet();
+    private final CellListener cellChanged;
+    private int[] firstSlot = new int[INITIAL_CAPACITY];
+    private int width;
+    private int height;
+    private int[] cellHead = new int[0];
+    private Simulatable[] occupants = new Simulatable[INITIAL_CAPACITY];
+    private int[] nextInCell = new int[INITIAL_CAPACITY];
+    private int[] cellOf = new int[INITIAL_CAPACITY];
+    private int[] nextOfOccupant = new int[INITIAL_CAPACITY];
+    private long[] keyOf = new long[INITIAL_CAPACITY];
+    private long hash = 0;
+    private int size = 0;
+    private int freeHead = NONE;
+
+    /**
+     * Creates a new, empty OccupancyIndex
+     *
+     * @param width       width of the grid
+     * @param height      height of the grid
+     * @param cellChanged listener that is told about each cell that a simulatable is placed in or displaced from
+     */
+    OccupancyIndex(int width, int height, CellListener cellChanged) {
+        this.cellChanged = cellChanged;
+        reset(width, height);
+    }
+
+    /**
+     * Empties the index and resizes it to new grid dimensions
+     *
+     * @param width  new width of the grid
+     * @param height new height of the grid
+     */
+    void reset(int width, int height) {
+        this.width = width;
+        this.height = height;
+        if (cellHead.length != width * height) {
+            cellHead = new int[width * height];
+        }
+        clear();
+    }
+
+    /**
+     * Removes all slots from the index while keeping its dimensions
+     */
+    void clear() {
+        Arrays.fill(cellHead, NONE);
+        Arrays.fill(occupants, 0, size, null);
+        placed.clear();
+        hash = 0;
+        size = 0;
+        freeHead = NONE;
+    }
+
+    /**
+     * Returns the cell index of a location that is known to be inside the grid
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return cell index
+     */
+    int cell(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * Returns the cell index of a location, correcting for coordinates outside the grid
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return cell index
+     */
+    int wrappedCell(int x, int y) {
+        return Math.floorMod(y, height) * width + Math.floorMod(x, width);
+    }
+
+    /**
+     * Returns whether a location lies inside the grid
+     *
+     * @param x horizontal coordinate
+     * @param y vertical coordinate
+     * @return true iff the location is inside the grid
+     */
+    boolean contains(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Marks all cells covered by a simulatable as occupied by it. Cells outside the grid are wrapped around.
+     *
+     * @param simulatable simulatable to place, which must not currently be placed
+     * @param x           horizontal coordinate of its left-bottommost square
+     * @param y           vertical coordinate of its left-bottommost square
+     * @param width       width of the simulatable
+     * @param height      height of the simulatable
+     * @param key         state key of the simulatable, which is added to the hash of this index
+     */
+    void place(Simulatable simulatable, int x, int y, int width, int height, long key) {
+        assert !placed.contains(simulatable);
+        int previous = NONE;
+        for (int xOffset = 0; xOffset < width; xOffset++) {
+            for (int yOffset = 0; yOffset < height; yOffset++) {
+                int cell = wrappedCell(x + xOffset, y + yOffset);
+                int slot = allocate();
+                occupants[slot] = simulatable;
+                cellOf[slot] = cell;
+                nextInCell[slot] = cellHead[cell];
+                cellHead[cell] = slot;
+                nextOfOccupant[slot] = previous;
+                previous = slot;
+                cellChanged.changed(cell, 1, simulatable);
+            }
+        }
+        placed.add(simulatable);
+        if (placed.size() > firstSlot.length) {
+            firstSlot = Arrays.copyOf(firstSlot, firstSlot.length * 2);
+        }
+        firstSlot[placed.size() - 1] = previous;
+        keyOf[previous] = key;
+        hash ^= key;
+    }
+
+    /**
+     * Removes all slots of a simulatable from the index
+     *
+     * @param simulatable simulatable to displace
+     * @return true iff the simulatable was placed
+     */
+    boolean displace(Simulatable simulatable) {
+        int index = placed.indexOf(simulatable);
+        if (index == NONE) {
+            return false;
+        }
+        int slot = firstSlot[index];
+        placed.remove(simulatable);
+        firstSlot[index] = firstSlot[placed.size()];
+        hash ^= keyOf[slot];
+        while (slot != NONE) {
+            int nextSlot = nextOfOccupant[slot];
+            unlink(slot);
+            cellChanged.changed(cellOf[slot], -1, simulatable);
+            occupants[slot] = null;
+            nextInCell[slot] = freeHead;
+            freeHead = slot;
+            slot = nextSlot;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether a simulatable currently occupies any cell
+     *
+     * @param simulatable simulatable
+     * @return true iff it is placed
+     */
+    boolean isPlaced(Simulatable simulatable) {
+        return placed.contains(simulatable);
+    }
+
+    private void unlink(int slot) {
+        int cell = cellOf[slot];
+        if (cellHead[cell] == slot) {
+            cellHead[cell] = nextInCell[slot];
+            return;
+        }
+        int previous = cellHead[cell];
+        while (nextInCell[previous] != slot) {
+            previous = nextInCell[previous];
+        }
+        nextInCell[previous] = nextInCell[slot];
+    }
+
+    private int allocate() {
+        if (freeHead != NONE) {
+            int slot = freeHead;
+            freeHead = nextInCell[slot];
+            return slot;
+        }
+        if (size == occupants.length) {
+            occupants = Arrays.copyOf(occupants, size * 2);
+            nextInCell = Arrays.copyOf(nextInCell, size * 2);
+            cellOf = Arrays.copyOf(cellOf, size * 2);
+            nextOfOccupant = Arrays.copyOf(nextOfOccupant, size * 2);
+            keyOf = Arrays.copyOf(keyOf, size * 2);
+        }
+        return size++;
+    }
+
+    /**
+     * Recomputes the state keys of all placed simulatables, and with them the hash of this index
+     *
+     * @param keys function that computes the state key of a simulatable
+     */
+    void rekey(ToLongFunction<Simulatable> keys) {
+        hash = 0;
+        for (int index = 0; index < placed.size(); index++) {
+            int slot = firstSlot[index];
+            keyOf[slot] = keys.applyAsLong(placed.get(index));
+            hash ^= keyOf[slot];
+        }
+    }
+
+    /**
+     * Returns the exclusive or of the state keys of all placed simulatables
+     *
+     * @return the hash
+     */
+    long hash() {
+        return hash;
+    }
+
+    /**
+     * Returns the first slot occupying a cell
+     *
+     * @param cell cell index
+     * @return the slot, or NONE if the cell is empty
+     */
+    int head(int cell) {
+        return cellHead[cell];
+    }
+
+    /**
+     * Returns the next slot occupying the same cell as a given slot
+     *
+     * @param slot slot
+     * @return the next slot, or NONE if this was the last one
+     */
+    int next(int slot) {
+        return nextInCell[slot];
+    }
+
+    /**
+     * Returns the simulatable that a slot refers to
+     *
+     * @param slot slot
+     * @return the simulatable
+     */
+    Simulatable occupant(int slot) {
+        return occupants[slot];
+    }
+
+    /**
+     * Returns whether some other simulatable that duplicates the provided one occupies a cell
+     *
+     * @param cell        cell index
+     * @param simulatable simulatable to compare against
+     * @return true iff a different simulatable that {@link Simulatable#duplicates(Simulatable) duplicates} it occupies
+     * the cell
+     */
+    boolean containsDuplicate(int cell, Simulatable simulatable) {
+        for (int slot = cellHead[cell]; slot != NONE; slot = nextInCell[slot]) {
+            if (simulatable.duplicates(occupants[slot])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a read-only view of the simulatables occupying a cell
+     *
+     * @param cell cell index
+     * @return view of the simulatables in that cell
+     */
+    Set<Simulatable> view(int cell) {
+        return new CellView(cell);
+    }
+
+    /**
+     * Listener to the cells that simulatables are placed in or displaced from
+     */
+    @FunctionalInterface
+    interface CellListener {
+
+        /**
+         * Called after a simulatable was placed in or displaced from a cell
+         *
+         * @param cell     cell key
+         * @param delta    change of the number of simulatables occupying the cell: 1 or -1
+         * @param occupant the simulatable that was placed or displaced
+         */
+        void changed(int cell, int delta, Simulatable occupant);
+    }
+
+    private class CellView extends AbstractSet<Simulatable> {
+
+        private final int cell;
+
+        CellView(int cell) {
+            this.cell = cell;
+        }
+
+        @Override
+        public @NotNull Iterator<Simulatable> iterator() {
+            return new Iterator<>() {
+                private int slot = head(cell);
+
+                @Override
+                public boolean hasNext() {
+                    return slot != NONE;
+                }
+
+                @Override
+                public Simulatable next() {
+                    if (slot == NONE) {
+                        throw new NoSuchElementException();
+                    }
+                    Simulatable res = occupant(slot);
+                    slot = OccupancyIndex.this.next(slot);
+                    return res;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int count = 0;
+            for (int slot = head(cell); slot != NONE; slot = OccupancyIndex.this.next(slot)) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return head(cell) == NONE;
+        }
+    }
+}
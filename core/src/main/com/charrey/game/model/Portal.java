@@ -0,0 +1,36 @@
+package com.charrey.game.model;
+
+import com.charrey.game.util.GridItem;
+
+/**
+ * Where a simulatable of a single cell ends up when it moves into the edge of a SubGrid: a cell of the grid that the
+ * SubGrid contains, or nowhere if that edge of the SubGrid is padded.
+ *
+ * @param grid grid contained by the SubGrid
+ * @param cell cell key in that grid, or {@link #PADDED} if the edge is padded
+ */
+public record Portal(Grid grid, int cell) {
+
+    /**
+     * Cell value of a portal into a padded edge, which blocks movement instead of leading anywhere
+     */
+    public static final int PADDED = -1;
+
+    /**
+     * Returns whether the edge leads into the contained grid
+     *
+     * @return true iff the edge is exported by the contained grid
+     */
+    public boolean isLinked() {
+        return cell != PADDED;
+    }
+
+    /**
+     * Returns the location in the contained grid that the edge leads to
+     *
+     * @return the location
+     */
+    public GridItem location() {
+        return grid.item(cell);
+    }
+}
@@ -0,0 +1,151 @@
+package com.charrey.game.model;
+
+import com.charrey.game.model.simulatable.EdgeType;
+import com.charrey.game.model.simulatable.subgrid.SubGrid;
+import com.charrey.game.util.GridItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable lookup tables of a Grid that tell what a simulatable of a single cell crosses when it moves: for each index
+ * of each edge of the grid, what kind of edge it is and (if exported) which cell of the grid around the parent SubGrid
+ * it leads to, and for each cell and direction that faces a SubGrid in the grid, where that edge of the SubGrid leads.
+ * This spares the simulation the sets of exported and padded edges and the links of the SubGrids on every move. A Grid
+ * builds new tables only after its edges, its parent or its SubGrids change.
+ */
+class PortalTable {
+
+    /**
+     * Edge target of an edge that is not exported, or whose grid is not nested in another grid
+     */
+    static final int NO_TARGET = -1;
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+    private static final int NO_KEY = -1;
+
+    private final byte[][] edgeKinds = new byte[Direction.values().length][];
+    private final int[][] edgeTargets = new int[Direction.values().length][];
+    private final int[] keys; //open addressing on cell * 4 + direction
+    private final Portal[] portals;
+    private final int mask;
+
+    /**
+     * Builds the tables of a grid
+     *
+     * @param grid     grid to build the tables of
+     * @param subGrids SubGrids that currently occupy the grid
+     */
+    PortalTable(Grid grid, List<SubGrid> subGrids) {
+        SubGrid parent = grid.getParent();
+        Grid container = parent == null ? null : parent.getContainerGrid();
+        for (Direction direction : Direction.values()) {
+            int length = direction.isHorizontal() ? grid.getHeight() : grid.getWidth();
+            byte[] kinds = new byte[length];
+            int[] targets = new int[length];
+            Arrays.fill(kinds, (byte) EdgeType.UNMARKED.ordinal());
+            Arrays.fill(targets, NO_TARGET);
+            for (int index : grid.getPad(direction)) {
+                if (index < length) {
+                    kinds[index] = (byte) EdgeType.PAD.ordinal();
+                }
+            }
+            for (int index : grid.getExport(direction)) {
+                if (index < length) {
+                    kinds[index] = (byte) EdgeType.EXPORT.ordinal();
+                    if (container != null) {
+                        GridItem linkedTo = parent.getOutwardLink(direction, index);
+                        targets[index] = container.cell(linkedTo.x(), linkedTo.y());
+                    }
+                }
+            }
+            edgeKinds[direction.ordinal()] = kinds;
+            edgeTargets[direction.ordinal()] = targets;
+        }
+        int count = 0;
+        for (SubGrid subGrid : subGrids) {
+            count += 2 * (subGrid.getWidth() + subGrid.getHeight());
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, count) * 2) * 2;
+        keys = new int[capacity];
+        portals = new Portal[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, NO_KEY);
+        for (SubGrid subGrid : subGrids) {
+            int x = subGrid.getLocation().x();
+            int y = subGrid.getLocation().y();
+            for (int index = 0; index < subGrid.getWidth(); index++) {
+                put(grid, grid.cell(x + index, y - 1), Direction.UP, subGrid, index);
+                put(grid, grid.cell(x + index, y + subGrid.getHeight()), Direction.DOWN, subGrid, index);
+            }
+            for (int index = 0; index < subGrid.getHeight(); index++) {
+                put(grid, grid.cell(x - 1, y + index), Direction.RIGHT, subGrid, index);
+                put(grid, grid.cell(x + subGrid.getWidth(), y + index), Direction.LEFT, subGrid, index);
+            }
+        }
+    }
+
+    private void put(Grid grid, int cell, Direction direction, SubGrid subGrid, int index) {
+        Grid inner = subGrid.getSubgrid();
+        GridItem link = subGrid.findInwardLink(direction.opposite(), index);
+        int key = key(cell, direction);
+        int slot = slot(key);
+        while (keys[slot] != NO_KEY) {
+            if (keys[slot] == key) {
+                return; //overlapping SubGrids: the first one is kept
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        portals[slot] = new Portal(inner, link == null ? Portal.PADDED : inner.cellOf(link));
+    }
+
+    /**
+     * Returns the kind of an edge of the grid
+     *
+     * @param direction side of the grid
+     * @param index     index of the edge on that side
+     * @return kind of edge
+     */
+    EdgeType edgeType(Direction direction, int index) {
+        return EDGE_TYPES[edgeKinds[direction.ordinal()][index]];
+    }
+
+    /**
+     * Returns the cell of the grid around the parent SubGrid that an exported edge of the grid leads to
+     *
+     * @param direction side of the grid
+     * @param index     index of the edge on that side
+     * @return cell key, or {@link #NO_TARGET}
+     */
+    int edgeTarget(Direction direction, int index) {
+        return edgeTargets[direction.ordinal()][index];
+    }
+
+    /**
+     * Returns where moving from a cell in a direction leads, if that moves into the edge of a SubGrid
+     *
+     * @param cell      cell key
+     * @param direction direction of movement
+     * @return the portal, or null if no SubGrid is in that direction
+     */
+    Portal portal(int cell, Direction direction) {
+        int key = key(cell, direction);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            int found = keys[slot];
+            if (found == key) {
+                return portals[slot];
+            } else if (found == NO_KEY) {
+                return null;
+            }
+        }
+    }
+
+    private static int key(int cell, Direction direction) {
+        return cell * 4 + direction.ordinal();
+    }
+
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
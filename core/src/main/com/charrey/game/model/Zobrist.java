@@ -0,0 +1,73 @@
+package com.charrey.game.model;
+
+/**
+ * Zobrist keys for the state of a simulation. Each combination of grid, cell, simulatable type and direction maps to a
+ * pseudo-random 64-bit key; the hash of a state is the exclusive or of the keys of everything in it. Since the exclusive
+ * or is its own inverse, the hash can be maintained incrementally by toggling the keys of whatever changes.
+ */
+public final class Zobrist {
+
+    /**
+     * Identifier of a root grid, i.e. a grid that is not contained in a SubGrid
+     */
+    public static final long ROOT_GRID = 0;
+
+    /**
+     * Direction passed to {@link #key(long, int, Class, int)} for simulatables that have no direction
+     */
+    public static final int NO_DIRECTION = -1;
+
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the key of a simulatable of some type that faces in some direction and occupies some cell of a grid
+     *
+     * @param grid      identifier of the grid, see {@link Grid#getZobristId()}
+     * @param cell      index of the cell ({@code y * width + x}) of the left-bottommost square of the simulatable
+     * @param type      class of the simulatable
+     * @param direction ordinal of the direction of the simulatable, or NO_DIRECTION
+     * @return the key
+     */
+    public static long key(long grid, int cell, Class<?> type, int direction) {
+        long res = mix(grid + 0x9E3779B97F4A7C15L * (cell + 1L));
+        res = mix(res ^ type.getName().hashCode());
+        return mix(res + direction);
+    }
+
+    /**
+     * Derives the identifier of a grid from the identifier of the grid that contains it and the location of the
+     * SubGrid in that grid, so that copies of a model hash identically.
+     *
+     * @param container identifier of the containing grid
+     * @param x         horizontal coordinate of the SubGrid
+     * @param y         vertical coordinate of the SubGrid
+     * @return the identifier
+     */
+    public static long subgrid(long container, int x, int y) {
+        return mix(mix(container ^ 0xBF58476D1CE4E5B9L) + ((long) x << 32 | (y & 0xFFFFFFFFL)));
+    }
+
+    /**
+     * Returns a key derived from another key that additionally distinguishes how many steps something has been underway
+     *
+     * @param key     key of the thing underway
+     * @param elapsed number of steps it has been underway
+     * @return the key
+     */
+    public static long underway(long key, long elapsed) {
+        return mix(key + 0x9E3779B97F4A7C15L * (elapsed + 1));
+    }
+
+    /**
+     * SplitMix64 finalizer, which scatters its input over all 64 bits
+     *
+     * @param value value to scatter
+     * @return the scattered value
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -21,6 +21,6 @@ public class BlockExists extends ConditionWithReference {
 
     @Override
     public boolean test() {
-        return getGrid().getAtStrictGridLocation(getLocation()).size() > 0;
+        return isReferenceOccupied();
     }
 }
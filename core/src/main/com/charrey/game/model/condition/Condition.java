@@ -1,5 +1,9 @@
 package com.charrey.game.model.condition;
 
+import com.charrey.game.model.Grid;
+
+import java.util.function.IntConsumer;
+
 /**
  * This class may be used as a parameter of a Simulatable to change behaviour depending on some state of the model,
  * for example by testing the condition in it's simulation step or by testing the condition to determine whether
@@ -14,4 +18,22 @@ public abstract class Condition {
      */
     public abstract boolean test();
 
+    /**
+     * Returns the grid whose occupancy determines the outcome of this condition
+     *
+     * @return the grid, or null if the outcome does not depend on any grid
+     */
+    public Grid getWatchedGrid() {
+        return null;
+    }
+
+    /**
+     * Provides the cells of the watched grid whose occupancy determines the outcome of this condition. The outcome can
+     * only change when a simulatable enters or leaves one of those cells.
+     *
+     * @param action action to perform on each cell key (see {@link Grid#cell(int, int)})
+     */
+    public void forEachWatchedCell(IntConsumer action) {
+    }
+
 }
@@ -3,6 +3,8 @@ package com.charrey.game.model.condition;
 import com.charrey.game.model.Grid;
 import com.charrey.game.util.GridItem;
 
+import java.util.function.IntConsumer;
+
 /**
  * Condition that refers to a different location in the same model to determine whether it's true.
  */
@@ -36,7 +38,30 @@ public abstract class ConditionWithReference extends Condition {
      *
      * @return the model
      */
-    protected Grid getGrid() {
+    public Grid getGrid() {
         return grid;
     }
+
+    /**
+     * Returns whether any simulatable occupies the location of the reference, without creating a view of them
+     *
+     * @return true iff the location lies inside the model and is occupied
+     */
+    protected boolean isReferenceOccupied() {
+        int x = location.x();
+        int y = location.y();
+        return x >= 0 && x < grid.getWidth() && y >= 0 && y < grid.getHeight() && grid.isOccupied(grid.cell(x, y));
+    }
+
+    @Override
+    public Grid getWatchedGrid() {
+        return grid;
+    }
+
+    @Override
+    public void forEachWatchedCell(IntConsumer action) {
+        if (location.x() >= 0 && location.x() < grid.getWidth() && location.y() >= 0 && location.y() < grid.getHeight()) {
+            action.accept(grid.cell(location.x(), location.y()));
+        }
+    }
 }
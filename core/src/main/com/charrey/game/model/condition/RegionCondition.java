@@ -0,0 +1,73 @@
+package com.charrey.game.model.condition;
+
+import com.charrey.game.model.Grid;
+import com.charrey.game.util.GridItem;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Condition that refers to a rectangular region of the model, rather than a single location, to determine whether it's
+ * true. The location of the reference is the left-bottommost cell of the region.
+ */
+public abstract class RegionCondition extends ConditionWithReference {
+
+    private final int width;
+    private final int height;
+
+    /**
+     * Creates a new RegionCondition
+     *
+     * @param grid     the model
+     * @param location left-bottommost cell of the region
+     * @param width    width of the region
+     * @param height   height of the region
+     */
+    protected RegionCondition(Grid grid, GridItem location, int width, int height) {
+        super(grid, location);
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("A region must be at least one cell wide and high, but is " + width + "x" + height + ".");
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the width of the region
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the region
+     *
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of explorers in the region, counting an explorer once for each cell of the region it covers.
+     * Barriers and SubGrids in the region are not counted.
+     *
+     * @return the number of explorers
+     */
+    protected int countExplorersInRegion() {
+        return getGrid().countExplorersInRegion(getLocation().x(), getLocation().y(), width, height);
+    }
+
+    @Override
+    public void forEachWatchedCell(IntConsumer action) {
+        Grid grid = getGrid();
+        int right = Math.min(getLocation().x() + width, grid.getWidth());
+        int top = Math.min(getLocation().y() + height, grid.getHeight());
+        for (int y = Math.max(getLocation().y(), 0); y < top; y++) {
+            for (int x = Math.max(getLocation().x(), 0); x < right; x++) {
+                action.accept(grid.cell(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.charrey.game.model.condition;
+
+import com.charrey.game.model.Grid;
+import com.charrey.game.util.GridItem;
+
+/**
+ * Condition that is true if and only if at least some number of explorers are currently in a specified region; barriers
+ * do not count
+ */
+public class RegionCountAtLeast extends RegionCondition {
+
+    private final int threshold;
+
+    /**
+     * Creates a new RegionCountAtLeast condition
+     *
+     * @param grid      model
+     * @param location  left-bottommost cell of the region in the model where the explorers should be
+     * @param width     width of the region
+     * @param height    height of the region
+     * @param threshold number of explorers that should at least be in the region
+     */
+    public RegionCountAtLeast(Grid grid, GridItem location, int width, int height, int threshold) {
+        super(grid, location, width, height);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the number of explorers that should at least be in the region
+     *
+     * @return the threshold
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public boolean test() {
+        return countExplorersInRegion() >= threshold;
+    }
+}
@@ -0,0 +1,27 @@
+package com.charrey.game.model.condition;
+
+import com.charrey.game.model.Grid;
+import com.charrey.game.util.GridItem;
+
+/**
+ * Condition that is true if and only if no explorers are currently in a specified region; barriers do not count
+ */
+public class RegionEmpty extends RegionCondition {
+
+    /**
+     * Creates a new RegionEmpty condition
+     *
+     * @param grid     model
+     * @param location left-bottommost cell of the region in the model where no explorer should be
+     * @param width    width of the region
+     * @param height   height of the region
+     */
+    public RegionEmpty(Grid grid, GridItem location, int width, int height) {
+        super(grid, location, width, height);
+    }
+
+    @Override
+    public boolean test() {
+        return countExplorersInRegion() == 0;
+    }
+}
@@ -30,6 +30,7 @@ public class XMLLoader extends GridLoader {
             Document document = reader.read(new ByteArrayInputStream(fileBeingLoaded.readBytes()));
             Element root = document.getRootElement();
             Grid grid = new Grid(getRequiredIntegerAttribute(root, "width"), getRequiredIntegerAttribute(root, "height"));
+            grid.setRandomSeed(getOptionalLongAttribute(root, "seed", grid.getRandomSeed()));
             Element simulatablesContainer = getRequiredChild(root, "simulatables");
             for (Element element : simulatablesContainer.elements()) {
                 Simulatable simulatable = loadSimulatable(fileBeingLoaded.file().toPath(), grid, element);
@@ -78,13 +79,25 @@ public class XMLLoader extends GridLoader {
             case "False":
                 return new False();
         }
-        GridItem conditionLocation = new GridItem(getRequiredIntegerAttribute(element, "x"), getRequiredIntegerAttribute(element, "y"));
+        GridItem conditionLocation = new GridItem(getRequiredIntegerAttribute(conditionElement, "x"), getRequiredIntegerAttribute(conditionElement, "y"));
         switch (type) {
             case "BlockExists":
                 return new BlockExists(grid, conditionLocation);
             case "NotBlockExists":
                 return new NotBlockExists(grid, conditionLocation);
         }
+        int width = getRequiredIntegerAttribute(conditionElement, "width");
+        int height = getRequiredIntegerAttribute(conditionElement, "height");
+        try {
+            switch (type) {
+                case "RegionEmpty":
+                    return new RegionEmpty(grid, conditionLocation, width, height);
+                case "RegionCountAtLeast":
+                    return new RegionCountAtLeast(grid, conditionLocation, width, height, getRequiredIntegerAttribute(conditionElement, "threshold"));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new SaveFormatException("Invalid region for condition " + type + ": " + e.getMessage(), e);
+        }
         throw new UnsupportedOperationException(type);
     }
 
@@ -140,6 +153,18 @@ public class XMLLoader extends GridLoader {
         }
     }
 
+    private long getOptionalLongAttribute(Element element, String attributeName, long defaultValue) throws SaveFormatException {
+        Attribute attribute = element.attribute(attributeName);
+        if (attribute == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(attribute.getValue());
+        } catch (NumberFormatException e) {
+            throw new SaveFormatException("Attribute " + attributeName + " must be an integer but could not be parsed as such.", e);
+        }
+    }
+
     private Element getRequiredChild(Element element, String childName) throws SaveFormatException {
         Element child = element.element(childName);
         if (child == null) {
@@ -4,6 +4,8 @@ import com.charrey.game.model.Direction;
 import com.charrey.game.model.Grid;
 import com.charrey.game.model.condition.Condition;
 import com.charrey.game.model.condition.ConditionWithReference;
+import com.charrey.game.model.condition.RegionCondition;
+import com.charrey.game.model.condition.RegionCountAtLeast;
 import com.charrey.game.model.simulatable.ConditionalBarrier;
 import com.charrey.game.model.simulatable.DirectionalSimulatable;
 import com.charrey.game.model.simulatable.Simulatable;
@@ -51,6 +53,7 @@ public class XMLSerializer implements GridSerializer {
         Element root = document.addElement("Grid");
         root.addAttribute("width", String.valueOf(grid.getWidth()));
         root.addAttribute("height", String.valueOf(grid.getHeight()));
+        root.addAttribute("seed", String.valueOf(grid.getRandomSeed()));
 
         Element simulatablesElement = root.addElement("simulatables");
 
@@ -99,6 +102,13 @@ public class XMLSerializer implements GridSerializer {
             conditionElement.addAttribute("x", String.valueOf(conditionWithReference.getLocation().x()));
             conditionElement.addAttribute("y", String.valueOf(conditionWithReference.getLocation().y()));
         }
+        if (condition instanceof RegionCondition regionCondition) {
+            conditionElement.addAttribute("width", String.valueOf(regionCondition.getWidth()));
+            conditionElement.addAttribute("height", String.valueOf(regionCondition.getHeight()));
+        }
+        if (condition instanceof RegionCountAtLeast countCondition) {
+            conditionElement.addAttribute("threshold", String.valueOf(countCondition.getThreshold()));
+        }
         res.add(conditionElement);
         return res;
     }
@@ -21,6 +21,11 @@ public abstract class Barrier extends Simulatable {
 
     }
 
+    @Override
+    public boolean isStatic() {
+        return true;
+    }
+
     /**
      * Returns whether the barrier is currently blocking movement of other simulatables
      *
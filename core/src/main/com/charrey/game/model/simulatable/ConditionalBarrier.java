@@ -4,6 +4,7 @@ import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.utils.Align;
+import com.charrey.game.model.Grid;
 import com.charrey.game.model.condition.Condition;
 import com.charrey.game.model.condition.False;
 import com.charrey.game.settings.NewBlockFactory;
@@ -13,7 +14,9 @@ import com.charrey.game.util.GridItem;
 import com.charrey.game.util.SkinUtils;
 
 /**
- * Barrier that is non-moving and active unless a specific (user-selected) condition is active.
+ * Barrier that is non-moving and active unless a specific (user-selected) condition is active. While the barrier
+ * occupies a grid, whether it blocks is only recomputed when the occupancy that its condition watches changes (see
+ * {@link Grid#watch(ConditionalBarrier)}), rather than each time it is asked.
  */
 public class ConditionalBarrier extends Barrier {
 
@@ -50,6 +53,9 @@ public class ConditionalBarrier extends Barrier {
     }
 
     private Condition condition;
+    private boolean attached = false;
+    private Grid watchedGrid = null;
+    private boolean blocking = true;
 
 
     private ConditionalBarrier(GridItem location, Condition condition) {
@@ -83,7 +89,7 @@ public class ConditionalBarrier extends Barrier {
 
     @Override
     public Drawable getTexture(int xOffset, int yOffset, int textureWidth, int textureHeight) {
-        if (condition.test()) {
+        if (!isBlocking()) {
             return new Drawable() {
                 @Override
                 public void draw(SpriteBatch batch, int width, int height, int x, int y) {
@@ -128,16 +134,61 @@ public class ConditionalBarrier extends Barrier {
      * @param condition condition
      */
     public void setCondition(Condition condition) {
+        boolean wasAttached = attached;
+        detachCondition();
         this.condition = condition;
+        if (wasAttached) {
+            attachCondition();
+        }
     }
 
-    @Override
-    public boolean isBlocking() {
-        return !condition.test();
+    /**
+     * Starts watching the cells that the condition depends on and computes whether this barrier blocks. Called by the
+     * grid when it places this barrier.
+     */
+    public void attachCondition() {
+        if (attached) {
+            return;
+        }
+        attached = true;
+        watchedGrid = condition.getWatchedGrid();
+        if (watchedGrid != null) {
+            watchedGrid.watch(this);
+        }
+        updateBlocking();
+    }
+
+    /**
+     * Stops watching the cells that the condition depends on. Called by the grid when it displaces this barrier.
+     */
+    public void detachCondition() {
+        if (!attached) {
+            return;
+        }
+        attached = false;
+        if (watchedGrid != null) {
+            watchedGrid.unwatch(this);
+            watchedGrid = null;
+        }
+    }
+
+    /**
+     * Tests the condition again, and lets the grid know if this barrier started or stopped blocking. Called by the
+     * watched grid after the occupancy of a cell that the condition watches changed.
+     */
+    public void updateBlocking() {
+        boolean nowBlocking = !condition.test();
+        if (nowBlocking != blocking) {
+            blocking = nowBlocking;
+            Grid grid = getContainerGrid();
+            if (attached && grid != null) {
+                grid.refreshBlocking(getCell());
+            }
+        }
     }
 
     @Override
-    public int hashCode() {
-        return getClass().hashCode();
+    public boolean isBlocking() {
+        return attached ? blocking : !condition.test();
     }
 }
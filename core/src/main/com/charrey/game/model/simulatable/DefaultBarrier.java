@@ -73,10 +73,4 @@ public class DefaultBarrier extends Barrier {
     public Simulatable copy() {
         return new DefaultBarrier(getLocation());
     }
-
-    @Override
-    public int hashCode() {
-        return getClass().hashCode();
-    }
-
 }
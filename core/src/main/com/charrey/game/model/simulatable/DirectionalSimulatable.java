@@ -72,22 +72,22 @@ public abstract class DirectionalSimulatable extends Simulatable {
         super.advanceNow(getDirection());
     }
 
-    @Override
-    public int hashCode() {
-        return direction.hashCode();
-    }
-
     @Override
     public void stateSwitchStep() {
+        if (direction != nextDirection) {
+            markStateChanged();
+        }
         direction = nextDirection;
         super.stateSwitchStep();
     }
 
     @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        DirectionalSimulatable that = (DirectionalSimulatable) o;
-        return direction == that.direction;
+    public boolean duplicates(Simulatable other) {
+        return other != this && other.getClass() == getClass() && other.getLocation().equals(getLocation()) && ((DirectionalSimulatable) other).direction == direction;
+    }
+
+    @Override
+    public boolean sameState(Simulatable other) {
+        return super.sameState(other) && ((DirectionalSimulatable) other).direction == direction;
     }
 }
@@ -13,10 +13,19 @@ import java.util.*;
  * 1x1 simulatable that moves one step in some direction each simulation step. Upon encountering a barricade in its facing direction,
  * it instead changes direction to a direction to its left or right where no barricade is present. If no such direction exists,
  * this is deleted.
+ * <p>
+ * If both directions are free, the explorer chooses between them with its own random stream: a counter-based generator
+ * whose n-th draw depends only on the seed of the stream and on n. The choices therefore do not depend on which thread
+ * simulates the explorer, or on the order in which explorers are simulated.
  */
 public class RandomExplorer extends DirectionalSimulatable {
 
     private static final Map<Direction, CachedGameFieldBlockTexture> textures = new EnumMap<>(Direction.class);
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final Comparator<Simulatable> BY_ID = Comparator.comparingLong(Simulatable::getId);
+
+    private long streamSeed = 0;
+    private long draws = 0;
 
     static {
         Direction.forEachConcrete(direction -> textures.put(direction, new CachedGameFieldBlockTexture(new Color(1f, 0.5f, 0.5f, 1), direction)));
@@ -57,22 +66,89 @@ public class RandomExplorer extends DirectionalSimulatable {
         };
     }
 
+    /**
+     * Gives each RandomExplorer among some simulatables its own random stream. The streams are handed out in the order
+     * of the ids of the explorers, so that two copies of a model that are seeded with the same seed make the same
+     * choices, regardless of how they are simulated.
+     *
+     * @param simulatables simulatables among which to seed the RandomExplorers
+     * @param seed         seed of the run
+     */
+    public static void seedStreams(Collection<Simulatable> simulatables, long seed) {
+        List<Simulatable> explorers = new ArrayList<>();
+        simulatables.forEach(simulatable -> {
+            if (simulatable instanceof RandomExplorer) {
+                explorers.add(simulatable);
+            }
+        });
+        explorers.sort(BY_ID);
+        SplittableRandom streams = new SplittableRandom(seed);
+        for (Simulatable explorer : explorers) {
+            ((RandomExplorer) explorer).streamSeed = streams.nextLong();
+            ((RandomExplorer) explorer).draws = 0;
+        }
+    }
+
+    /**
+     * Returns the seed of the random stream of this explorer
+     *
+     * @return the seed
+     */
+    public long getStreamSeed() {
+        return streamSeed;
+    }
+
+    /**
+     * Returns the number of bits this explorer has drawn from its random stream so far
+     *
+     * @return the number of draws
+     */
+    public long getDraws() {
+        return draws;
+    }
+
+    /**
+     * Lets this explorer continue a random stream after some number of draws, so that an explorer that is recreated
+     * from another representation makes the same choices as the original
+     *
+     * @param streamSeed seed of the stream
+     * @param draws      number of bits drawn from the stream so far
+     */
+    public void setStream(long streamSeed, long draws) {
+        this.streamSeed = streamSeed;
+        this.draws = draws;
+    }
+
+    /**
+     * Returns a bit of a random stream: the SplitMix64 finalizer applied to the seed of the stream plus the number of
+     * the draw times the golden gamma.
+     *
+     * @param streamSeed seed of the stream
+     * @param draw       number of the draw, starting at 1
+     * @return the bit
+     */
+    public static boolean draw(long streamSeed, long draw) {
+        long value = streamSeed + GOLDEN_GAMMA * draw;
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return (value ^ (value >>> 31)) < 0;
+    }
+
+    private boolean nextBoolean() {
+        return draw(streamSeed, ++draws);
+    }
+
     @Override
     public void simulateStep() {
-        Set<Simulatable> inFrontOfMe = getInDirection(getDirection());
-        if (inFrontOfMe.stream().anyMatch(obj -> obj instanceof Barrier barrier && barrier.isBlocking())) {
-            List<Direction> toRotateTo = new LinkedList<>();
-            if (getInDirection(getDirection().rotateLeft()).stream().noneMatch(Barrier.class::isInstance)) {
-                toRotateTo.add(getDirection().rotateLeft());
-            }
-            if (getInDirection(getDirection().rotateRight()).stream().noneMatch(Barrier.class::isInstance)) {
-                toRotateTo.add(getDirection().rotateRight());
-            }
-            if (toRotateTo.isEmpty()) {
+        if (blockingBarrierInDirection(getDirection())) {
+            Direction left = getDirection().rotateLeft();
+            Direction right = getDirection().rotateRight();
+            boolean leftFree = !barrierInDirection(left);
+            boolean rightFree = !barrierInDirection(right);
+            if (!leftFree && !rightFree) {
                 removeFromMasterInNextStep();
             } else {
-                Collections.shuffle(toRotateTo);
-                setDirection(toRotateTo.get(0));
+                setDirection(leftFree && rightFree ? (nextBoolean() ? left : right) : (leftFree ? left : right));
                 advance();
             }
         } else {
@@ -87,7 +163,10 @@ public class RandomExplorer extends DirectionalSimulatable {
 
     @Override
     public Simulatable copy() {
-        return new RandomExplorer(getDirection(), getLocation());
+        RandomExplorer res = new RandomExplorer(getDirection(), getLocation());
+        res.streamSeed = streamSeed;
+        res.draws = draws;
+        return res;
     }
 
     @Override
@@ -99,17 +178,4 @@ public class RandomExplorer extends DirectionalSimulatable {
             case LEFT -> "<";
         };
     }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        RandomExplorer that = (RandomExplorer) o;
-        return getDirection() == that.getDirection() && getLocation().equals(that.getLocation()) /*&& getPhase() == that.getPhase()*/;
-    }
-
-    @Override
-    public int hashCode() {
-        return getClass().hashCode();
-    }
 }
@@ -2,18 +2,26 @@ package com.charrey.game.model.simulatable;
 
 import com.charrey.game.model.Direction;
 import com.charrey.game.model.Grid;
+import com.charrey.game.model.Portal;
 import com.charrey.game.model.simulatable.subgrid.SubGrid;
 import com.charrey.game.texture.Drawable;
 import com.charrey.game.util.GridItem;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Item in a model that can be rendered and can be simulated. Each implementation may behave differently.
+ * Item in a model that can be rendered and can be simulated. Each implementation may behave differently. Each
+ * simulatable has a unique id that never changes; simulatables are only equal to themselves.
  */
 public abstract class Simulatable {
 
+    private static final AtomicLong nextId = new AtomicLong();
+    private static final AtomicIntegerFieldUpdater<Simulatable> registrySlotUpdater = AtomicIntegerFieldUpdater.newUpdater(Simulatable.class, "registrySlot");
+
+    private final long id = nextId.getAndIncrement();
     private final int width;
     private final int height;
     private final int renderPriority;
@@ -24,6 +32,8 @@ public abstract class Simulatable {
     private GridItem nextLocation;
     private Set<Simulatable> masterSet;
     private boolean removeInNextStep = false;
+    private boolean stateChanged = false;
+    private volatile int registrySlot = SimulatableRegistry.ABSENT;
 
     /**
      * Creates a new Simulatable
@@ -41,6 +51,85 @@ public abstract class Simulatable {
         this.height = height;
     }
 
+    /**
+     * Returns the id of this simulatable. Ids are allocated densely in order of creation and are never reused; copies
+     * receive a new id.
+     *
+     * @return the id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the slot this simulatable occupies in its {@link SimulatableRegistry}
+     *
+     * @return the slot, or ABSENT if it is not a member of a registry
+     */
+    int getRegistrySlot() {
+        return registrySlot;
+    }
+
+    /**
+     * Records that this simulatable occupies a slot of a registry, unless it is a member of a registry already
+     *
+     * @param slot slot of the registry
+     * @return true iff this simulatable was not a member of a registry
+     */
+    boolean claimRegistrySlot(int slot) {
+        return registrySlotUpdater.compareAndSet(this, SimulatableRegistry.ABSENT, slot);
+    }
+
+    /**
+     * Records that this simulatable has left its registry
+     *
+     * @return the slot it occupied, or ABSENT if it was not a member of a registry
+     */
+    int releaseRegistrySlot() {
+        return registrySlotUpdater.getAndSet(this, SimulatableRegistry.ABSENT);
+    }
+
+    /**
+     * Records that this simulatable has been moved to a different slot by compaction of its registry
+     *
+     * @param slot the new slot
+     */
+    void moveRegistrySlot(int slot) {
+        registrySlot = slot;
+    }
+
+    /**
+     * Returns whether this simulatable is indistinguishable from another simulatable, so that a grid in which both
+     * occupy the same location keeps only one of them. By default, simulatables never duplicate each other.
+     *
+     * @param other other simulatable
+     * @return true iff the other simulatable duplicates this one
+     */
+    public boolean duplicates(Simulatable other) {
+        return false;
+    }
+
+    /**
+     * Returns whether this simulatable is in the same state as another simulatable, possibly of a different grid: of the
+     * same type, at the same location, and bound to behave the same from now on
+     *
+     * @param other other simulatable
+     * @return true iff both simulatables are in the same state
+     */
+    public boolean sameState(Simulatable other) {
+        return other.getClass() == getClass() && other.getLocation().equals(getLocation());
+    }
+
+    @Override
+    public final boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public final int hashCode() {
+        return Long.hashCode(id);
+    }
+
     /**
      * Changes the simulatable's container grid in the next step.
      *
@@ -54,7 +143,8 @@ public abstract class Simulatable {
 
     /**
      * Sets the masterset that contains this simulatable. The masterset is the set of all simulatables subject to simulation
-     * and interaction with other simulatables in all grids together.
+     * and interaction with other simulatables in all grids together. Static simulatables are given the masterset as
+     * well, but are only in it while they are not static.
      *
      * @param masterSet the masterset
      */
@@ -62,6 +152,47 @@ public abstract class Simulatable {
         this.masterSet = masterSet;
     }
 
+    /**
+     * Returns whether this simulatable currently has no behaviour, i.e. whether simulating it would not change anything.
+     * Static simulatables are left out of the masterset; they only occupy their grid.
+     *
+     * @return true iff this simulatable is static
+     */
+    public boolean isStatic() {
+        return false;
+    }
+
+    /**
+     * Adds this simulatable to the masterset immediately, for example because it is no longer static
+     */
+    protected void addToMaster() {
+        if (masterSet != null) {
+            masterSet.add(this);
+        }
+    }
+
+    /**
+     * Removes this simulatable from the masterset immediately, for example because its grid found it to duplicate
+     * another simulatable.
+     */
+    public void removeFromMaster() {
+        if (masterSet != null) {
+            masterSet.remove(this);
+        }
+    }
+
+    /**
+     * Lets the masterset know that a grid has received its first pending change since it was last updated, if the
+     * masterset keeps track of that
+     *
+     * @param changedGrid the grid
+     */
+    private void changed(Grid changedGrid) {
+        if (masterSet instanceof SimulatableRegistry registry) {
+            registry.changed(changedGrid);
+        }
+    }
+
     /**
      * Removes this simulatable from the model in the next step
      */
@@ -84,33 +215,64 @@ public abstract class Simulatable {
     public abstract void simulateStep();
 
     /**
-     * Sets the current state to be the computed state
+     * Records that some state that identifies this simulatable (other than its location) changes in the current
+     * state switch, so that its containing grid re-examines it for duplicates.
+     */
+    protected void markStateChanged() {
+        stateChanged = true;
+    }
+
+    /**
+     * Sets the current state to be the computed state. Spawns, moves and removals are reported to the grids involved,
+     * which apply them to their occupancy upon {@link Grid#updateMapAndDeduplicate()}.
      */
     public void stateSwitchStep() {
         while (!toAddNextStep.isEmpty()) {
             Simulatable newElement = toAddNextStep.poll();
-            grid.add(newElement);
-            masterSet.add(newElement);
+            if (newElement.getContainerGrid().spawn(newElement)) {
+                changed(newElement.getContainerGrid());
+            }
+            newElement.setMasterSet(masterSet);
+            if (!newElement.isStatic()) {
+                newElement.addToMaster();
+            }
         }
         if (removeInNextStep) {
-            grid.remove(this);
-            masterSet.remove(this);
+            if (grid.despawn(this)) {
+                changed(grid);
+            }
+            if (masterSet != null) {
+                masterSet.remove(this);
+            }
         } else {
+            boolean moved = !location.equals(nextLocation);
             location = nextLocation;
             if (nextGrid != null) {
                 assert nextGrid != grid;
-                grid.remove(this);
-                nextGrid.add(this);
+                if (grid.despawn(this)) {
+                    changed(grid);
+                }
+                SubGrid entered = nextGrid.getParent();
+                if (entered != null && entered.getContainerGrid() == grid && entered.transit(this)) {
+                    //the subgrid replays the outcome of this traversal itself
+                    if (masterSet != null) {
+                        masterSet.remove(this);
+                    }
+                } else if (nextGrid.spawn(this)) {
+                    changed(nextGrid);
+                }
                 nextGrid = null;
+            } else if ((moved || stateChanged) && grid.relocate(this)) {
+                changed(grid);
             }
         }
+        stateChanged = false;
     }
 
     private void changeGridNow(Grid nextGrid, GridItem nextLocation) {
         this.location = nextLocation;
         this.nextLocation = nextLocation;
-        this.grid.remove(this);
-        nextGrid.add(this);
+        this.grid = nextGrid;
         this.nextGrid = null;
     }
 
@@ -135,7 +297,9 @@ public abstract class Simulatable {
     }
 
     /**
-     * Returns all simulatables that occupy some square adjacent to this simulatable in a specific direction
+     * Returns all simulatables that occupy some square adjacent to this simulatable in a specific direction. This
+     * allocates a new set on each call, so it is not meant for the simulation step; the step tests its neighbours with
+     * {@link Grid#anyInDirection(int, Direction, int, int, java.util.function.Predicate)} instead.
      *
      * @param direction direction of this simulatable
      * @return set of other simulatables adjacent
@@ -144,6 +308,68 @@ public abstract class Simulatable {
         return getContainerGrid().getInDirection(getLocation(), direction, getWidth(), getHeight());
     }
 
+    /**
+     * Returns whether a barrier that currently blocks is adjacent to this simulatable in a specific direction
+     *
+     * @param direction direction in which to look
+     * @return true iff a blocking barrier is adjacent in that direction
+     */
+    protected boolean blockingBarrierInDirection(Direction direction) {
+        return getContainerGrid().blockingBarrierInDirection(getCell(), direction, getWidth(), getHeight());
+    }
+
+    /**
+     * Returns whether any barrier, blocking or not, is adjacent to this simulatable in a specific direction
+     *
+     * @param direction direction in which to look
+     * @return true iff a barrier is adjacent in that direction
+     */
+    protected boolean barrierInDirection(Direction direction) {
+        return getContainerGrid().barrierInDirection(getCell(), direction, getWidth(), getHeight());
+    }
+
+    /**
+     * Returns the SubGrid adjacent to this simulatable in a specific direction
+     *
+     * @param direction direction in which to look
+     * @return the SubGrid, or null if there is none
+     */
+    protected SubGrid subGridInDirection(Direction direction) {
+        return getContainerGrid().subGridInDirection(getCell(), direction, getWidth(), getHeight());
+    }
+
+    /**
+     * Returns where this simulatable would enter the grid of an adjacent SubGrid when moving in a specific direction
+     *
+     * @param direction direction of movement
+     * @return the portal into the grid of the SubGrid, or null if no SubGrid is adjacent or its edge there is not linked
+     */
+    private Portal inwardLinkInDirection(Direction direction) {
+        if (getWidth() == 1 && getHeight() == 1) {
+            Portal portal = getContainerGrid().portal(getCell(), direction);
+            return portal != null && portal.isLinked() ? portal : null;
+        }
+        SubGrid subGrid = subGridInDirection(direction);
+        if (subGrid == null) {
+            return null;
+        }
+        int index = direction.isHorizontal() ? getLocation().y() - subGrid.getLocation().y() : getLocation().x() - subGrid.getLocation().x();
+        GridItem link = subGrid.findInwardLink(direction.opposite(), index);
+        return link == null ? null : new Portal(subGrid.getSubgrid(), subGrid.getSubgrid().cellOf(link));
+    }
+
+    /**
+     * Returns where this simulatable would enter the grid around the parent SubGrid when crossing an exported edge of
+     * its grid in a specific direction
+     *
+     * @param direction direction of movement
+     * @return location in the grid around the parent SubGrid
+     */
+    private GridItem outwardLinkInDirection(Direction direction) {
+        Grid container = getContainerGrid().getParent().getContainerGrid();
+        return container.item(getContainerGrid().exitCell(getCell(), direction));
+    }
+
     /**
      * Changes the simulatable's location in the next simulation step
      *
@@ -151,7 +377,7 @@ public abstract class Simulatable {
      * @param verticalDistance   horizontal distance to travel upwards
      */
     protected void move(int horizontalDistance, int verticalDistance) {
-        nextLocation = new GridItem(Math.floorMod(nextLocation.x() + horizontalDistance, grid.getWidth()), Math.floorMod(nextLocation.y() + verticalDistance, grid.getHeight()));
+        nextLocation = grid.item(grid.cell(nextLocation.x() + horizontalDistance, nextLocation.y() + verticalDistance));
     }
 
     /**
@@ -162,7 +388,7 @@ public abstract class Simulatable {
      * @param verticalDistance   horizontal distance to travel upwards
      */
     protected void moveNow(int horizontalDistance, int verticalDistance) {
-        location = new GridItem(Math.floorMod(nextLocation.x() + horizontalDistance, grid.getWidth()), Math.floorMod(nextLocation.y() + verticalDistance, grid.getHeight()));
+        location = grid.item(grid.cell(nextLocation.x() + horizontalDistance, nextLocation.y() + verticalDistance));
         nextLocation = location;
     }
 
@@ -176,7 +402,17 @@ public abstract class Simulatable {
     }
 
     /**
-     * Returns all grid positions that this simulatable occupies
+     * Returns the key of the cell of the left-bottommost square of this simulatable in its containing grid
+     *
+     * @return the cell key, see {@link Grid#cell(int, int)}
+     */
+    public int getCell() {
+        return grid.cellOf(location);
+    }
+
+    /**
+     * Returns all grid positions that this simulatable occupies. This allocates a new set on each call, so it is not
+     * meant for the simulation step, which works on cell keys instead (see {@link #getCell()}).
      *
      * @return all grid positions
      */
@@ -184,7 +420,7 @@ public abstract class Simulatable {
         Set<GridItem> res = new HashSet<>();
         for (int x = 0; x < getWidth(); x++) {
             for (int y = 0; y < getHeight(); y++) {
-                res.add(new GridItem(Math.floorMod(getLocation().x() + x, getContainerGrid().getWidth()), Math.floorMod(getLocation().y() + y, getContainerGrid().getHeight())));
+                res.add(getContainerGrid().item(getContainerGrid().cell(getLocation().x() + x, getLocation().y() + y)));
             }
         }
         return res;
@@ -249,28 +485,21 @@ public abstract class Simulatable {
      * @param direction direction to travel in
      */
     protected void advance(Direction direction) {
-        if (getInDirection(direction).stream().anyMatch(obj -> obj instanceof SubGrid)) {
-            List<SubGrid> subgrids = getInDirection(direction).stream().filter(obj -> obj instanceof SubGrid).map(x -> (SubGrid) x).toList();
-            assert subgrids.size() == 1;
-            SubGrid subGrid = subgrids.get(0);
-            try {
-                GridItem teleportTo = subGrid.getInwardLink(direction.opposite(), getLocation().x() - subGrid.getLocation().x(), getLocation().y() - subGrid.getLocation().y());
-                changeGrid(subGrid.getSubgrid(), teleportTo);
-                return;
-            } catch (SubGrid.NoLinkException ignored) {
-                //continue normally
-            }
+        Portal teleportTo = inwardLinkInDirection(direction);
+        if (teleportTo != null) {
+            changeGrid(teleportTo.grid(), teleportTo.location());
+            return;
         }
         EdgeType gridEdge = gridEdgeInDirection(direction);
         switch (gridEdge) {
-            case EMPTY -> {
+            case EXPORT -> {
                 if (getContainerGrid().getParent() == null) {
                     removeFromMasterInNextStep();
                 } else {
-                    changeGrid(getContainerGrid().getParent().getContainerGrid(), getContainerGrid().getParent().getOutwardLink(direction, direction.isHorizontal() ? getLocation().y() : getLocation().x()));
+                    changeGrid(getContainerGrid().getParent().getContainerGrid(), outwardLinkInDirection(direction));
                 }
             }
-            case EXPORT, PAD, UNMARKED -> {
+            case EMPTY, PAD, UNMARKED -> {
                 switch (direction) {
                     case UP -> move(0, 1);
                     case DOWN -> move(0, -1);
@@ -282,6 +511,17 @@ public abstract class Simulatable {
 
     }
 
+    /**
+     * Changes the simulatable's location immediately (in the current step). This should only be called for simulatables
+     * that have not yet been added to a model.
+     *
+     * @param location new location
+     */
+    public void setLocationNow(GridItem location) {
+        this.location = location;
+        this.nextLocation = location;
+    }
+
     /**
      * Changes the simulatable's location immediately (in the current step) by moving one step in the specified direction.
      * This should only be called for simulatables that have not yet been added to a model.
@@ -289,17 +529,10 @@ public abstract class Simulatable {
      * @param direction direction to travel in
      */
     protected void advanceNow(Direction direction) {
-        if (getInDirection(direction).stream().anyMatch(obj -> obj instanceof SubGrid)) {
-            List<SubGrid> subgrids = getInDirection(direction).stream().filter(obj -> obj instanceof SubGrid).map(x -> (SubGrid) x).toList();
-            assert subgrids.size() == 1;
-            SubGrid subGrid = subgrids.get(0);
-            try {
-                GridItem teleportTo = subGrid.getInwardLink(direction.opposite(), getLocation().x() - subGrid.getLocation().x(), getLocation().y() - subGrid.getLocation().y());
-                changeGridNow(subGrid.getSubgrid(), teleportTo);
-                return;
-            } catch (SubGrid.NoLinkException e) {
-                //continue normally
-            }
+        Portal teleportTo = inwardLinkInDirection(direction);
+        if (teleportTo != null) {
+            changeGridNow(teleportTo.grid(), teleportTo.location());
+            return;
         }
         EdgeType gridEdge = gridEdgeInDirection(direction);
         switch (gridEdge) {
@@ -307,7 +540,7 @@ public abstract class Simulatable {
                 if (getContainerGrid().getParent() == null) {
                     removeFromMasterInNextStep();
                 } else {
-                    changeGridNow(getContainerGrid().getParent().getContainerGrid(), getContainerGrid().getParent().getOutwardLink(direction, direction.isHorizontal() ? getLocation().y() : getLocation().x()));
+                    changeGridNow(getContainerGrid().getParent().getContainerGrid(), outwardLinkInDirection(direction));
                 }
             }
             case EMPTY, UNMARKED, PAD -> {
@@ -329,10 +562,10 @@ public abstract class Simulatable {
      * @return true iff moment would be blocked
      */
     protected boolean blockedInDirection(Direction direction) {
-        return getContainerGrid().blockedInDirection(getLocation(), direction, getWidth(), getHeight());
+        return getContainerGrid().blockedInDirection(getCell(), direction, getWidth(), getHeight());
     }
 
     private EdgeType gridEdgeInDirection(Direction direction) {
-        return getContainerGrid().gridEdgeInDirection(getLocation(), direction);
+        return getContainerGrid().gridEdgeInDirection(getCell(), direction);
     }
 }
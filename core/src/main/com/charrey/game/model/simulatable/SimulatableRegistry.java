@@ -0,0 +1,257 @@
+package com.charrey.game.model.simulatable;
+
+import com.charrey.game.model.Grid;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent set of the simulatables that are subject to simulation (the masterset), which simulatables may join and
+ * leave from any thread without locking. Members occupy slots in a sequence of fixed-size segments: adding a member
+ * claims the next slot with a single atomic increment, and removing it clears its slot, which the member remembers.
+ * Slots are never moved while a step is underway, so the slots up to {@link #extent()} can be split into contiguous
+ * ranges and processed in parallel without copying them; members added during a phase are appended after the extent
+ * the phase started with. Between steps, {@link #compact()} closes the gaps left by removed members.
+ * <p>
+ * The registry also keeps track of which grids have changes pending, so that only those grids need to be updated after
+ * a step. Those are recorded without locking as well: each claims the next index of an array with a single atomic
+ * increment. The array is grown between steps if a step changed more grids than it holds; the grids that did not fit
+ * go into an overflow queue in the meantime. A simulatable can be a member of at most one registry.
+ */
+public class SimulatableRegistry extends AbstractSet<Simulatable> {
+
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int MAX_SEGMENTS = 1 << 15;
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Simulatable[].class);
+
+    /**
+     * Slot of a simulatable that is not a member of any registry
+     */
+    static final int ABSENT = -1;
+
+    private final AtomicReferenceArray<Simulatable[]> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final AtomicInteger extent = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger changedCount = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Grid> changedOverflow = new ConcurrentLinkedQueue<>();
+    private Grid[] changedGrids = new Grid[16]; //reused, as a queue would allocate a node for every change of a grid
+
+    @Override
+    public boolean add(Simulatable simulatable) {
+        int slot = extent.getAndIncrement();
+        if (slot >>> SEGMENT_SHIFT >= MAX_SEGMENTS) {
+            extent.getAndDecrement();
+            throw new IllegalStateException("Cannot simulate more than " + (long) MAX_SEGMENTS * SEGMENT_SIZE + " simulatables at once.");
+        }
+        Simulatable[] segment = segment(slot);
+        SLOTS.setVolatile(segment, slot & (SEGMENT_SIZE - 1), simulatable);
+        if (!simulatable.claimRegistrySlot(slot)) {
+            //already a member; the claimed slot stays empty until the next compaction
+            SLOTS.setVolatile(segment, slot & (SEGMENT_SIZE - 1), null);
+            return false;
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Simulatable simulatable)) {
+            return false;
+        }
+        int slot = simulatable.releaseRegistrySlot();
+        if (slot == ABSENT) {
+            return false;
+        }
+        SLOTS.setVolatile(segments.get(slot >>> SEGMENT_SHIFT), slot & (SEGMENT_SIZE - 1), null);
+        size.decrementAndGet();
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Simulatable simulatable && simulatable.getRegistrySlot() != ABSENT && get(simulatable.getRegistrySlot()) == simulatable;
+    }
+
+    /**
+     * Returns the member in some slot
+     *
+     * @param slot slot, smaller than {@link #extent()}
+     * @return the member, or null if the slot is empty
+     */
+    public Simulatable get(int slot) {
+        Simulatable[] segment = segments.get(slot >>> SEGMENT_SHIFT);
+        return segment == null ? null : (Simulatable) SLOTS.getVolatile(segment, slot & (SEGMENT_SIZE - 1));
+    }
+
+    /**
+     * Returns the number of slots that have been claimed since the last compaction. All members occupy a slot below
+     * this number, but some of those slots may be empty.
+     *
+     * @return the extent
+     */
+    public int extent() {
+        return extent.get();
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Applies an action to all members that occupy a slot below the current extent. Members that are added while this
+     * method runs are not visited.
+     *
+     * @param action action to apply
+     */
+    @Override
+    public void forEach(Consumer<? super Simulatable> action) {
+        int end = extent();
+        for (int slot = 0; slot < end; slot++) {
+            Simulatable simulatable = get(slot);
+            if (simulatable != null) {
+                action.accept(simulatable);
+            }
+        }
+    }
+
+    @Override
+    public @NotNull Iterator<Simulatable> iterator() {
+        return new Iterator<>() {
+            private final int end = extent();
+            private int slot = advance(0);
+            private Simulatable current = null;
+
+            private int advance(int from) {
+                while (from < end && get(from) == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < end;
+            }
+
+            @Override
+            public Simulatable next() {
+                if (slot >= end) {
+                    throw new NoSuchElementException();
+                }
+                current = get(slot);
+                slot = advance(slot + 1);
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                SimulatableRegistry.this.remove(current);
+                current = null;
+            }
+        };
+    }
+
+    /**
+     * Moves all members to the lowest slots, keeping their order, and reduces the extent accordingly. This must not be
+     * called while other threads add or remove members.
+     */
+    public void compact() {
+        int end = extent.get();
+        int target = 0;
+        for (int slot = 0; slot < end; slot++) {
+            Simulatable simulatable = get(slot);
+            if (simulatable == null) {
+                continue;
+            }
+            if (target != slot) {
+                SLOTS.setVolatile(segments.get(target >>> SEGMENT_SHIFT), target & (SEGMENT_SIZE - 1), simulatable);
+                SLOTS.setVolatile(segments.get(slot >>> SEGMENT_SHIFT), slot & (SEGMENT_SIZE - 1), null);
+                simulatable.moveRegistrySlot(target);
+            }
+            target++;
+        }
+        extent.set(target);
+    }
+
+    @Override
+    public void clear() {
+        int end = extent.get();
+        for (int slot = 0; slot < end; slot++) {
+            Simulatable simulatable = get(slot);
+            if (simulatable != null) {
+                simulatable.releaseRegistrySlot();
+                SLOTS.setVolatile(segments.get(slot >>> SEGMENT_SHIFT), slot & (SEGMENT_SIZE - 1), null);
+            }
+        }
+        extent.set(0);
+        size.set(0);
+        Arrays.fill(changedGrids, null);
+        changedOverflow.clear();
+        changedCount.set(0);
+    }
+
+    /**
+     * Records that a grid has received its first pending change since it was last updated
+     *
+     * @param grid the grid
+     */
+    public void changed(Grid grid) {
+        int index = changedCount.getAndIncrement();
+        if (index < changedGrids.length) {
+            changedGrids[index] = grid; //the end of the phase publishes the write to the thread that applies the changes
+        } else {
+            changedOverflow.add(grid);
+        }
+    }
+
+    /**
+     * Applies an action to every grid that has changed since the previous call, and forgets about those grids. Grids
+     * are visited in the order in which they were first changed, apart from those that overflowed the array. This must
+     * not be called while other threads record changes.
+     *
+     * @param action action to apply, typically {@link Grid#updateMapAndDeduplicate()}
+     */
+    public void forEachChangedGrid(Consumer<Grid> action) {
+        int visited = 0;
+        while (visited < changedCount.get()) {
+            Grid grid;
+            if (visited < changedGrids.length) {
+                grid = changedGrids[visited];
+                changedGrids[visited] = null;
+            } else {
+                grid = changedOverflow.remove();
+            }
+            visited++;
+            action.accept(grid);
+        }
+        changedCount.set(0);
+        if (visited > changedGrids.length) {
+            changedGrids = new Grid[Integer.highestOneBit(visited) << 1];
+        }
+    }
+
+    private Simulatable[] segment(int slot) {
+        int index = slot >>> SEGMENT_SHIFT;
+        Simulatable[] segment = segments.get(index);
+        if (segment == null) {
+            segments.compareAndSet(index, null, new Simulatable[SEGMENT_SIZE]);
+            segment = segments.get(index);
+        }
+        return segment;
+    }
+}
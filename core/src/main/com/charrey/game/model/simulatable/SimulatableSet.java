@@ -0,0 +1,225 @@
+package com.charrey.game.model.simulatable;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Set of simulatables indexed by their {@link Simulatable#getId() id}. The members are kept in a dense array, so that
+ * iterating and copying the set touch only the members themselves; a linear-probing table maps each id to the index of
+ * its member in that array. Ids are scrambled before they are placed in the table: since they are allocated
+ * sequentially, they would otherwise fill a single contiguous run of it, and a lookup of an id that maps into that run
+ * would have to probe through all of it.
+ * <p>
+ * Adding a member appends it at index {@code size() - 1}; removing a member moves the last member into its index. This
+ * lets callers keep data about members in arrays that run parallel to this set. This class is not thread-safe.
+ */
+public class SimulatableSet extends AbstractSet<Simulatable> {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY = -1;
+
+    private Simulatable[] members = new Simulatable[INITIAL_CAPACITY];
+    private long[] ids = new long[2 * INITIAL_CAPACITY];
+    private int[] positions = new int[2 * INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Creates a new, empty SimulatableSet
+     */
+    public SimulatableSet() {
+        Arrays.fill(positions, EMPTY);
+    }
+
+    @Override
+    public boolean add(Simulatable simulatable) {
+        if (find(simulatable.getId()) != EMPTY) {
+            return false;
+        }
+        if (size == members.length) {
+            grow();
+        }
+        members[size] = simulatable;
+        insert(simulatable.getId(), size);
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof Simulatable simulatable)) {
+            return false;
+        }
+        int entry = find(simulatable.getId());
+        if (entry == EMPTY || members[positions[entry]] != simulatable) {
+            return false;
+        }
+        int position = positions[entry];
+        delete(entry);
+        size--;
+        if (position != size) {
+            Simulatable last = members[size];
+            members[position] = last;
+            positions[find(last.getId())] = position;
+        }
+        members[size] = null;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != EMPTY;
+    }
+
+    /**
+     * Returns the index of a member in this set
+     *
+     * @param o object to look for
+     * @return its index, or -1 if it is not a member
+     */
+    public int indexOf(Object o) {
+        if (!(o instanceof Simulatable simulatable)) {
+            return EMPTY;
+        }
+        int entry = find(simulatable.getId());
+        return entry != EMPTY && members[positions[entry]] == simulatable ? positions[entry] : EMPTY;
+    }
+
+    /**
+     * Returns the member at an index of this set
+     *
+     * @param index index, between 0 (inclusive) and size() (exclusive)
+     * @return the member
+     */
+    public Simulatable get(int index) {
+        Objects.checkIndex(index, size);
+        return members[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(members, 0, size, null);
+        Arrays.fill(positions, EMPTY);
+        size = 0;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Simulatable> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(members[i]);
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        return Arrays.copyOf(members, size, Object[].class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        if (a.length < size) {
+            return (T[]) Arrays.copyOf(members, size, a.getClass());
+        }
+        System.arraycopy(members, 0, a, 0, size);
+        if (a.length > size) {
+            a[size] = null;
+        }
+        return a;
+    }
+
+    /**
+     * Returns an iterator over the members, from the last index to the first, so that removing the current member
+     * (which moves an already visited member into its index) does not cause any member to be skipped.
+     *
+     * @return the iterator
+     */
+    @Override
+    public @NotNull Iterator<Simulatable> iterator() {
+        return new Iterator<>() {
+            private int next = size - 1;
+            private Simulatable current = null;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Simulatable next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                current = members[next--];
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                SimulatableSet.this.remove(current);
+                current = null;
+            }
+        };
+    }
+
+    private int home(long id) {
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & (ids.length - 1);
+    }
+
+    private int find(long id) {
+        int mask = ids.length - 1;
+        for (int entry = home(id); positions[entry] != EMPTY; entry = (entry + 1) & mask) {
+            if (ids[entry] == id) {
+                return entry;
+            }
+        }
+        return EMPTY;
+    }
+
+    private void insert(long id, int position) {
+        int mask = ids.length - 1;
+        int entry = home(id);
+        while (positions[entry] != EMPTY) {
+            entry = (entry + 1) & mask;
+        }
+        ids[entry] = id;
+        positions[entry] = position;
+    }
+
+    /**
+     * Removes an entry from the table, shifting later entries of the same probe sequence back so that lookups need no
+     * tombstones
+     */
+    private void delete(int entry) {
+        int mask = ids.length - 1;
+        int hole = entry;
+        for (int next = (entry + 1) & mask; positions[next] != EMPTY; next = (next + 1) & mask) {
+            if (((next - home(ids[next])) & mask) >= ((next - hole) & mask)) {
+                ids[hole] = ids[next];
+                positions[hole] = positions[next];
+                hole = next;
+            }
+        }
+        positions[hole] = EMPTY;
+    }
+
+    private void grow() {
+        members = Arrays.copyOf(members, members.length * 2);
+        ids = new long[members.length * 2];
+        positions = new int[members.length * 2];
+        Arrays.fill(positions, EMPTY);
+        for (int i = 0; i < size; i++) {
+            insert(members[i].getId(), i);
+        }
+    }
+}
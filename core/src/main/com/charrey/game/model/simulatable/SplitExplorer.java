@@ -7,9 +7,7 @@ import com.charrey.game.texture.CachedGameFieldBlockTexture;
 import com.charrey.game.texture.Drawable;
 import com.charrey.game.util.GridItem;
 
-import java.util.ArrayList;
 import java.util.EnumMap;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -69,20 +67,18 @@ public class SplitExplorer extends DirectionalSimulatable {
     @Override
     public void simulateStep() {
         if (blockedInDirection(getDirection())) {
-            List<Direction> toSpawnIn = new ArrayList<>(2);
-            if (!blockedInDirection(getDirection().rotateLeft())) {
-                toSpawnIn.add(getDirection().rotateLeft());
-            }
-            if (!blockedInDirection(getDirection().rotateRight())) {
-                toSpawnIn.add(getDirection().rotateRight());
-            }
-            if (toSpawnIn.isEmpty()) {
+            Direction left = getDirection().rotateLeft();
+            Direction right = getDirection().rotateRight();
+            boolean leftFree = !blockedInDirection(left);
+            boolean rightFree = !blockedInDirection(right);
+            if (!leftFree && !rightFree) {
                 removeFromMasterInNextStep();
             } else {
-                setDirection(toSpawnIn.get(0));
-                advance(toSpawnIn.get(0));
-                if (toSpawnIn.size() > 1) {
-                    SplitExplorer splitOff = new SplitExplorer(toSpawnIn.get(1), getLocation());
+                Direction first = leftFree ? left : right;
+                setDirection(first);
+                advance(first);
+                if (leftFree && rightFree) {
+                    SplitExplorer splitOff = new SplitExplorer(right, getLocation());
                     splitOff.setContainingGrid(getContainerGrid());
                     splitOff.advanceNow();
                     addInNextStep(splitOff);
@@ -107,17 +103,4 @@ public class SplitExplorer extends DirectionalSimulatable {
             case LEFT -> "<";
         };
     }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        SplitExplorer that = (SplitExplorer) o;
-        return getDirection() == that.getDirection() && getLocation().equals(that.getLocation()) /*&& getPhase() == that.getPhase()*/;
-    }
-
-    @Override
-    public int hashCode() {
-        return getClass().hashCode();
-    }
 }
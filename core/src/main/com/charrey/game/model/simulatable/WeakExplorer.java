@@ -53,7 +53,6 @@ public class WeakExplorer extends DirectionalSimulatable {
     @Override
     public void simulateStep() {
         if (blockedInDirection(getDirection())) {
-            System.out.println("The weak explorer broke into a thousand pieces");
             removeFromMasterInNextStep();
         } else {
             advance();
@@ -75,17 +74,4 @@ public class WeakExplorer extends DirectionalSimulatable {
     public String shortName() {
         return "Weak";
     }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        WeakExplorer that = (WeakExplorer) o;
-        return getDirection() == that.getDirection() && getLocation().equals(that.getLocation());
-    }
-
-    @Override
-    public int hashCode() {
-        return getClass().hashCode();
-    }
 }
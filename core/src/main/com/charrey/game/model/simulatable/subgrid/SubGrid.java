@@ -2,6 +2,8 @@ package com.charrey.game.model.simulatable.subgrid;
 
 import com.charrey.game.model.Direction;
 import com.charrey.game.model.Grid;
+import com.charrey.game.model.Zobrist;
+import com.charrey.game.model.simulatable.DirectionalSimulatable;
 import com.charrey.game.model.simulatable.EdgeType;
 import com.charrey.game.model.simulatable.Simulatable;
 import com.charrey.game.texture.Drawable;
@@ -16,6 +18,8 @@ import static com.charrey.game.model.Direction.*;
 /**
  * A simulatable that emulates an entire other grid whilst being smaller than the grid it simulates. Each edge of the contained
  * grid marked as padded or exported corresponds to an edge of this rectangular simulatable, and these edges are physically linked.
+ * If it has a {@link TransitCache}, explorers that enter it do not actually enter the contained grid; instead, the explorers
+ * that would leave it are spawned by this simulatable at the right moments.
  */
 public class SubGrid extends Simulatable {
 
@@ -24,6 +28,10 @@ public class SubGrid extends Simulatable {
     private final Map<Direction, List<? extends Link>> inwardLinks; //from down to up and from left to right
     private final Map<Direction, List<GridItem>> outwardLinks; //from down to up and from left to right
     private final Path location;
+    private final Set<ScheduledTransit> pendingTransits = new LinkedHashSet<>();
+    private TransitCache transitCache = null;
+    private BitSet blockedExits = null;
+    private long tick = 0;
 
 
     /**
@@ -133,6 +141,21 @@ public class SubGrid extends Simulatable {
         return ((ExportedLink) inwardLinks.get(direction).get(index)).getLocation();
     }
 
+    /**
+     * Returns the location in the subgrid that a moving simulatable would end up when entering the subgrid from a
+     * specific direction into a specific edge of this simulatable, if that edge is linked. Unlike
+     * {@link #getInwardLink(Direction, int)}, an unlinked edge is not exceptional here, so that callers that probe edges
+     * in the simulation step do not allocate an exception.
+     *
+     * @param direction Direction of the edge of this simulatable the subgrid is approached from
+     * @param index     Index of the edge. For the upper- and lower edge this is a horizontal index from left to right.
+     *                  For the left and right edge this is a vertical index from bottom to top.
+     * @return Location within the subgrid that the simulatable would end up, or null if the edge is padded.
+     */
+    public GridItem findInwardLink(Direction direction, int index) {
+        return inwardLinks.get(direction).get(index) instanceof ExportedLink link ? link.getLocation() : null;
+    }
+
     /**
      * Returns the location in the container grid that a moving simulatable would end up when exiting the subgrid from a
      * specific direction into a specific edge of the subgrid
@@ -147,8 +170,139 @@ public class SubGrid extends Simulatable {
     }
 
     @Override
-    public void simulateStep() {
-        //nothing. This simulatable is static.
+    public void setContainingGrid(Grid grid) {
+        super.setContainingGrid(grid);
+        subgrid.setParent(this); //the exported edges of the contained grid now lead into a different grid
+    }
+
+    /**
+     * Sets the cache from which this subgrid replays traversals of explorers
+     *
+     * @param transitCache the cache, or null if explorers should actually traverse the contained grid
+     */
+    synchronized void setTransitCache(TransitCache transitCache) {
+        this.transitCache = transitCache;
+        this.blockedExits = null;
+    }
+
+    /**
+     * Forgets the replayed traversals that are underway, as if the explorers replayed by them were removed
+     */
+    synchronized void clearTransits() {
+        pendingTransits.clear();
+    }
+
+    /**
+     * Lets an explorer that enters the contained grid in the current state switch traverse it by replaying a recorded
+     * traversal, if possible. If so, the explorer should not be added to the contained grid. A traversal that has not
+     * been recorded yet is traced without holding the lock of this subgrid.
+     *
+     * @param traveller the explorer, located where it enters the contained grid
+     * @return true iff the traversal is replayed by this subgrid
+     */
+    public boolean transit(Simulatable traveller) {
+        TransitCache cache;
+        BitSet exits;
+        synchronized (this) {
+            if (transitCache == null) {
+                return false;
+            }
+            if (blockedExits == null) {
+                blockedExits = TransitCache.blockedExits(this);
+            }
+            cache = transitCache;
+            exits = blockedExits;
+        }
+        TransitCache.Transit transit = cache.lookup(this, exits, traveller);
+        if (transit == null) {
+            return false;
+        }
+        if (!transit.exits().isEmpty()) {
+            int direction = ((DirectionalSimulatable) traveller).getDirection().ordinal();
+            int cell = traveller.getLocation().y() * subgrid.getWidth() + traveller.getLocation().x();
+            synchronized (this) {
+                //an identical traversal started at the same time would have merged with this one inside the subgrid
+                pendingTransits.add(new ScheduledTransit(tick, Zobrist.key(subgrid.getZobristId(), cell, traveller.getClass(), direction), transit));
+                addToMaster();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A subgrid is static unless it is replaying traversals
+     *
+     * @return true iff no replayed traversal is pending
+     */
+    @Override
+    public synchronized boolean isStatic() {
+        return pendingTransits.isEmpty();
+    }
+
+    @Override
+    public void stateSwitchStep() {
+        super.stateSwitchStep();
+        synchronized (this) {
+            //a transit scheduled concurrently either precedes this check or adds this subgrid again
+            if (isStatic()) {
+                removeFromMaster();
+            }
+        }
+    }
+
+    /**
+     * Returns a hash of the traversals this subgrid is replaying, which belong to the state of the simulation as much
+     * as the explorers in the contained grid do
+     *
+     * @return the hash
+     */
+    public synchronized long getTransitHash() {
+        long res = 0;
+        for (ScheduledTransit scheduled : pendingTransits) {
+            res ^= Zobrist.underway(scheduled.key(), tick - scheduled.start());
+        }
+        return res;
+    }
+
+    @Override
+    public boolean sameState(Simulatable other) {
+        return super.sameState(other) && subgrid.sameState(((SubGrid) other).subgrid) && underway().equals(((SubGrid) other).underway());
+    }
+
+    /**
+     * Returns how often each traversal is underway for how many steps, which is all that determines what the traversals
+     * this subgrid is replaying will still do
+     */
+    private synchronized Map<ImmutablePair<Long, TransitCache.Transit>, Integer> underway() {
+        Map<ImmutablePair<Long, TransitCache.Transit>, Integer> res = new HashMap<>();
+        for (ScheduledTransit scheduled : pendingTransits) {
+            res.merge(ImmutablePair.of(tick - scheduled.start(), scheduled.transit()), 1, Integer::sum);
+        }
+        return res;
+    }
+
+    @Override
+    public synchronized void simulateStep() {
+        if (pendingTransits.isEmpty()) {
+            return;
+        }
+        tick++;
+        Iterator<ScheduledTransit> iterator = pendingTransits.iterator();
+        while (iterator.hasNext()) {
+            ScheduledTransit scheduled = iterator.next();
+            long elapsed = tick - scheduled.start();
+            for (TransitCache.Exit exit : scheduled.transit().exits()) {
+                if (exit.step() == elapsed) {
+                    Simulatable explorer = exit.prototype().copy();
+                    explorer.setLocationNow(new GridItem(getLocation().x() + exit.offset().x(), getLocation().y() + exit.offset().y()));
+                    explorer.setContainingGrid(getContainerGrid());
+                    addInNextStep(explorer);
+                }
+            }
+            if (elapsed >= scheduled.transit().duration()) {
+                iterator.remove();
+            }
+        }
     }
 
     @Override
@@ -181,10 +335,14 @@ public class SubGrid extends Simulatable {
     }
 
     @Override
-    public Simulatable copy() {
+    public synchronized Simulatable copy() {
         Grid gridCopy = new Grid(subgrid.getWidth(), subgrid.getHeight());
         gridCopy.copy(subgrid);
-        return new SubGrid(getLocation(), gridCopy, getPath());
+        SubGrid res = new SubGrid(getLocation(), gridCopy, getPath());
+        res.transitCache = transitCache;
+        res.tick = tick;
+        res.pendingTransits.addAll(pendingTransits);
+        return res;
     }
 
     @Override
@@ -211,6 +369,9 @@ public class SubGrid extends Simulatable {
         return location;
     }
 
+    private record ScheduledTransit(long start, long key, TransitCache.Transit transit) {
+    }
+
     private static abstract class Link {
     }
 
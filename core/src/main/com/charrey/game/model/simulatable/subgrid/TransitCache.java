@@ -0,0 +1,309 @@
+package com.charrey.game.model.simulatable.subgrid;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.condition.ConditionWithReference;
+import com.charrey.game.model.simulatable.*;
+import com.charrey.game.util.GridItem;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Memo table of what happens to explorers that enter a SubGrid. Since explorers only interact with barriers and
+ * subgrids (explorers that coincide merely merge, which the grid they leave into does as well), the outcome of a
+ * traversal depends only on the static contents of the subgrid, the cells just outside its exits, and the entering
+ * explorer. These contents are copied when a SubGrid is given the cache, which happens between steps, so that a
+ * traversal traced during a parallel state switch never starts from a grid that other threads are changing. The first time an explorer enters a subgrid in a specific way, the traversal is simulated in a sandbox that
+ * contains nothing else; which explorers leave the subgrid, where and after how many steps is recorded. Later
+ * traversals are replayed by the SubGrid from this record. Outcomes are shared by all SubGrids that load the same file.
+ * <p>
+ * A SubGrid only uses the cache if nothing can observe the explorers inside it: it must not contain RandomExplorers or
+ * ConditionalBarriers (at any depth), no condition may refer to a grid inside it, and no ConditionalBarrier may be
+ * just outside of its exits.
+ */
+public class TransitCache {
+
+    /**
+     * Maximum number of steps a traversal is simulated for. Traversals that take longer are assumed to never end and
+     * are simulated normally. The sandbox runs inside the state switch of the step in which the explorer enters, so
+     * this bounds how long that step can be held up.
+     */
+    static final int TRACE_LIMIT = 1024;
+    private static final GridItem SANDBOX_LOCATION = new GridItem(1, 1);
+
+    private final Map<Object, Map<TransitKey, Optional<Transit>>> templates = new HashMap<>();
+    private final Map<Object, Grid> contents = new HashMap<>();
+
+    /**
+     * Forgets all recorded traversals and the contents they were traced in
+     */
+    public synchronized void clear() {
+        templates.clear();
+        contents.clear();
+    }
+
+    /**
+     * Returns the number of different traversals whose outcome has been recorded
+     *
+     * @return the number of traversals
+     */
+    public synchronized int size() {
+        return templates.values().stream().mapToInt(table -> (int) table.values().stream().filter(Optional::isPresent).count()).sum();
+    }
+
+    /**
+     * Lets all SubGrids in a model that are eligible use this cache, and all others simulate their traversals normally
+     *
+     * @param root root grid of the model
+     */
+    public void attach(Grid root) {
+        Set<Grid> referenced = Collections.newSetFromMap(new IdentityHashMap<>());
+        forEachSimulatable(root, simulatable -> {
+            if (simulatable instanceof ConditionalBarrier barrier && barrier.getCondition() instanceof ConditionWithReference reference) {
+                referenced.add(reference.getGrid());
+            }
+        });
+        forEachSimulatable(root, simulatable -> {
+            if (simulatable instanceof SubGrid subGrid) {
+                if (isEligible(subGrid, referenced)) {
+                    use(subGrid);
+                } else {
+                    subGrid.setTransitCache(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Lets a SubGrid use this cache, copying its static contents if no SubGrid that loads the same file has done so
+     * before. Must not be called while the SubGrid is being stepped.
+     *
+     * @param subGrid the subgrid
+     */
+    private void use(SubGrid subGrid) {
+        Object template = template(subGrid);
+        synchronized (this) {
+            if (!contents.containsKey(template)) {
+                Grid copy = new Grid(subGrid.getSubgrid().getWidth(), subGrid.getSubgrid().getHeight());
+                copy.copy(subGrid.getSubgrid());
+                removeMoving(copy);
+                contents.put(template, copy);
+            }
+        }
+        subGrid.setTransitCache(this);
+    }
+
+    private static Object template(SubGrid subGrid) {
+        return subGrid.getPath() != null ? subGrid.getPath() : subGrid.getSubgrid();
+    }
+
+    /**
+     * Lets all SubGrids in a model simulate their traversals normally
+     *
+     * @param root root grid of the model
+     */
+    public static void detach(Grid root) {
+        forEachSimulatable(root, simulatable -> {
+            if (simulatable instanceof SubGrid subGrid) {
+                subGrid.setTransitCache(null);
+            }
+        });
+    }
+
+    private static void forEachSimulatable(Grid grid, Consumer<Simulatable> action) {
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            action.accept(simulatable);
+            if (simulatable instanceof SubGrid subGrid) {
+                forEachSimulatable(subGrid.getSubgrid(), action);
+            }
+        }
+    }
+
+    private static boolean isEligible(SubGrid subGrid, Set<Grid> referenced) {
+        boolean[] eligible = {!referenced.contains(subGrid.getSubgrid())};
+        forEachSimulatable(subGrid.getSubgrid(), simulatable -> {
+            if (simulatable instanceof RandomExplorer || simulatable instanceof ConditionalBarrier) {
+                eligible[0] = false;
+            } else if (simulatable instanceof SubGrid nested && referenced.contains(nested.getSubgrid())) {
+                eligible[0] = false;
+            }
+        });
+        Grid container = subGrid.getContainerGrid();
+        for (GridItem exit : exits(subGrid)) {
+            if (container.getAtStrictGridLocation(exit).stream().anyMatch(ConditionalBarrier.class::isInstance)) {
+                eligible[0] = false;
+            }
+        }
+        return eligible[0];
+    }
+
+    private static List<GridItem> exits(SubGrid subGrid) {
+        List<GridItem> res = new ArrayList<>();
+        for (Direction direction : Direction.values()) {
+            int edgeLength = direction.isHorizontal() ? subGrid.getSubgrid().getHeight() : subGrid.getSubgrid().getWidth();
+            for (int index = 0; index < edgeLength; index++) {
+                GridItem exit = subGrid.getOutwardLink(direction, index);
+                if (exit != null) {
+                    res.add(exit);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns which exits of a SubGrid are blocked from the outside, i.e. at which exits explorers cannot leave it
+     *
+     * @param subGrid subgrid in its container grid
+     * @return a bit for each exit, in the order of {@link #exits(SubGrid)}, set iff that exit is blocked
+     */
+    static BitSet blockedExits(SubGrid subGrid) {
+        BitSet res = new BitSet();
+        int bit = 0;
+        for (Direction direction : Direction.values()) {
+            int edgeLength = direction.isHorizontal() ? subGrid.getSubgrid().getHeight() : subGrid.getSubgrid().getWidth();
+            for (int index = 0; index < edgeLength; index++) {
+                GridItem exit = subGrid.getOutwardLink(direction, index);
+                if (exit != null) {
+                    Grid container = subGrid.getContainerGrid();
+                    res.set(bit, container.blockedInDirection(container.neighbour(container.cell(exit.x(), exit.y()), direction.opposite()), direction, 1, 1));
+                    bit++;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns the recorded outcome of an explorer entering a SubGrid, recording it first if this is the first such
+     * traversal
+     *
+     * @param subGrid   the subgrid that is entered
+     * @param exits     exits of the subgrid that are blocked, see {@link #blockedExits(SubGrid)}
+     * @param traveller the explorer, located where it enters the grid inside the subgrid
+     * @return the outcome, or null if the traversal cannot be replayed
+     */
+    Transit lookup(SubGrid subGrid, BitSet exits, Simulatable traveller) {
+        if (!(traveller instanceof DirectionalSimulatable directional) || traveller instanceof RandomExplorer) {
+            return null;
+        }
+        Object template = template(subGrid);
+        TransitKey key = new TransitKey(exits.stream().boxed().toList(), traveller.getLocation(), traveller.getClass(), directional.getDirection());
+        Optional<Transit> res;
+        Grid staticContents;
+        synchronized (this) {
+            res = templates.computeIfAbsent(template, x -> new HashMap<>()).get(key);
+            staticContents = contents.get(template);
+        }
+        if (res == null) {
+            if (staticContents == null) {
+                return null;
+            }
+            //traced without holding the lock, so that other threads can look up recorded traversals meanwhile; if two
+            //threads trace the same traversal, both use the outcome recorded first
+            Optional<Transit> traced = Optional.ofNullable(trace(subGrid, staticContents, exits, directional));
+            synchronized (this) {
+                res = templates.computeIfAbsent(template, x -> new HashMap<>()).putIfAbsent(key, traced);
+            }
+            if (res == null) {
+                res = traced;
+            }
+        }
+        return res.orElse(null);
+    }
+
+    /**
+     * Simulates a single explorer traversing a copy of the static contents of a SubGrid, placed in a container grid
+     * that is just large enough to hold it and its blocked exits. The static contents are only read, so several
+     * threads may trace from them at once.
+     */
+    private Transit trace(SubGrid subGrid, Grid staticContents, BitSet exits, DirectionalSimulatable traveller) {
+        Grid inner = new Grid(staticContents.getWidth(), staticContents.getHeight());
+        inner.copy(staticContents);
+        SubGrid sandbox = new SubGrid(SANDBOX_LOCATION, inner, subGrid.getPath());
+        Grid container = new Grid(subGrid.getWidth() + 2, subGrid.getHeight() + 2);
+        container.add(sandbox);
+        List<GridItem> sandboxExits = exits(sandbox);
+        for (int bit = exits.nextSetBit(0); bit >= 0; bit = exits.nextSetBit(bit + 1)) {
+            container.add(DefaultBarrier.factory().makeSimulatable(sandboxExits.get(bit)));
+        }
+        Simulatable explorer = traveller.copy();
+        inner.add(explorer);
+
+        Set<Simulatable> masterSet = Collections.synchronizedSet(new SimulatableSet());
+        List<Grid> grids = new ArrayList<>();
+        grids.add(container);
+        forEachSimulatable(container, simulatable -> {
+            simulatable.setMasterSet(masterSet);
+            if (!simulatable.isStatic()) {
+                masterSet.add(simulatable);
+            }
+            if (simulatable instanceof SubGrid nested) {
+                grids.add(nested.getSubgrid());
+                if (nested == sandbox) {
+                    nested.setTransitCache(null);
+                } else {
+                    use(nested);
+                }
+            }
+        });
+
+        List<Exit> res = new ArrayList<>();
+        for (int step = 1; step <= TRACE_LIMIT; step++) {
+            List<Simulatable> simulatables = new ArrayList<>(masterSet);
+            simulatables.forEach(Simulatable::simulateStep);
+            simulatables.forEach(Simulatable::stateSwitchStep);
+            grids.forEach(Grid::updateMapAndDeduplicate);
+            for (Simulatable left : new ArrayList<>(container.getSimulatables())) {
+                if (left instanceof DirectionalSimulatable) {
+                    GridItem offset = new GridItem(left.getLocation().x() - SANDBOX_LOCATION.x(), left.getLocation().y() - SANDBOX_LOCATION.y());
+                    res.add(new Exit(step, offset, left.copy()));
+                    container.remove(left);
+                    masterSet.remove(left);
+                }
+            }
+            if (masterSet.isEmpty()) {
+                return new Transit(res, step);
+            }
+        }
+        return null;
+    }
+
+    private static void removeMoving(Grid grid) {
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            if (simulatable instanceof SubGrid subGrid) {
+                subGrid.clearTransits();
+                removeMoving(subGrid.getSubgrid());
+            } else if (!(simulatable instanceof Barrier)) {
+                grid.remove(simulatable);
+            }
+        }
+    }
+
+    /**
+     * Key of a traversal, holding its blocked exits as an immutable list of their bit indices rather than the mutable
+     * BitSet that the SubGrid passes in
+     */
+    private record TransitKey(List<Integer> blockedExits, GridItem entry, Class<?> type, Direction direction) {
+    }
+
+    /**
+     * Explorer that leaves a SubGrid during a traversal
+     *
+     * @param step      number of steps after entering the subgrid that the explorer appears outside of it
+     * @param offset    location of the explorer relative to the left-bottommost square of the subgrid
+     * @param prototype the explorer as it appears
+     */
+    record Exit(int step, GridItem offset, Simulatable prototype) {
+    }
+
+    /**
+     * Recorded outcome of a traversal
+     *
+     * @param exits    explorers that leave the subgrid, in order of their step
+     * @param duration number of steps until the last explorer has left or died
+     */
+    record Transit(List<Exit> exits, int duration) {
+    }
+}
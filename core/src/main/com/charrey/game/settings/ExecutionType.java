@@ -9,7 +9,21 @@ public enum ExecutionType {
      */
     SERIAL,
     /**
-     * Using many threads
+     * Using many threads. The outcome of each step is identical to that of SERIAL: changes are merged in order of
+     * simulatable id and RandomExplorers draw from their own seeded streams.
      */
-    PARALLEL
+    PARALLEL,
+    /**
+     * Using many threads, each simulating a rectangular region of the grid
+     */
+    TILED,
+    /**
+     * Using a virtual thread per grid, so that each SubGrid interior is simulated concurrently
+     */
+    VIRTUAL,
+    /**
+     * Using a single thread or many threads, whichever the simulator measures to be faster for the current number of
+     * simulatables
+     */
+    ADAPTIVE
 }
\ No newline at end of file
@@ -14,10 +14,22 @@ public class Settings {
      * How many simulation per second the simulator should aim to achieve
      */
     public static double requestedSimulationsPerSecond = 1d;
+    /**
+     * Whether the simulator should run as fast as possible, ignoring the requested number of simulations per second
+     */
+    public static boolean turboSimulation = false;
     /**
      * How many simulation per second the simulator has achieved
      */
     public static Long actualSimulationsPerSecond = null;
+    /**
+     * Number of steps after which the simulation repeats itself, or null if no cycle has been detected (yet)
+     */
+    public static Long detectedPeriod = null;
+    /**
+     * Step at which the simulation first returned to an earlier state, or null if no cycle has been detected (yet)
+     */
+    public static Long firstRepeatStep = null;
     /**
      * How the simulator should compute the semantic step of the simulation
      */
@@ -26,6 +38,38 @@ public class Settings {
      * How the simulator should compute the state switch step of the simulation
      */
     public static ExecutionType stateSwitchStep = SERIAL;
+    /**
+     * How the simulator currently executes the steps of the simulation with the ADAPTIVE execution type, or null if no
+     * step is executed adaptively
+     */
+    public static String adaptiveExecution = null;
+    /**
+     * Whether the simulator should store the explorers in primitive arrays instead of simulating the objects, if the
+     * grid being simulated contains nothing but default barriers and explorers. The result of each step is the same
+     * either way, so this is on unless turned off in the settings.
+     */
+    public static boolean explorerArrays = true;
+    /**
+     * Whether the simulator should simulate a grid as bit planes if it contains nothing but default barriers,
+     * WeakExplorers and SplitExplorers
+     */
+    public static boolean bitboards = true;
+    /**
+     * Whether the simulator should let explorers skip the corridors between barriers in one go, rather than step them
+     * cell by cell, if the grid contains nothing but barriers, static SubGrids, WeakExplorers, SplitExplorers and
+     * RandomExplorers (see {@link com.charrey.game.simulator.CorridorEngine#supports(com.charrey.game.model.Grid)}). This
+     * pays off on sparse boards, where explorers travel far between barriers, and lets the simulation jump to a far step
+     * at once. It takes precedence over {@link #bitboards}, but is off unless turned on in the settings, since the
+     * simulator does not look for cycles in such grids: hashing their state after every step would cost as much as
+     * stepping them cell by cell.
+     */
+    public static boolean corridorJumps = false;
+    /**
+     * Whether SubGrids should replay recorded traversals of explorers instead of simulating the explorers inside them,
+     * where this cannot be observed. The first traversal of each kind is traced in a sandbox during the step in which it
+     * starts, which may hold that step up, so this is off unless turned on in the settings.
+     */
+    public static boolean subgridTransitCache = false;
     /**
      * Type of block that should be placed if the user clicks on the game field while no simulation is running.
      */
@@ -0,0 +1,28 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.Set;
+
+/**
+ * Performs the simulation step of the simulator serially or in parallel, whichever is measured to be cheaper for the
+ * current number of simulatables (see {@link PhaseTuner})
+ */
+public class AdaptiveSemanticSimulationStep implements SemanticSimulationStep {
+
+    private final PhaseTuner tuner = new PhaseTuner("semantic step", Simulatable::simulateStep);
+
+    @Override
+    public void executeOneStep(Set<Simulatable> simulatables) {
+        tuner.run(simulatables);
+    }
+
+    /**
+     * Returns a description of how this step is currently executed
+     *
+     * @return the description
+     */
+    public String describe() {
+        return tuner.describe();
+    }
+}
@@ -0,0 +1,28 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.Set;
+
+/**
+ * This class performs the switch from current state to next state serially or in parallel, whichever is measured to be
+ * cheaper for the current number of simulatables (see {@link PhaseTuner}).
+ */
+public class AdaptiveStateSwitchSimulationStep implements StateSwitchSimulationStep {
+
+    private final PhaseTuner tuner = new PhaseTuner("state switch", Simulatable::stateSwitchStep);
+
+    @Override
+    public void nextStep(Set<Simulatable> simulatables) {
+        tuner.run(simulatables);
+    }
+
+    /**
+     * Returns a description of how this step is currently executed
+     *
+     * @return the description
+     */
+    public String describe() {
+        return tuner.describe();
+    }
+}
@@ -0,0 +1,314 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.Zobrist;
+import com.charrey.game.model.simulatable.*;
+import com.charrey.game.util.GridItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Simulates a grid that contains nothing but default barriers, WeakExplorers and SplitExplorers as a set of bit planes:
+ * one plane per explorer type and direction, in which each cell is a single bit. Rows are stored as consecutive longs.
+ * A step moves all explorers of a plane with word-level shifts, and decides on turning, splitting and breaking with
+ * masks of the cells whose neighbour in some direction is a barrier. Since a bit can only be set once, explorers that
+ * would duplicate each other are merged by construction.
+ */
+public class BitboardEngine implements GridEngine {
+
+    private static final int WEAK = 0;
+    private static final int SPLIT = 1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int UP = Direction.UP.ordinal();
+    private static final int DOWN = Direction.DOWN.ordinal();
+    private static final int LEFT = Direction.LEFT.ordinal();
+    private static final Class<?>[] CLASSES = {WeakExplorer.class, SplitExplorer.class};
+    private static final int[] LEFT_OF = new int[DIRECTIONS.length];
+    private static final int[] RIGHT_OF = new int[DIRECTIONS.length];
+
+    static {
+        for (Direction direction : DIRECTIONS) {
+            LEFT_OF[direction.ordinal()] = direction.rotateLeft().ordinal();
+            RIGHT_OF[direction.ordinal()] = direction.rotateRight().ordinal();
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final int lastBit;
+    private final long lastWordMask;
+    private final long gridId;
+    private long stateHash;
+    private final long[][] blocked = new long[DIRECTIONS.length][];
+    private final long[][] exportedEdges = new long[DIRECTIONS.length][];
+    private long[][] planes = new long[2 * DIRECTIONS.length][];
+    private long[][] nextPlanes = new long[2 * DIRECTIONS.length][];
+
+    /**
+     * Creates a new BitboardEngine that holds the current state of a grid
+     *
+     * @param grid grid to simulate, which must be supported
+     */
+    public BitboardEngine(Grid grid) {
+        if (!supports(grid)) {
+            throw new IllegalArgumentException("Grid contains simulatables that cannot be simulated by this engine.");
+        }
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.wordsPerRow = (width + 63) / 64;
+        this.lastBit = (width - 1) % 64;
+        this.lastWordMask = lastBit == 63 ? -1L : (1L << (lastBit + 1)) - 1;
+        this.gridId = grid.getZobristId();
+        this.stateHash = grid.getStateHash();
+        for (int plane = 0; plane < planes.length; plane++) {
+            planes[plane] = new long[wordsPerRow * height];
+            nextPlanes[plane] = new long[wordsPerRow * height];
+        }
+        long[] barriers = new long[wordsPerRow * height];
+        long[] exported = new long[wordsPerRow * height];
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            int x = simulatable.getLocation().x();
+            int y = simulatable.getLocation().y();
+            if (simulatable instanceof DefaultBarrier) {
+                set(barriers, x, y);
+            } else {
+                int type = simulatable instanceof WeakExplorer ? WEAK : SPLIT;
+                set(planes[plane(type, ((DirectionalSimulatable) simulatable).getDirection().ordinal())], x, y);
+            }
+        }
+        for (Direction direction : DIRECTIONS) {
+            int d = direction.ordinal();
+            Arrays.fill(exported, 0);
+            exportedEdges[d] = new long[direction.isHorizontal() ? height : wordsPerRow];
+            for (int index : grid.getExport(direction)) {
+                switch (direction) {
+                    case UP -> set(exported, index, height - 1);
+                    case DOWN -> set(exported, index, 0);
+                    case LEFT -> set(exported, 0, index);
+                    case RIGHT -> set(exported, width - 1, index);
+                }
+                if (direction.isHorizontal()) {
+                    exportedEdges[d][index] = 1L << (direction == Direction.LEFT ? 0 : lastBit);
+                } else {
+                    exportedEdges[d][index >>> 6] |= 1L << index;
+                }
+            }
+            blocked[d] = new long[wordsPerRow * height];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int neighbourX = switch (direction) {
+                        case LEFT -> x == 0 ? width - 1 : x - 1;
+                        case RIGHT -> x == width - 1 ? 0 : x + 1;
+                        default -> x;
+                    };
+                    int neighbourY = switch (direction) {
+                        case DOWN -> y == 0 ? height - 1 : y - 1;
+                        case UP -> y == height - 1 ? 0 : y + 1;
+                        default -> y;
+                    };
+                    if (get(barriers, neighbourX, neighbourY) && !get(exported, x, y)) {
+                        set(blocked[d], x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a grid can be simulated by this engine: it must be a root grid and contain only default barriers,
+     * WeakExplorers and SplitExplorers.
+     *
+     * @param grid grid
+     * @return true iff this engine can simulate the grid
+     */
+    public static boolean supports(Grid grid) {
+        if (grid.getParent() != null) {
+            return false;
+        }
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            Class<?> type = simulatable.getClass();
+            if (type != DefaultBarrier.class && type != WeakExplorer.class && type != SplitExplorer.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int plane(int type, int direction) {
+        return type * DIRECTIONS.length + direction;
+    }
+
+    private void set(long[] plane, int x, int y) {
+        plane[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+    }
+
+    private boolean get(long[] plane, int x, int y) {
+        return (plane[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    @Override
+    public int size() {
+        int count = 0;
+        for (long[] plane : planes) {
+            for (long word : plane) {
+                count += Long.bitCount(word);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void step() {
+        for (long[] plane : nextPlanes) {
+            Arrays.fill(plane, 0);
+        }
+        for (int row = 0; row < height; row++) {
+            for (int word = 0; word < wordsPerRow; word++) {
+                int index = row * wordsPerRow + word;
+                for (int d = 0; d < DIRECTIONS.length; d++) {
+                    stepWord(row, word, index, d);
+                }
+            }
+        }
+        long[][] previous = planes;
+        planes = nextPlanes;
+        nextPlanes = previous;
+        updateStateHash();
+    }
+
+    /**
+     * Toggles the Zobrist keys of all explorers that appeared or disappeared in the last step
+     */
+    private void updateStateHash() {
+        for (int plane = 0; plane < planes.length; plane++) {
+            Class<?> type = CLASSES[plane / DIRECTIONS.length];
+            int direction = plane % DIRECTIONS.length;
+            long[] current = planes[plane];
+            long[] previous = nextPlanes[plane];
+            for (int index = 0; index < current.length; index++) {
+                long changed = current[index] ^ previous[index];
+                while (changed != 0) {
+                    int x = (index % wordsPerRow) * 64 + Long.numberOfTrailingZeros(changed);
+                    stateHash ^= Zobrist.key(gridId, (index / wordsPerRow) * width + x, type, direction);
+                    changed &= changed - 1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long stateHash() {
+        return stateHash;
+    }
+
+    private void stepWord(int row, int word, int index, int d) {
+        long weak = planes[plane(WEAK, d)][index];
+        long split = planes[plane(SPLIT, d)][index];
+        if ((weak | split) == 0) {
+            return;
+        }
+        long blockedAhead = blocked[d][index];
+        long leaving = exportedBits(d, row, word);
+        shiftInto(weak & ~blockedAhead & ~leaving, d, row, word, nextPlanes[plane(WEAK, d)]);
+        shiftInto(split & ~blockedAhead & ~leaving, d, row, word, nextPlanes[plane(SPLIT, d)]);
+        long stuck = split & blockedAhead;
+        if (stuck != 0) {
+            int left = LEFT_OF[d];
+            int right = RIGHT_OF[d];
+            long canTurnLeft = ~blocked[left][index];
+            long canTurnRight = ~blocked[right][index];
+            long turnLeft = stuck & canTurnLeft;
+            long turnRight = stuck & ~canTurnLeft & canTurnRight;
+            long splitOff = stuck & canTurnLeft & canTurnRight;
+            long leavingRight = exportedBits(right, row, word);
+            shiftInto(turnLeft & ~exportedBits(left, row, word), left, row, word, nextPlanes[plane(SPLIT, left)]);
+            shiftInto((turnRight | splitOff) & ~leavingRight, right, row, word, nextPlanes[plane(SPLIT, right)]);
+            //as in the object model, a split-off facing an exported edge stays in place and leaves the grid in the next step
+            nextPlanes[plane(SPLIT, right)][index] |= splitOff & leavingRight;
+        }
+    }
+
+    /**
+     * Returns the cells of a word from which moving in some direction leaves the grid through an exported edge
+     *
+     * @param d    ordinal of the direction
+     * @param row  row of the word
+     * @param word index of the word within its row
+     * @return bits of the cells that leave the grid
+     */
+    private long exportedBits(int d, int row, int word) {
+        if (d == UP) {
+            return row == height - 1 ? exportedEdges[d][word] : 0;
+        } else if (d == DOWN) {
+            return row == 0 ? exportedEdges[d][word] : 0;
+        } else if (d == LEFT) {
+            return word == 0 ? exportedEdges[d][row] : 0;
+        } else {
+            return word == wordsPerRow - 1 ? exportedEdges[d][row] : 0;
+        }
+    }
+
+    /**
+     * Moves the explorers in one word of a plane one cell in some direction, wrapping around the edges of the grid,
+     * and adds them to another plane.
+     *
+     * @param bits        explorers to move
+     * @param d           ordinal of the direction to move in
+     * @param row         row of the word
+     * @param word        index of the word within its row
+     * @param destination plane to add the moved explorers to
+     */
+    private void shiftInto(long bits, int d, int row, int word, long[] destination) {
+        if (bits == 0) {
+            return;
+        }
+        int rowStart = row * wordsPerRow;
+        if (d == UP) {
+            destination[(row == height - 1 ? 0 : rowStart + wordsPerRow) + word] |= bits;
+        } else if (d == DOWN) {
+            destination[(row == 0 ? (height - 1) * wordsPerRow : rowStart - wordsPerRow) + word] |= bits;
+        } else if (d == LEFT) {
+            destination[rowStart + word] |= bits >>> 1;
+            if (word == 0) {
+                destination[rowStart + wordsPerRow - 1] |= (bits & 1L) << lastBit;
+            } else {
+                destination[rowStart + word - 1] |= bits << 63;
+            }
+        } else if (word == wordsPerRow - 1) {
+            destination[rowStart + word] |= (bits << 1) & lastWordMask;
+            destination[rowStart] |= (bits >>> lastBit) & 1L;
+        } else {
+            destination[rowStart + word] |= bits << 1;
+            destination[rowStart + word + 1] |= bits >>> 63;
+        }
+    }
+
+    @Override
+    public void store(Grid grid) {
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            if (!(simulatable instanceof Barrier)) {
+                grid.remove(simulatable);
+            }
+        }
+        for (int type : new int[]{WEAK, SPLIT}) {
+            for (Direction direction : DIRECTIONS) {
+                long[] plane = planes[plane(type, direction.ordinal())];
+                for (int index = 0; index < plane.length; index++) {
+                    long bits = plane[index];
+                    while (bits != 0) {
+                        int x = (index % wordsPerRow) * 64 + Long.numberOfTrailingZeros(bits);
+                        GridItem location = grid.item(grid.cell(x, index / wordsPerRow));
+                        DirectionalSimulatable explorer = type == WEAK ? WeakExplorer.factory().makeSimulatable(location) : SplitExplorer.factory(direction).makeSimulatable(location);
+                        explorer.setDirectionNow(direction);
+                        grid.spawn(explorer);
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        }
+        grid.updateMapAndDeduplicate();
+    }
+}
@@ -0,0 +1,1066 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.Portal;
+import com.charrey.game.model.Zobrist;
+import com.charrey.game.model.condition.*;
+import com.charrey.game.model.simulatable.*;
+import com.charrey.game.model.simulatable.subgrid.SubGrid;
+import com.charrey.game.util.GridItem;
+
+import java.util.*;
+
+/**
+ * Simulates a grid by letting explorers skip the corridors between decisions. The grid may contain default barriers,
+ * ConditionalBarriers, SubGrids and 1x1 WeakExplorers, SplitExplorers and RandomExplorers. The cells of the grid and of
+ * all grids nested in it are numbered together, and for each direction, a jump table holds how many cells an explorer
+ * can travel from each cell before it reaches a stop: a cell where it may do anything but move on to the next cell of
+ * its lane. An explorer stops in front of a barrier (blocking or not, since a ConditionalBarrier may open or close), in
+ * front of the edge of a SubGrid (which leads into the grid of the SubGrid, or blocks if the edge is padded), at an
+ * exported edge (which leads out of its grid), and where it enters or leaves a region that the condition of a
+ * ConditionalBarrier watches. An explorer is only touched at the step in which it reaches a stop: until then, it is a
+ * run along a lane (a row or a column of one of the grids) that starts at a known phase, and is rescheduled in an event
+ * queue ordered by the step of its next stop. A step therefore costs time proportional to the number of explorers that
+ * stop, not to the number that move, and {@link #advance(long)} skips the steps in which no explorer stops altogether.
+ * <p>
+ * Whether a ConditionalBarrier blocks depends only on the explorers in the cells its condition watches (and on the
+ * barriers and SubGrids there, which do not move). Explorers only enter or leave those cells at a stop, so the engine
+ * counts the explorers in each watched region as runs reach stops, and tests a condition again only after its count
+ * changed. As in the object model, explorers decide with whether the barriers blocked after the previous step. A run
+ * that stops where it can move on after all (in front of a barrier that is open, or at the edge of a region) is
+ * rescheduled at its next stop.
+ * <p>
+ * Explorers do not influence each other apart from merging when they are equal, and two runs of the same type and
+ * direction along the same lane are equal at every step if and only if their phases are equal. Runs are indexed by
+ * their phase, so that merges are detected exactly when a run starts, without looking at the cells around it. As in
+ * the object model, the explorer with the lowest id survives a merge, which matters for RandomExplorers: each run of a
+ * RandomExplorer carries its id and its random stream, and draws from the stream like {@link RandomExplorer} does.
+ * <p>
+ * The simulatables of the grid are only brought up to date on a call to {@link #store(Grid)}, and the hash of the state
+ * is only computed on a call to {@link #stateHash()}. That takes time proportional to the number of runs, since every
+ * run changes cell in every step, so this engine does not hash incrementally (see {@link #hashesIncrementally()}) and
+ * the simulator does not look for cycles while it runs.
+ */
+public class CorridorEngine implements GridEngine {
+
+    private static final byte WEAK = 0;
+    private static final byte SPLIT = 1;
+    private static final byte RANDOM = 2;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final byte[] LEFT_OF = new byte[DIRECTIONS.length];
+    private static final byte[] RIGHT_OF = new byte[DIRECTIONS.length];
+    private static final byte[] OPPOSITE_OF = new byte[DIRECTIONS.length];
+    private static final int[] STEP = new int[DIRECTIONS.length];
+    private static final Class<?>[] CLASSES = {WeakExplorer.class, SplitExplorer.class, RandomExplorer.class};
+    private static final Comparator<Simulatable> BY_ID = Comparator.comparingLong(Simulatable::getId);
+    private static final int FREE = Integer.MAX_VALUE;
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final int LEAVE = -1; //target of a move out of the model
+    private static final int NONE = -2; //no exported edge, SubGrid edge or split-off
+    private static final int PADDED = -3; //padded edge of a SubGrid
+
+    //kinds of conditions
+    private static final byte ALWAYS = 0;
+    private static final byte NEVER_TRUE = 1;
+    private static final byte EXISTS = 2;
+    private static final byte NOT_EXISTS = 3;
+    private static final byte EMPTY = 4;
+    private static final byte AT_LEAST = 5;
+
+    static {
+        for (Direction direction : DIRECTIONS) {
+            LEFT_OF[direction.ordinal()] = (byte) direction.rotateLeft().ordinal();
+            RIGHT_OF[direction.ordinal()] = (byte) direction.rotateRight().ordinal();
+            OPPOSITE_OF[direction.ordinal()] = (byte) direction.opposite().ordinal();
+            STEP[direction.ordinal()] = switch (direction) {
+                case LEFT, DOWN -> -1;
+                case RIGHT, UP -> 1;
+            };
+        }
+    }
+
+    //grids of the model, the root first, and where their cells and lanes start among those of all grids together
+    private final int[] offsets;
+    private final int[] widths;
+    private final int[] heights;
+    private final int[] laneBases;
+    private final long[] zobristIds;
+    private final int[][][] exits; //for each grid, direction and index of an edge, where crossing it leads, or NONE
+    private final int[] laneOrigins;
+    private final int[] laneStrides;
+    private final int[] laneLengths;
+
+    private final long[] barriers; //one bit per cell, set iff a barrier occupies it
+    private final long[] defaultBarriers;
+    private final long[] blocking; //one bit per cell, set iff a barrier that currently blocks occupies it
+    private final byte[] portalDirections; //per cell, the directions in which a move crosses the edge of a SubGrid
+    private final Map<Integer, Integer> portals = new HashMap<>(); //cell * 4 + direction to the cell entered, or PADDED
+
+    //conditions of the ConditionalBarriers, and the number of explorers in the region each of them watches
+    private final int conditionCount;
+    private final byte[] conditionKinds;
+    private final int[] thresholds;
+    private final int[] conditionCells;
+    private final int[] regionGrids;
+    private final int[] regionLefts;
+    private final int[] regionBottoms;
+    private final int[] regionRights;
+    private final int[] regionTops;
+    private final boolean[] occupiedStatically;
+    private final int[] explorerCounts;
+    private final boolean[] conditionBlocking;
+    private final boolean[] stale;
+    private final long[] watched; //one bit per cell, set iff some condition watches it
+    private boolean anyStale = false;
+
+    private final int[][] runs = new int[DIRECTIONS.length][];
+    private final PhaseIndex index = new PhaseIndex();
+    private final long staticHash;
+    private long time = 0;
+    private long hashTime = -1;
+    private long stateHash;
+
+    //runs, stored in slots that are reused once their run ends
+    private int count = 0;
+    private int slots = 0;
+    private byte[] types = new byte[16];
+    private byte[] directions = new byte[16];
+    private int[] lanes = new int[16];
+    private int[] phases = new int[16];
+    private long[] decisions = new long[16];
+    private long[] starts = new long[16];
+    private long[] ids = new long[16];
+    private long[] streamSeeds = new long[16];
+    private long[] draws = new long[16];
+    private boolean[] live = new boolean[16];
+    private int freeCount = 0;
+    private int[] free = new int[16];
+
+    //binary heap of the slots of the runs that reach a stop, ordered by the step at which they reach it
+    private int queued = 0;
+    private int[] queue = new int[16];
+
+    //runs that stop in the current step, and what they do there
+    private int decidingCount = 0;
+    private int[] deciding = new int[16];
+    private boolean[] continuing = new boolean[16];
+    private int[] nextCells = new int[16];
+    private byte[] nextDirections = new byte[16];
+    private int[] splitOffCells = new int[16];
+
+    /**
+     * Creates a new CorridorEngine that holds the current state of a grid
+     *
+     * @param grid grid to simulate, which must be supported
+     */
+    public CorridorEngine(Grid grid) {
+        if (!supports(grid)) {
+            throw new IllegalArgumentException("Grid contains simulatables that cannot be simulated by this engine.");
+        }
+        List<Grid> model = grids(grid);
+        Map<Grid, Integer> indices = new IdentityHashMap<>();
+        int gridCount = model.size();
+        offsets = new int[gridCount + 1];
+        widths = new int[gridCount];
+        heights = new int[gridCount];
+        laneBases = new int[gridCount + 1];
+        zobristIds = new long[gridCount];
+        for (int g = 0; g < gridCount; g++) {
+            Grid nested = model.get(g);
+            indices.put(nested, g);
+            widths[g] = nested.getWidth();
+            heights[g] = nested.getHeight();
+            zobristIds[g] = nested.getZobristId();
+            offsets[g + 1] = offsets[g] + widths[g] * heights[g];
+            laneBases[g + 1] = laneBases[g] + heights[g] + widths[g];
+        }
+        int cells = offsets[gridCount];
+        laneOrigins = new int[laneBases[gridCount]];
+        laneStrides = new int[laneOrigins.length];
+        laneLengths = new int[laneOrigins.length];
+        exits = new int[gridCount][DIRECTIONS.length][];
+        for (int g = 0; g < gridCount; g++) {
+            for (int y = 0; y < heights[g]; y++) {
+                laneOrigins[laneBases[g] + y] = offsets[g] + y * widths[g];
+                laneStrides[laneBases[g] + y] = 1;
+                laneLengths[laneBases[g] + y] = widths[g];
+            }
+            for (int x = 0; x < widths[g]; x++) {
+                laneOrigins[laneBases[g] + heights[g] + x] = offsets[g] + x;
+                laneStrides[laneBases[g] + heights[g] + x] = widths[g];
+                laneLengths[laneBases[g] + heights[g] + x] = heights[g];
+            }
+            Grid nested = model.get(g);
+            SubGrid parent = nested.getParent();
+            for (Direction direction : DIRECTIONS) {
+                int[] edge = new int[direction.isHorizontal() ? heights[g] : widths[g]];
+                Arrays.fill(edge, NONE);
+                for (int index : nested.getExport(direction)) {
+                    if (index < edge.length) {
+                        edge[index] = parent == null ? LEAVE : offsets[indices.get(parent.getContainerGrid())] + nested.exitCell(edgeCell(g, direction, index), direction);
+                    }
+                }
+                exits[g][direction.ordinal()] = edge;
+            }
+        }
+
+        barriers = new long[(cells + 63) / 64];
+        defaultBarriers = new long[barriers.length];
+        blocking = new long[barriers.length];
+        List<ConditionalBarrier> conditionalBarriers = new ArrayList<>();
+        List<Integer> conditionalCells = new ArrayList<>();
+        boolean anySubGrid = false;
+        for (int g = 0; g < gridCount; g++) {
+            for (Simulatable simulatable : new ArrayList<>(model.get(g).getSimulatables())) {
+                int cell = offsets[g] + model.get(g).cellOf(simulatable.getLocation());
+                if (simulatable instanceof DefaultBarrier) {
+                    barriers[cell >>> 6] |= 1L << cell;
+                    defaultBarriers[cell >>> 6] |= 1L << cell;
+                    blocking[cell >>> 6] |= 1L << cell;
+                } else if (simulatable instanceof ConditionalBarrier barrier) {
+                    barriers[cell >>> 6] |= 1L << cell;
+                    conditionalBarriers.add(barrier);
+                    conditionalCells.add(cell);
+                } else if (simulatable instanceof SubGrid) {
+                    anySubGrid = true;
+                }
+            }
+        }
+        portalDirections = anySubGrid ? new byte[cells] : null;
+        if (anySubGrid) {
+            for (int g = 0; g < gridCount; g++) {
+                Grid nested = model.get(g);
+                if (nested.getSimulatables().stream().noneMatch(SubGrid.class::isInstance)) {
+                    continue;
+                }
+                for (int local = 0; local < widths[g] * heights[g]; local++) {
+                    for (Direction direction : DIRECTIONS) {
+                        Portal portal = nested.portal(local, direction);
+                        if (portal != null) {
+                            int cell = offsets[g] + local;
+                            portalDirections[cell] |= (byte) (1 << direction.ordinal());
+                            portals.put(cell * DIRECTIONS.length + direction.ordinal(), portal.isLinked() ? offsets[indices.get(portal.grid())] + portal.cell() : PADDED);
+                        }
+                    }
+                }
+            }
+        }
+
+        conditionCount = conditionalBarriers.size();
+        conditionKinds = new byte[conditionCount];
+        thresholds = new int[conditionCount];
+        conditionCells = new int[conditionCount];
+        regionGrids = new int[conditionCount];
+        regionLefts = new int[conditionCount];
+        regionBottoms = new int[conditionCount];
+        regionRights = new int[conditionCount];
+        regionTops = new int[conditionCount];
+        occupiedStatically = new boolean[conditionCount];
+        explorerCounts = new int[conditionCount];
+        conditionBlocking = new boolean[conditionCount];
+        stale = new boolean[conditionCount];
+        watched = conditionCount == 0 ? null : new long[barriers.length];
+        for (int k = 0; k < conditionCount; k++) {
+            conditionCells[k] = conditionalCells.get(k);
+            watch(k, conditionalBarriers.get(k).getCondition(), indices);
+        }
+
+        for (byte direction = 0; direction < DIRECTIONS.length; direction++) {
+            runs[direction] = jumpTable(direction);
+        }
+        for (int g = 0; g < gridCount; g++) {
+            for (Simulatable simulatable : new ArrayList<>(model.get(g).getSimulatables())) {
+                if (simulatable instanceof DirectionalSimulatable explorer) {
+                    int cell = offsets[g] + model.get(g).cellOf(explorer.getLocation());
+                    byte direction = (byte) explorer.getDirection().ordinal();
+                    if (explorer instanceof RandomExplorer randomExplorer) {
+                        start(cell, RANDOM, direction, randomExplorer.getId(), randomExplorer.getStreamSeed(), randomExplorer.getDraws());
+                    } else {
+                        start(cell, explorer instanceof WeakExplorer ? WEAK : SPLIT, direction, 0, 0, 0);
+                    }
+                }
+            }
+        }
+        refreshConditions();
+        long hash = 0;
+        for (Grid nested : model) {
+            hash ^= nested.getStateHash();
+        }
+        this.staticHash = hash ^ explorerHash();
+    }
+
+    /**
+     * Returns whether a grid can be simulated by this engine: it must be a root grid, and it and the grids nested in it
+     * must contain only default barriers, SubGrids that are not replaying traversals, and 1x1 ConditionalBarriers,
+     * WeakExplorers, SplitExplorers and RandomExplorers. The condition of each ConditionalBarrier must be constant, or
+     * test whether a cell is occupied or how many explorers a region of one of those grids holds.
+     *
+     * @param grid grid
+     * @return true iff this engine can simulate the grid
+     */
+    public static boolean supports(Grid grid) {
+        if (grid.getParent() != null) {
+            return false;
+        }
+        List<Grid> model = grids(grid);
+        Set<Grid> inModel = Collections.newSetFromMap(new IdentityHashMap<>());
+        inModel.addAll(model);
+        for (Grid nested : model) {
+            for (Simulatable simulatable : new ArrayList<>(nested.getSimulatables())) {
+                if (simulatable instanceof SubGrid subGrid) {
+                    if (!subGrid.isStatic()) {
+                        return false;
+                    }
+                    continue;
+                }
+                Class<?> type = simulatable.getClass();
+                boolean supported = type == DefaultBarrier.class || type == ConditionalBarrier.class || type == WeakExplorer.class || type == SplitExplorer.class || type == RandomExplorer.class;
+                if (!supported || simulatable.getWidth() != 1 || simulatable.getHeight() != 1) {
+                    return false;
+                }
+                if (simulatable instanceof ConditionalBarrier barrier && !supports(barrier.getCondition(), inModel)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean supports(Condition condition, Set<Grid> model) {
+        Class<?> type = condition.getClass();
+        if (type == True.class || type == False.class) {
+            return true;
+        }
+        boolean supported = type == BlockExists.class || type == NotBlockExists.class || type == RegionEmpty.class || type == RegionCountAtLeast.class;
+        return supported && model.contains(condition.getWatchedGrid());
+    }
+
+    /**
+     * Returns a grid and all grids nested in it, the grid itself first and the grids of the SubGrids of each grid in
+     * the order of their ids, so that the same model always yields the same order
+     */
+    private static List<Grid> grids(Grid root) {
+        List<Grid> res = new ArrayList<>();
+        res.add(root);
+        for (int i = 0; i < res.size(); i++) {
+            List<Simulatable> subGrids = new ArrayList<>();
+            for (Simulatable simulatable : new ArrayList<>(res.get(i).getSimulatables())) {
+                if (simulatable instanceof SubGrid) {
+                    subGrids.add(simulatable);
+                }
+            }
+            subGrids.sort(BY_ID);
+            for (Simulatable subGrid : subGrids) {
+                res.add(((SubGrid) subGrid).getSubgrid());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Records what the condition of a ConditionalBarrier tests, and marks the cells it watches
+     */
+    private void watch(int k, Condition condition, Map<Grid, Integer> indices) {
+        conditionKinds[k] = switch (condition) {
+            case True ignored -> ALWAYS;
+            case False ignored -> NEVER_TRUE;
+            case BlockExists ignored -> EXISTS;
+            case NotBlockExists ignored -> NOT_EXISTS;
+            case RegionEmpty ignored -> EMPTY;
+            case RegionCountAtLeast atLeast -> {
+                thresholds[k] = atLeast.getThreshold();
+                yield AT_LEAST;
+            }
+            default -> throw new IllegalArgumentException("Condition cannot be simulated by this engine.");
+        };
+        stale[k] = true;
+        anyStale = true;
+        if (!(condition instanceof ConditionWithReference reference)) {
+            return;
+        }
+        int g = indices.get(reference.getGrid());
+        int regionWidth = reference instanceof RegionCondition region ? region.getWidth() : 1;
+        int regionHeight = reference instanceof RegionCondition region ? region.getHeight() : 1;
+        regionGrids[k] = g;
+        regionLefts[k] = Math.max(reference.getLocation().x(), 0);
+        regionBottoms[k] = Math.max(reference.getLocation().y(), 0);
+        regionRights[k] = Math.max(Math.min(reference.getLocation().x() + regionWidth, widths[g]), regionLefts[k]);
+        regionTops[k] = Math.max(Math.min(reference.getLocation().y() + regionHeight, heights[g]), regionBottoms[k]);
+        for (int y = regionBottoms[k]; y < regionTops[k]; y++) {
+            for (int x = regionLefts[k]; x < regionRights[k]; x++) {
+                int local = y * widths[g] + x;
+                int cell = offsets[g] + local;
+                watched[cell >>> 6] |= 1L << cell;
+                //barriers and SubGrids do not move, but occupy the cell all the same
+                if (reference.getGrid().getAtCell(local).stream().anyMatch(occupant -> !(occupant instanceof DirectionalSimulatable))) {
+                    occupiedStatically[k] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the jump table of a direction: for each cell, the number of steps an explorer that moves in that direction
+     * can take before it stands on a stop, or {@link #FREE} if its lane holds no stop.
+     *
+     * @param direction direction of movement
+     * @return the jump table, indexed by cell
+     */
+    private int[] jumpTable(byte direction) {
+        int[] table = new int[offsets[offsets.length - 1]];
+        boolean horizontal = DIRECTIONS[direction].isHorizontal();
+        int step = STEP[direction];
+        for (int g = 0; g < widths.length; g++) {
+            int firstLane = horizontal ? laneBases[g] : laneBases[g] + heights[g];
+            int endLane = horizontal ? laneBases[g] + heights[g] : laneBases[g + 1];
+            for (int lane = firstLane; lane < endLane; lane++) {
+                int length = laneLengths[lane];
+                int last = -1;
+                for (int position = 0; position < length; position++) {
+                    if (decides(laneCell(lane, position), direction)) {
+                        last = position;
+                    }
+                }
+                if (last == -1) {
+                    for (int position = 0; position < length; position++) {
+                        table[laneCell(lane, position)] = FREE;
+                    }
+                    continue;
+                }
+                //walk against the direction of movement, starting at a stop, so that each cell follows the next
+                int distance = 0;
+                for (int i = 0, position = last; i < length; i++, position = Math.floorMod(position - step, length)) {
+                    int cell = laneCell(lane, position);
+                    distance = decides(cell, direction) ? 0 : distance + 1;
+                    table[cell] = distance;
+                }
+            }
+        }
+        return table;
+    }
+
+    private int laneCell(int lane, int position) {
+        return laneOrigins[lane] + laneStrides[lane] * position;
+    }
+
+    /**
+     * Returns whether a cell is a stop for explorers that move in some direction
+     */
+    private boolean decides(int cell, byte direction) {
+        return exit(cell, direction) != NONE || portal(cell, direction) != NONE || isBarrier(neighbour(cell, direction)) || crossesRegion(cell, direction);
+    }
+
+    /**
+     * Returns whether an explorer that moves into a cell in some direction enters or leaves a region that a condition
+     * watches
+     */
+    private boolean crossesRegion(int cell, byte direction) {
+        if (watched == null) {
+            return false;
+        }
+        int previous = neighbour(cell, OPPOSITE_OF[direction]);
+        if (!isSet(watched, cell) && !isSet(watched, previous)) {
+            return false;
+        }
+        for (int k = 0; k < conditionCount; k++) {
+            if (inRegion(k, cell) != inRegion(k, previous)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean inRegion(int k, int cell) {
+        int g = regionGrids[k];
+        int local = cell - offsets[g];
+        if (local < 0 || local >= offsets[g + 1] - offsets[g]) {
+            return false;
+        }
+        int x = local % widths[g];
+        int y = local / widths[g];
+        return x >= regionLefts[k] && x < regionRights[k] && y >= regionBottoms[k] && y < regionTops[k];
+    }
+
+    private int gridOf(int cell) {
+        if (offsets.length == 2) {
+            return 0;
+        }
+        int found = Arrays.binarySearch(offsets, cell);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private int edgeCell(int g, Direction direction, int index) {
+        return switch (direction) {
+            case UP -> (heights[g] - 1) * widths[g] + index;
+            case DOWN -> index;
+            case LEFT -> index * widths[g];
+            case RIGHT -> index * widths[g] + widths[g] - 1;
+        };
+    }
+
+    /**
+     * Returns the cell adjacent to a cell in a direction, wrapping around the edges of its grid
+     */
+    private int neighbour(int cell, byte direction) {
+        int g = gridOf(cell);
+        int local = cell - offsets[g];
+        int width = widths[g];
+        int height = heights[g];
+        return offsets[g] + switch (DIRECTIONS[direction]) {
+            case UP -> local >= (height - 1) * width ? local - (height - 1) * width : local + width;
+            case DOWN -> local < width ? local + (height - 1) * width : local - width;
+            case LEFT -> local % width == 0 ? local + width - 1 : local - 1;
+            case RIGHT -> local % width == width - 1 ? local - width + 1 : local + 1;
+        };
+    }
+
+    /**
+     * Returns where crossing the edge of the grid of a cell in a direction leads: {@link #LEAVE} out of the model, a
+     * cell of the grid around the parent SubGrid, or {@link #NONE} if the cell is not at an exported edge
+     */
+    private int exit(int cell, byte direction) {
+        int g = gridOf(cell);
+        int local = cell - offsets[g];
+        int x = local % widths[g];
+        int y = local / widths[g];
+        boolean atEdge = switch (DIRECTIONS[direction]) {
+            case UP -> y == heights[g] - 1;
+            case DOWN -> y == 0;
+            case LEFT -> x == 0;
+            case RIGHT -> x == widths[g] - 1;
+        };
+        return atEdge ? exits[g][direction][DIRECTIONS[direction].isHorizontal() ? y : x] : NONE;
+    }
+
+    /**
+     * Returns where moving from a cell in a direction into the edge of a SubGrid leads: a cell of the grid of the
+     * SubGrid, {@link #PADDED} if the edge is padded, or {@link #NONE} if no SubGrid is in that direction
+     */
+    private int portal(int cell, byte direction) {
+        if (portalDirections == null || (portalDirections[cell] & (1 << direction)) == 0) {
+            return NONE;
+        }
+        return portals.get(cell * DIRECTIONS.length + direction);
+    }
+
+    /**
+     * Returns the cell an explorer moves to from a cell in a direction, as {@link Simulatable} does: into the grid of a
+     * SubGrid through a linked edge, out of its grid through an exported edge, or else to the adjacent cell
+     *
+     * @return the cell, or {@link #LEAVE} if the explorer leaves the model
+     */
+    private int move(int cell, byte direction) {
+        int portal = portal(cell, direction);
+        if (portal >= 0) {
+            return portal;
+        }
+        int exit = exit(cell, direction);
+        return exit == NONE ? neighbour(cell, direction) : exit;
+    }
+
+    /**
+     * Returns whether moving from a cell in a direction is blocked, as {@link Grid#blockedInDirection(int, Direction,
+     * int, int)} tells: an exported edge is blocked iff the edge of the parent SubGrid is blocked in the grid around it
+     */
+    private boolean blocked(int cell, byte direction) {
+        int from = cell;
+        for (int exit = exit(from, direction); exit != NONE; exit = exit(from, direction)) {
+            if (exit == LEAVE) {
+                return false;
+            }
+            from = neighbour(exit, OPPOSITE_OF[direction]);
+        }
+        return isBlocking(neighbour(from, direction)) || portal(from, direction) == PADDED;
+    }
+
+    private boolean isBarrier(int cell) {
+        return isSet(barriers, cell);
+    }
+
+    private boolean isBlocking(int cell) {
+        return isSet(blocking, cell);
+    }
+
+    private static boolean isSet(long[] bits, int cell) {
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Counts an explorer that enters (or, with a negative delta, leaves) a cell in the regions that watch it
+     */
+    private void occupy(int cell, int delta) {
+        if (watched == null || !isSet(watched, cell)) {
+            return;
+        }
+        for (int k = 0; k < conditionCount; k++) {
+            if (inRegion(k, cell)) {
+                explorerCounts[k] += delta;
+                stale[k] = true;
+                anyStale = true;
+            }
+        }
+    }
+
+    /**
+     * Tests the conditions whose regions changed since they were last tested, and updates whether their barriers block
+     */
+    private void refreshConditions() {
+        if (!anyStale) {
+            return;
+        }
+        anyStale = false;
+        for (int k = 0; k < conditionCount; k++) {
+            if (!stale[k]) {
+                continue;
+            }
+            stale[k] = false;
+            boolean nowBlocking = !test(k);
+            if (nowBlocking != conditionBlocking[k]) {
+                conditionBlocking[k] = nowBlocking;
+                int cell = conditionCells[k];
+                boolean blocks = isSet(defaultBarriers, cell);
+                for (int j = 0; j < conditionCount && !blocks; j++) {
+                    blocks = conditionCells[j] == cell && conditionBlocking[j];
+                }
+                if (blocks) {
+                    blocking[cell >>> 6] |= 1L << cell;
+                } else {
+                    blocking[cell >>> 6] &= ~(1L << cell);
+                }
+            }
+        }
+    }
+
+    private boolean test(int k) {
+        return switch (conditionKinds[k]) {
+            case ALWAYS -> true;
+            case NEVER_TRUE -> false;
+            case EXISTS -> occupiedStatically[k] || explorerCounts[k] > 0;
+            case NOT_EXISTS -> !occupiedStatically[k] && explorerCounts[k] == 0;
+            case EMPTY -> explorerCounts[k] == 0;
+            default -> explorerCounts[k] >= thresholds[k];
+        };
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean hashesIncrementally() {
+        return false;
+    }
+
+    @Override
+    public long stateHash() {
+        if (hashTime != time) {
+            stateHash = staticHash ^ explorerHash();
+            hashTime = time;
+        }
+        return stateHash;
+    }
+
+    private long explorerHash() {
+        long hash = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (live[slot]) {
+                int cell = cell(slot, time);
+                int g = gridOf(cell);
+                hash ^= Zobrist.key(zobristIds[g], cell - offsets[g], CLASSES[types[slot]], directions[slot]);
+            }
+        }
+        return hash;
+    }
+
+    @Override
+    public void step() {
+        decidingCount = 0;
+        while (queued > 0 && decisions[queue[0]] == time) {
+            int slot = poll();
+            ensureDecidingCapacity(decidingCount + 1);
+            deciding[decidingCount++] = slot;
+            if (watched != null && starts[slot] < time) {
+                //the run moved along its lane onto this stop, which may have taken it into or out of a watched region
+                occupy(cell(slot, time - 1), -1);
+                occupy(cell(slot, time), 1);
+            }
+        }
+        refreshConditions();
+        //every run that ends has left the index before the first new run claims its phase
+        for (int i = 0; i < decidingCount; i++) {
+            decide(i);
+        }
+        time++;
+        for (int i = 0; i < decidingCount; i++) {
+            proceed(i);
+        }
+    }
+
+    /**
+     * Jumps from stop to stop: the steps in between only move runs along their lanes, which takes no work at all, so
+     * the cost does not depend on the number of steps.
+     */
+    @Override
+    public void advance(long steps) {
+        long target = time + steps;
+        while (queued > 0 && decisions[queue[0]] < target) {
+            time = decisions[queue[0]];
+            step();
+        }
+        time = target;
+    }
+
+    /**
+     * Lets a run that stands on a stop act like the explorer would, given which barriers block in the current step. A
+     * run that ends leaves the index and its cell at once; the runs that follow from it start in {@link #proceed(int)}.
+     *
+     * @param i index of the run among the runs that stop in this step
+     */
+    private void decide(int i) {
+        int slot = deciding[i];
+        int cell = cell(slot, time);
+        byte direction = directions[slot];
+        int next = LEAVE;
+        byte turnTo = direction;
+        int splitOff = NONE;
+        switch (types[slot]) {
+            case WEAK -> {
+                if (!blocked(cell, direction)) {
+                    next = move(cell, direction);
+                }
+            }
+            case SPLIT -> {
+                if (blocked(cell, direction)) {
+                    boolean left = !blocked(cell, LEFT_OF[direction]);
+                    boolean right = !blocked(cell, RIGHT_OF[direction]);
+                    if (left || right) {
+                        turnTo = left ? LEFT_OF[direction] : RIGHT_OF[direction];
+                        next = move(cell, turnTo);
+                    }
+                    if (left && right) {
+                        //as in the object model, a split-off that would leave the model stays in place for a step
+                        splitOff = move(cell, RIGHT_OF[direction]);
+                        splitOff = splitOff == LEAVE ? cell : splitOff;
+                    }
+                } else {
+                    next = move(cell, direction);
+                }
+            }
+            default -> {
+                //as in the object model, a RandomExplorer only looks for blocking barriers ahead, but for any barrier
+                //to its sides, and turns only after it has moved ahead
+                if (isBlocking(neighbour(cell, direction))) {
+                    boolean left = !isBarrier(neighbour(cell, LEFT_OF[direction]));
+                    boolean right = !isBarrier(neighbour(cell, RIGHT_OF[direction]));
+                    if (left || right) {
+                        boolean turnLeft = left && right ? RandomExplorer.draw(streamSeeds[slot], ++draws[slot]) : left;
+                        turnTo = turnLeft ? LEFT_OF[direction] : RIGHT_OF[direction];
+                        next = move(cell, direction);
+                    }
+                } else {
+                    next = move(cell, direction);
+                }
+            }
+        }
+        continuing[i] = turnTo == direction && splitOff == NONE && next == cell(slot, time + 1);
+        nextCells[i] = next;
+        nextDirections[i] = turnTo;
+        splitOffCells[i] = splitOff;
+        if (!continuing[i]) {
+            index.remove(phaseKey(types[slot], direction, lanes[slot], phases[slot]));
+            occupy(cell, -1);
+        }
+    }
+
+    /**
+     * Reschedules a run that moves on along its lane, or ends it and starts the runs that follow from it
+     *
+     * @param i index of the run among the runs that stopped in the previous step
+     */
+    private void proceed(int i) {
+        int slot = deciding[i];
+        if (continuing[i]) {
+            schedule(slot, cell(slot, time));
+            return;
+        }
+        if (splitOffCells[i] != NONE) {
+            //the split-off claims its place before the explorer that spawned it
+            start(splitOffCells[i], SPLIT, RIGHT_OF[directions[slot]], 0, 0, 0);
+        }
+        if (nextCells[i] != LEAVE) {
+            start(nextCells[i], types[slot], nextDirections[i], ids[slot], streamSeeds[slot], draws[slot]);
+        }
+        live[slot] = false;
+        count--;
+        ensureFreeCapacity(freeCount + 1);
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Starts a run of an explorer that stands on a cell at the current step, unless an equal explorer already runs
+     * along the same lane at the same phase. Of two equal RandomExplorers, the one with the lower id survives.
+     */
+    private void start(int cell, byte type, byte direction, long id, long streamSeed, long streamDraws) {
+        int g = gridOf(cell);
+        int local = cell - offsets[g];
+        boolean horizontal = DIRECTIONS[direction].isHorizontal();
+        int lane = horizontal ? laneBases[g] + local / widths[g] : laneBases[g] + heights[g] + local % widths[g];
+        int position = horizontal ? local % widths[g] : local / widths[g];
+        int phase = Math.floorMod(position - STEP[direction] * time, laneLengths[lane]);
+        int slot = freeCount > 0 ? free[freeCount - 1] : slots;
+        int present = index.putIfAbsent(phaseKey(type, direction, lane, phase), slot);
+        if (present != PhaseIndex.ABSENT) {
+            if (type == RANDOM && id < ids[present]) {
+                ids[present] = id;
+                streamSeeds[present] = streamSeed;
+                draws[present] = streamDraws;
+            }
+            return;
+        }
+        if (freeCount > 0) {
+            freeCount--;
+        } else {
+            slots++;
+        }
+        ensureCapacity(slots);
+        types[slot] = type;
+        directions[slot] = direction;
+        lanes[slot] = lane;
+        phases[slot] = phase;
+        starts[slot] = time;
+        ids[slot] = id;
+        streamSeeds[slot] = streamSeed;
+        draws[slot] = streamDraws;
+        live[slot] = true;
+        count++;
+        occupy(cell, 1);
+        schedule(slot, cell);
+    }
+
+    private void schedule(int slot, int cell) {
+        int run = runs[directions[slot]][cell];
+        decisions[slot] = run == FREE ? NEVER : time + run;
+        if (run != FREE) {
+            offer(slot);
+        }
+    }
+
+    /**
+     * Returns the cell that a run occupies at some step
+     */
+    private int cell(int slot, long at) {
+        int lane = lanes[slot];
+        return laneCell(lane, Math.floorMod(phases[slot] + STEP[directions[slot]] * at, laneLengths[lane]));
+    }
+
+    private static long phaseKey(byte type, byte direction, int lane, int phase) {
+        return ((((long) lane * DIRECTIONS.length + direction) * CLASSES.length + type) << 32) | phase;
+    }
+
+    private void offer(int slot) {
+        ensureQueueCapacity(queued + 1);
+        int i = queued++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (decisions[queue[parent]] <= decisions[slot]) {
+                break;
+            }
+            queue[i] = queue[parent];
+            i = parent;
+        }
+        queue[i] = slot;
+    }
+
+    private int poll() {
+        int head = queue[0];
+        int last = queue[--queued];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= queued) {
+                break;
+            }
+            if (child + 1 < queued && decisions[queue[child + 1]] < decisions[queue[child]]) {
+                child++;
+            }
+            if (decisions[last] <= decisions[queue[child]]) {
+                break;
+            }
+            queue[i] = queue[child];
+            i = child;
+        }
+        queue[i] = last;
+        return head;
+    }
+
+    /**
+     * Replaces the explorers of the grid and the grids nested in it by the runs. RandomExplorers are created in the
+     * order of their ids, so that they keep deduplicating alike.
+     */
+    @Override
+    public void store(Grid grid) {
+        List<Grid> model = grids(grid);
+        for (Grid nested : model) {
+            for (Simulatable simulatable : new ArrayList<>(nested.getSimulatables())) {
+                if (simulatable instanceof DirectionalSimulatable) {
+                    nested.remove(simulatable);
+                }
+            }
+        }
+        List<Integer> randomSlots = new ArrayList<>();
+        for (int slot = 0; slot < slots; slot++) {
+            if (live[slot] && types[slot] == RANDOM) {
+                randomSlots.add(slot);
+            } else if (live[slot]) {
+                spawn(model, slot);
+            }
+        }
+        randomSlots.sort(Comparator.comparingLong(slot -> ids[slot]));
+        for (int slot : randomSlots) {
+            spawn(model, slot);
+        }
+        model.forEach(Grid::updateMapAndDeduplicate);
+    }
+
+    private void spawn(List<Grid> model, int slot) {
+        int cell = cell(slot, time);
+        int g = gridOf(cell);
+        Grid grid = model.get(g);
+        GridItem location = grid.item(cell - offsets[g]);
+        Direction direction = DIRECTIONS[directions[slot]];
+        DirectionalSimulatable explorer = switch (types[slot]) {
+            case WEAK -> WeakExplorer.factory().makeSimulatable(location);
+            case SPLIT -> SplitExplorer.factory(direction).makeSimulatable(location);
+            default -> {
+                RandomExplorer randomExplorer = RandomExplorer.factory(direction).makeSimulatable(location);
+                randomExplorer.setStream(streamSeeds[slot], draws[slot]);
+                yield randomExplorer;
+            }
+        };
+        explorer.setDirectionNow(direction);
+        grid.spawn(explorer);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= types.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, types.length * 2);
+        types = Arrays.copyOf(types, newLength);
+        directions = Arrays.copyOf(directions, newLength);
+        lanes = Arrays.copyOf(lanes, newLength);
+        phases = Arrays.copyOf(phases, newLength);
+        decisions = Arrays.copyOf(decisions, newLength);
+        starts = Arrays.copyOf(starts, newLength);
+        ids = Arrays.copyOf(ids, newLength);
+        streamSeeds = Arrays.copyOf(streamSeeds, newLength);
+        draws = Arrays.copyOf(draws, newLength);
+        live = Arrays.copyOf(live, newLength);
+    }
+
+    private void ensureFreeCapacity(int capacity) {
+        if (capacity > free.length) {
+            free = Arrays.copyOf(free, Math.max(capacity, free.length * 2));
+        }
+    }
+
+    private void ensureQueueCapacity(int capacity) {
+        if (capacity > queue.length) {
+            queue = Arrays.copyOf(queue, Math.max(capacity, queue.length * 2));
+        }
+    }
+
+    private void ensureDecidingCapacity(int capacity) {
+        if (capacity > deciding.length) {
+            int newLength = Math.max(capacity, deciding.length * 2);
+            deciding = Arrays.copyOf(deciding, newLength);
+            continuing = Arrays.copyOf(continuing, newLength);
+            nextCells = Arrays.copyOf(nextCells, newLength);
+            nextDirections = Arrays.copyOf(nextDirections, newLength);
+            splitOffCells = Arrays.copyOf(splitOffCells, newLength);
+        }
+    }
+
+    /**
+     * Map from the phase keys of all runs to their slots, with open addressing and backward shift deletion
+     */
+    private static final class PhaseIndex {
+
+        static final int ABSENT = -1;
+        private static final long EMPTY = -1;
+        private long[] keys = new long[16];
+        private int[] values = new int[16];
+        private int size = 0;
+
+        PhaseIndex() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        /**
+         * Adds a key, unless it is present already
+         *
+         * @param key   key to add
+         * @param value slot of the run of the key
+         * @return the slot of the run of the key if it was present already, or {@link #ABSENT}
+         */
+        int putIfAbsent(long key, int value) {
+            if (2 * (size + 1) > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                } else if (keys[slot] == EMPTY) {
+                    keys[slot] = key;
+                    values[slot] = value;
+                    size++;
+                    return ABSENT;
+                }
+            }
+        }
+
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            size--;
+            //shift back the keys that probed past the removed one, so that no lookup stops early
+            for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    values[slot] = values[next];
+                    slot = next;
+                }
+            }
+            keys[slot] = EMPTY;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    putIfAbsent(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.charrey.game.simulator;
+
+import java.util.Arrays;
+
+/**
+ * Detects when a deterministic simulation returns to a state it has been in before, based on the state hashes of
+ * successive steps. The hashes of the first MAX_HISTORY steps are kept in an open-addressing table, so that a repetition
+ * among them is found in the step it occurs. Beyond that, a single checkpoint is kept that moves to the current step
+ * whenever the distance to it reaches the next power of two (Brent's algorithm), which finds any later cycle within a
+ * few periods of entering it without using more memory.
+ */
+public class CycleDetector {
+
+    /**
+     * Maximum number of steps whose hashes are remembered individually
+     */
+    static final int MAX_HISTORY = 1 << 18;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final long NONE = -1;
+
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private long[] steps = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    private long checkpointHash;
+    private long checkpointStep = NONE;
+    private long power;
+    private long cycleStart = NONE;
+    private long period = NONE;
+    private long firstRepeat = NONE;
+
+    /**
+     * Creates a new CycleDetector that has not seen any state yet
+     */
+    public CycleDetector() {
+        Arrays.fill(steps, NONE);
+    }
+
+    /**
+     * Forgets all recorded states and any cycle found among them
+     */
+    public void reset() {
+        if (hashes.length != INITIAL_CAPACITY) {
+            hashes = new long[INITIAL_CAPACITY];
+            steps = new long[INITIAL_CAPACITY];
+        }
+        Arrays.fill(steps, NONE);
+        size = 0;
+        checkpointStep = NONE;
+        cycleStart = NONE;
+        period = NONE;
+        firstRepeat = NONE;
+    }
+
+    /**
+     * Records the hash of the state after some step. Steps must be recorded in increasing order without gaps.
+     *
+     * @param step number of the step
+     * @param hash hash of the state after that step
+     * @return true iff this state repeats an earlier one and no cycle had been found before
+     */
+    public boolean record(long step, long hash) {
+        if (period != NONE) {
+            return false;
+        }
+        long earlier = find(hash);
+        if (earlier != NONE) {
+            return found(earlier, step);
+        }
+        if (size < MAX_HISTORY) {
+            insert(hash, step);
+            return false;
+        }
+        if (checkpointStep != NONE && hash == checkpointHash) {
+            return found(checkpointStep, step);
+        }
+        if (checkpointStep == NONE || step - checkpointStep == power) {
+            power = checkpointStep == NONE ? 1 : power * 2;
+            checkpointHash = hash;
+            checkpointStep = step;
+        }
+        return false;
+    }
+
+    private boolean found(long earlier, long step) {
+        cycleStart = earlier;
+        period = step - earlier;
+        firstRepeat = step;
+        return true;
+    }
+
+    /**
+     * Returns whether a cycle has been found
+     *
+     * @return true iff a cycle has been found
+     */
+    public boolean hasCycle() {
+        return period != NONE;
+    }
+
+    /**
+     * Returns the number of steps after which the state repeats itself
+     *
+     * @return the period, or -1 if no cycle has been found
+     */
+    public long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Returns a step from which on the state is periodic. If the cycle was found among the remembered steps, this is
+     * the first step of the cycle; otherwise, it is some later step in the cycle.
+     *
+     * @return the step, or -1 if no cycle has been found
+     */
+    public long getCycleStart() {
+        return cycleStart;
+    }
+
+    /**
+     * Returns the step at which a repeated state was first noticed
+     *
+     * @return the step, or -1 if no cycle has been found
+     */
+    public long getFirstRepeat() {
+        return firstRepeat;
+    }
+
+    private long find(long hash) {
+        int mask = hashes.length - 1;
+        for (int index = (int) hash & mask; steps[index] != NONE; index = (index + 1) & mask) {
+            if (hashes[index] == hash) {
+                return steps[index];
+            }
+        }
+        return NONE;
+    }
+
+    private void insert(long hash, long step) {
+        if (2 * (size + 1) > hashes.length) {
+            grow();
+        }
+        int mask = hashes.length - 1;
+        int index = (int) hash & mask;
+        while (steps[index] != NONE) {
+            index = (index + 1) & mask;
+        }
+        hashes[index] = hash;
+        steps[index] = step;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        long[] oldSteps = steps;
+        hashes = new long[oldHashes.length * 2];
+        steps = new long[oldSteps.length * 2];
+        Arrays.fill(steps, NONE);
+        size = 0;
+        for (int index = 0; index < oldSteps.length; index++) {
+            if (oldSteps[index] != NONE) {
+                insert(oldHashes[index], oldSteps[index]);
+            }
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.Zobrist;
+import com.charrey.game.model.simulatable.*;
+import com.charrey.game.util.GridItem;
+
+import java.util.*;
+
+/**
+ * Simulates a grid that contains nothing but default barriers and 1x1 explorers (WeakExplorers, SplitExplorers and
+ * RandomExplorers) without touching the simulatable objects. The explorers are stored in parallel primitive arrays
+ * (location, direction, type) and stepped in tight loops against a bitmap of the barriers. A step allocates nothing
+ * once the arrays have grown to the size of the explorer population.
+ * <p>
+ * The result of each step is identical to that of the object model. RandomExplorers keep the seed of their random
+ * stream and the number of draws from it in two more arrays, and draw from it like {@link RandomExplorer} does, so that
+ * they make the same choices as in the object model. Grids containing subgrids or conditional barriers are not
+ * supported and must be simulated through the object model (see {@link #supports(Grid)}). The simulatables of the grid
+ * are only brought up to date on a call to {@link #store(Grid)}.
+ */
+public class ExplorerArrayEngine implements GridEngine {
+
+    private static final byte WEAK = 0;
+    private static final byte SPLIT = 1;
+    private static final byte RANDOM = 2;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final byte[] LEFT_OF = new byte[DIRECTIONS.length];
+    private static final byte[] RIGHT_OF = new byte[DIRECTIONS.length];
+    private static final int[] DX = new int[DIRECTIONS.length];
+    private static final int[] DY = new int[DIRECTIONS.length];
+    private static final Class<?>[] CLASSES = {WeakExplorer.class, SplitExplorer.class, RandomExplorer.class};
+
+    static {
+        for (Direction direction : DIRECTIONS) {
+            LEFT_OF[direction.ordinal()] = (byte) direction.rotateLeft().ordinal();
+            RIGHT_OF[direction.ordinal()] = (byte) direction.rotateRight().ordinal();
+            DX[direction.ordinal()] = switch (direction) {
+                case LEFT -> -1;
+                case RIGHT -> 1;
+                default -> 0;
+            };
+            DY[direction.ordinal()] = switch (direction) {
+                case DOWN -> -1;
+                case UP -> 1;
+                default -> 0;
+            };
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final long[] barriers;
+    private final boolean[][] exported = new boolean[DIRECTIONS.length][];
+    private final short[] occupied;
+    private final long gridId;
+    private long stateHash;
+
+    private int count = 0;
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private byte[] directions = new byte[16];
+    private byte[] types = new byte[16];
+    private long[] streamSeeds = new long[16];
+    private long[] draws = new long[16];
+
+    private int[] nextXs = new int[16];
+    private int[] nextYs = new int[16];
+    private byte[] nextDirections = new byte[16];
+    private boolean[] removed = new boolean[16];
+    private int[] childOf = new int[16];
+
+    private int childCount = 0;
+    private int[] childXs = new int[16];
+    private int[] childYs = new int[16];
+    private byte[] childDirections = new byte[16];
+
+    /**
+     * Creates a new ExplorerArrayEngine that holds the current state of a grid
+     *
+     * @param grid grid to simulate, which must be supported
+     */
+    public ExplorerArrayEngine(Grid grid) {
+        if (!supports(grid)) {
+            throw new IllegalArgumentException("Grid contains simulatables that cannot be simulated by this engine.");
+        }
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.gridId = grid.getZobristId();
+        this.stateHash = grid.getStateHash();
+        this.barriers = new long[(width * height + 63) / 64];
+        this.occupied = new short[width * height];
+        for (Direction direction : DIRECTIONS) {
+            exported[direction.ordinal()] = new boolean[direction.isHorizontal() ? height : width];
+            grid.getExport(direction).forEach(index -> exported[direction.ordinal()][index] = true);
+        }
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            int x = simulatable.getLocation().x();
+            int y = simulatable.getLocation().y();
+            if (simulatable instanceof DefaultBarrier) {
+                int cell = y * width + x;
+                barriers[cell >>> 6] |= 1L << cell;
+            } else {
+                ensureCapacity(count + 1);
+                xs[count] = x;
+                ys[count] = y;
+                directions[count] = (byte) ((DirectionalSimulatable) simulatable).getDirection().ordinal();
+                types[count] = typeOf(simulatable);
+                if (simulatable instanceof RandomExplorer randomExplorer) {
+                    streamSeeds[count] = randomExplorer.getStreamSeed();
+                    draws[count] = randomExplorer.getDraws();
+                }
+                occupied[y * width + x] |= key(types[count], directions[count]);
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a grid can be simulated by this engine: it must be a root grid and contain only default barriers
+     * and 1x1 WeakExplorers, SplitExplorers and RandomExplorers.
+     *
+     * @param grid grid
+     * @return true iff this engine can simulate the grid
+     */
+    public static boolean supports(Grid grid) {
+        if (grid.getParent() != null) {
+            return false;
+        }
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            Class<?> type = simulatable.getClass();
+            boolean supported = type == DefaultBarrier.class || type == WeakExplorer.class || type == SplitExplorer.class || type == RandomExplorer.class;
+            if (!supported || simulatable.getWidth() != 1 || simulatable.getHeight() != 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte typeOf(Simulatable simulatable) {
+        if (simulatable instanceof WeakExplorer) {
+            return WEAK;
+        } else if (simulatable instanceof SplitExplorer) {
+            return SPLIT;
+        } else {
+            return RANDOM;
+        }
+    }
+
+    private static short key(byte type, byte direction) {
+        return (short) (1 << (type * DIRECTIONS.length + direction));
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public long stateHash() {
+        return stateHash;
+    }
+
+    private long zobristKey(int x, int y, byte type, byte direction) {
+        return Zobrist.key(gridId, y * width + x, CLASSES[type], direction);
+    }
+
+    @Override
+    public void step() {
+        childCount = 0;
+        for (int i = 0; i < count; i++) {
+            simulate(i);
+        }
+        switchAndDeduplicate();
+    }
+
+    private void simulate(int i) {
+        nextXs[i] = xs[i];
+        nextYs[i] = ys[i];
+        nextDirections[i] = directions[i];
+        removed[i] = false;
+        childOf[i] = -1;
+        byte direction = directions[i];
+        switch (types[i]) {
+            case WEAK -> {
+                if (blocked(xs[i], ys[i], direction)) {
+                    removed[i] = true;
+                } else {
+                    advance(i, direction);
+                }
+            }
+            case SPLIT -> {
+                if (blocked(xs[i], ys[i], direction)) {
+                    boolean left = !blocked(xs[i], ys[i], LEFT_OF[direction]);
+                    boolean right = !blocked(xs[i], ys[i], RIGHT_OF[direction]);
+                    if (!left && !right) {
+                        removed[i] = true;
+                    } else {
+                        byte turnTo = left ? LEFT_OF[direction] : RIGHT_OF[direction];
+                        nextDirections[i] = turnTo;
+                        advance(i, turnTo);
+                        if (left && right) {
+                            splitOff(i, RIGHT_OF[direction]);
+                        }
+                    }
+                } else {
+                    advance(i, direction);
+                }
+            }
+            default -> {
+                if (barrier(xs[i], ys[i], direction)) {
+                    boolean left = !barrier(xs[i], ys[i], LEFT_OF[direction]);
+                    boolean right = !barrier(xs[i], ys[i], RIGHT_OF[direction]);
+                    if (!left && !right) {
+                        removed[i] = true;
+                        return;
+                    }
+                    nextDirections[i] = left && right ? (RandomExplorer.draw(streamSeeds[i], ++draws[i]) ? LEFT_OF[direction] : RIGHT_OF[direction]) : (left ? LEFT_OF[direction] : RIGHT_OF[direction]);
+                }
+                advance(i, direction);
+            }
+        }
+    }
+
+    private void advance(int i, byte direction) {
+        if (isExported(xs[i], ys[i], direction)) {
+            removed[i] = true;
+        } else {
+            nextXs[i] = Math.floorMod(xs[i] + DX[direction], width);
+            nextYs[i] = Math.floorMod(ys[i] + DY[direction], height);
+        }
+    }
+
+    private void splitOff(int parent, byte direction) {
+        ensureChildCapacity(childCount + 1);
+        childOf[parent] = childCount;
+        if (isExported(xs[parent], ys[parent], direction)) {
+            //as in the object model, the split-off stays in place and leaves the grid in the next step
+            childXs[childCount] = xs[parent];
+            childYs[childCount] = ys[parent];
+        } else {
+            childXs[childCount] = Math.floorMod(xs[parent] + DX[direction], width);
+            childYs[childCount] = Math.floorMod(ys[parent] + DY[direction], height);
+        }
+        childDirections[childCount] = direction;
+        childCount++;
+    }
+
+    private boolean isExported(int x, int y, byte direction) {
+        return switch (DIRECTIONS[direction]) {
+            case UP -> y == height - 1 && exported[direction][x];
+            case DOWN -> y == 0 && exported[direction][x];
+            case LEFT -> x == 0 && exported[direction][y];
+            case RIGHT -> x == width - 1 && exported[direction][y];
+        };
+    }
+
+    private boolean blocked(int x, int y, byte direction) {
+        return !isExported(x, y, direction) && barrier(x, y, direction);
+    }
+
+    private boolean barrier(int x, int y, byte direction) {
+        int cell = Math.floorMod(y + DY[direction], height) * width + Math.floorMod(x + DX[direction], width);
+        return (barriers[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Applies the computed state. First, every explorer that is removed or changes gives up its place in the
+     * occupancy masks. Then the changed explorers and the spawned ones claim their new place in order, each spawned
+     * explorer directly before the explorer that spawned it, and any explorer whose place was already claimed by an
+     * equal explorer is removed as a duplicate.
+     */
+    private void switchAndDeduplicate() {
+        for (int i = 0; i < count; i++) {
+            if (removed[i] || changed(i)) {
+                occupied[ys[i] * width + xs[i]] &= (short) ~key(types[i], directions[i]);
+                stateHash ^= zobristKey(xs[i], ys[i], types[i], directions[i]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int child = childOf[i];
+            if (child != -1 && !claim(childXs[child], childYs[child], SPLIT, childDirections[child])) {
+                childDirections[child] = -1;
+            }
+            if (!removed[i] && changed(i) && !claim(nextXs[i], nextYs[i], types[i], nextDirections[i])) {
+                removed[i] = true;
+            }
+        }
+        int survivors = 0;
+        for (int i = 0; i < count; i++) {
+            if (!removed[i]) {
+                xs[survivors] = nextXs[i];
+                ys[survivors] = nextYs[i];
+                directions[survivors] = nextDirections[i];
+                types[survivors] = types[i];
+                streamSeeds[survivors] = streamSeeds[i];
+                draws[survivors] = draws[i];
+                survivors++;
+            }
+        }
+        count = survivors;
+        ensureCapacity(count + childCount);
+        for (int child = 0; child < childCount; child++) {
+            if (childDirections[child] != -1) {
+                xs[count] = childXs[child];
+                ys[count] = childYs[child];
+                directions[count] = childDirections[child];
+                types[count] = SPLIT;
+                count++;
+            }
+        }
+    }
+
+    private boolean changed(int i) {
+        return nextXs[i] != xs[i] || nextYs[i] != ys[i] || nextDirections[i] != directions[i];
+    }
+
+    private boolean claim(int x, int y, byte type, byte direction) {
+        int cell = y * width + x;
+        short key = key(type, direction);
+        if ((occupied[cell] & key) != 0) {
+            return false;
+        }
+        occupied[cell] |= key;
+        stateHash ^= zobristKey(x, y, type, direction);
+        return true;
+    }
+
+    @Override
+    public void store(Grid grid) {
+        for (Simulatable simulatable : new ArrayList<>(grid.getSimulatables())) {
+            if (!(simulatable instanceof Barrier)) {
+                grid.remove(simulatable);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            GridItem location = grid.item(grid.cell(xs[i], ys[i]));
+            Direction direction = DIRECTIONS[directions[i]];
+            DirectionalSimulatable explorer = switch (types[i]) {
+                case WEAK -> WeakExplorer.factory().makeSimulatable(location);
+                case SPLIT -> SplitExplorer.factory(direction).makeSimulatable(location);
+                default -> {
+                    RandomExplorer randomExplorer = RandomExplorer.factory(direction).makeSimulatable(location);
+                    randomExplorer.setStream(streamSeeds[i], draws[i]);
+                    yield randomExplorer;
+                }
+            };
+            explorer.setDirectionNow(direction);
+            grid.spawn(explorer);
+        }
+        grid.updateMapAndDeduplicate();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= xs.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, xs.length * 2);
+        xs = Arrays.copyOf(xs, newLength);
+        ys = Arrays.copyOf(ys, newLength);
+        directions = Arrays.copyOf(directions, newLength);
+        types = Arrays.copyOf(types, newLength);
+        streamSeeds = Arrays.copyOf(streamSeeds, newLength);
+        draws = Arrays.copyOf(draws, newLength);
+        nextXs = Arrays.copyOf(nextXs, newLength);
+        nextYs = Arrays.copyOf(nextYs, newLength);
+        nextDirections = Arrays.copyOf(nextDirections, newLength);
+        removed = Arrays.copyOf(removed, newLength);
+        childOf = Arrays.copyOf(childOf, newLength);
+    }
+
+    private void ensureChildCapacity(int capacity) {
+        if (capacity <= childXs.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, childXs.length * 2);
+        childXs = Arrays.copyOf(childXs, newLength);
+        childYs = Arrays.copyOf(childYs, newLength);
+        childDirections = Arrays.copyOf(childDirections, newLength);
+    }
+}
@@ -0,0 +1,62 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.Grid;
+
+/**
+ * Simulates all simulatables of a grid at once in a representation of its own, instead of stepping the simulatable
+ * objects one by one. The simulatables of the grid are only brought up to date on request.
+ */
+public interface GridEngine {
+
+    /**
+     * Performs a single simulation step: computes the next state of all simulatables, switches to it and removes
+     * simulatables that duplicate another simulatable.
+     */
+    void step();
+
+    /**
+     * Performs a number of simulation steps, with the same result as calling {@link #step()} that many times. Engines
+     * that know at which step anything other than plain movement happens next jump directly between those steps.
+     *
+     * @param steps number of steps to perform
+     */
+    default void advance(long steps) {
+        for (long i = 0; i < steps; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Replaces the simulatables of a grid that this engine simulates with the current state of this engine. Simulatables
+     * that never change (such as barriers) are left untouched.
+     *
+     * @param grid the grid this engine was created from
+     */
+    void store(Grid grid);
+
+    /**
+     * Returns the number of simulatables that this engine currently moves through the grid
+     *
+     * @return the number of moving simulatables
+     */
+    int size();
+
+    /**
+     * Returns the hash of the current state of the grid: the exclusive or of the Zobrist keys of all its simulatables, as
+     * {@link Grid#getStateHash()} would return after storing this engine in the grid. It is maintained incrementally,
+     * unless {@link #hashesIncrementally()} says otherwise.
+     *
+     * @return the hash
+     */
+    long stateHash();
+
+    /**
+     * Returns whether {@link #stateHash()} is maintained incrementally, so that it can be asked for after every step
+     * without making the step cost more. The simulator only looks for cycles in the states of engines that do.
+     *
+     * @return true iff the hash is maintained incrementally
+     */
+    default boolean hashesIncrementally() {
+        return true;
+    }
+}
@@ -0,0 +1,120 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Orders the simulatables of a step by the grid that contains them and processes each grid on its own virtual thread.
+ * Designs with many small nested SubGrids thereby get a unit of work per grid interior without sizing a pool of
+ * platform threads. Grids with many simulatables are split into chunks, each on a virtual thread of its own. The
+ * threads are scoped to a single call: it returns only once all of them have finished.
+ */
+class GridPartition {
+
+    /**
+     * Largest number of simulatables of a single grid that is processed by a single virtual thread
+     */
+    static final int CHUNK_SIZE = 512;
+
+    private final Map<Grid, Integer> indexOfGrid = new IdentityHashMap<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private Simulatable[] snapshot = new Simulatable[0];
+    private Simulatable[] sorted = new Simulatable[0];
+    private int[] groupOfSimulatable = new int[0];
+    private int[] groupStart = new int[1];
+    private int[] groupCursor = new int[0];
+    private int groupCount;
+
+    /**
+     * Applies an action to every simulatable of a set, one virtual thread per grid (or per chunk of a grid). Returns
+     * once the action has been applied to all of them. If the action throws for any simulatable, the first such
+     * exception is rethrown after all threads have finished.
+     *
+     * @param simulatables simulatables to process
+     * @param action       action to apply
+     */
+    void forEach(Set<Simulatable> simulatables, Consumer<Simulatable> action) {
+        int count = partition(simulatables);
+        if (groupCount <= 1 && count <= CHUNK_SIZE) {
+            for (int i = 0; i < count; i++) {
+                action.accept(sorted[i]);
+            }
+        } else {
+            try (ExecutorService scope = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int group = 0; group < groupCount; group++) {
+                    for (int from = groupStart[group]; from < groupStart[group + 1]; from += CHUNK_SIZE) {
+                        int chunkStart = from;
+                        int chunkEnd = Math.min(from + CHUNK_SIZE, groupStart[group + 1]);
+                        futures.add(scope.submit(() -> {
+                            for (int i = chunkStart; i < chunkEnd; i++) {
+                                action.accept(sorted[i]);
+                            }
+                        }));
+                    }
+                }
+            }
+            rethrowFirstFailure();
+        }
+        Arrays.fill(sorted, 0, count, null);
+    }
+
+    private void rethrowFirstFailure() {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            futures.clear();
+        }
+    }
+
+    private int partition(Set<Simulatable> simulatables) {
+        int count = simulatables.size();
+        snapshot = simulatables.toArray(snapshot);
+        if (sorted.length < count) {
+            sorted = new Simulatable[snapshot.length];
+            groupOfSimulatable = new int[snapshot.length];
+        }
+        indexOfGrid.clear();
+        groupCount = 0;
+        for (int i = 0; i < count; i++) {
+            groupOfSimulatable[i] = indexOfGrid.computeIfAbsent(snapshot[i].getContainerGrid(), grid -> groupCount++);
+        }
+        if (groupStart.length < groupCount + 1) {
+            groupStart = new int[groupCount + 1];
+        } else {
+            Arrays.fill(groupStart, 0, groupCount + 1, 0);
+        }
+        for (int i = 0; i < count; i++) {
+            groupStart[groupOfSimulatable[i] + 1]++;
+        }
+        for (int group = 0; group < groupCount; group++) {
+            groupStart[group + 1] += groupStart[group];
+        }
+        if (groupCursor.length < groupCount) {
+            groupCursor = new int[groupStart.length];
+        }
+        System.arraycopy(groupStart, 0, groupCursor, 0, groupCount);
+        for (int i = 0; i < count; i++) {
+            sorted[groupCursor[groupOfSimulatable[i]]++] = snapshot[i];
+        }
+        Arrays.fill(snapshot, 0, count, null);
+        return count;
+    }
+}
@@ -0,0 +1,141 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableRegistry;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Runs one phase of a simulation step (applying an action to every simulatable) either serially or on the
+ * {@link WorkerPool} with some chunk size, and picks between these configurations online. The cost of each step is
+ * measured per simulatable; every so often, or whenever the number of simulatables has changed by more than a factor
+ * two, a neighbouring configuration is tried for a single step. The tuner only switches once a configuration is
+ * measured to be cheaper than the current one by a margin, so that it does not flap between configurations of similar
+ * cost. Decisions are only made between steps.
+ */
+class PhaseTuner {
+
+    /**
+     * Number of steps after which a neighbouring configuration is tried again
+     */
+    static final int PROBE_INTERVAL = 64;
+    /**
+     * Fraction by which a configuration must be cheaper than the current one for the tuner to switch to it
+     */
+    static final double HYSTERESIS = 0.15;
+    /**
+     * Weight of the latest measurement in the moving average of the cost of the current configuration
+     */
+    static final double SMOOTHING = 0.1;
+    /**
+     * Configurations ordered from the finest split of work to no split at all. Each is the smallest number of
+     * simulatables handed to a single thread, where SERIAL means that all simulatables are processed by the calling thread.
+     */
+    private static final int SERIAL = Integer.MAX_VALUE;
+    private static final int[] CONFIGURATIONS = {128, 256, 512, 1024, 2048, 4096, SERIAL};
+
+    private final String phase;
+    private final Consumer<Simulatable> action;
+    private final double[] nanosPerSimulatable = new double[CONFIGURATIONS.length];
+    private Simulatable[] snapshot = new Simulatable[0];
+    private int current = CONFIGURATIONS.length - 1;
+    private int stepsSinceProbe = 0;
+    private int countAtProbe = 0;
+    private boolean probeFiner = true;
+
+    /**
+     * Creates a new tuner that starts out serially
+     *
+     * @param phase  name of the phase, as shown in the logs and the UI
+     * @param action action the phase applies to each simulatable
+     */
+    PhaseTuner(String phase, Consumer<Simulatable> action) {
+        this.phase = phase;
+        this.action = action;
+        Arrays.fill(nanosPerSimulatable, Double.NaN);
+    }
+
+    /**
+     * Applies the action of this phase to every simulatable of a set, with the configuration currently deemed
+     * cheapest, or with a neighbouring one if it is time to try that again
+     *
+     * @param simulatables simulatables to process
+     */
+    void run(Set<Simulatable> simulatables) {
+        int count = simulatables.size();
+        boolean populationChanged = count > 2 * countAtProbe || 2 * count < countAtProbe;
+        if (populationChanged) {
+            //costs measured at a very different population no longer say anything about the current one
+            Arrays.fill(nanosPerSimulatable, Double.NaN);
+        }
+        int configuration = current;
+        if (populationChanged || ++stepsSinceProbe >= PROBE_INTERVAL) {
+            configuration = neighbour();
+            stepsSinceProbe = 0;
+            countAtProbe = count;
+        }
+        long start = System.nanoTime();
+        run(simulatables, CONFIGURATIONS[configuration]);
+        double cost = (System.nanoTime() - start) / (double) Math.max(1, count);
+        if (configuration != current || Double.isNaN(nanosPerSimulatable[current])) {
+            nanosPerSimulatable[configuration] = cost;
+        } else {
+            nanosPerSimulatable[current] += SMOOTHING * (cost - nanosPerSimulatable[current]);
+        }
+        if (configuration != current && !Double.isNaN(nanosPerSimulatable[current])
+                && cost < (1 - HYSTERESIS) * nanosPerSimulatable[current]) {
+            int previous = current;
+            current = configuration;
+            Logger.getLogger(getClass().getName()).info(() -> "Switching the " + phase + " from " + describe(previous) + " to " + describe(current)
+                    + " at " + count + " simulatables (" + Math.round(nanosPerSimulatable[previous]) + " -> " + Math.round(nanosPerSimulatable[current]) + " ns/simulatable).");
+        }
+    }
+
+    private int neighbour() {
+        probeFiner = !probeFiner;
+        if (current == 0) {
+            return 1;
+        } else if (current == CONFIGURATIONS.length - 1) {
+            return current - 1;
+        }
+        return probeFiner ? current - 1 : current + 1;
+    }
+
+    private void run(Set<Simulatable> simulatables, int minChunkSize) {
+        if (minChunkSize == SERIAL) {
+            if (simulatables instanceof SimulatableRegistry registry) {
+                registry.forEach(action);
+            } else {
+                int count = simulatables.size();
+                snapshot = simulatables.toArray(snapshot);
+                for (int i = 0; i < count; i++) {
+                    action.accept(snapshot[i]);
+                }
+                Arrays.fill(snapshot, 0, count, null);
+            }
+        } else if (simulatables instanceof SimulatableRegistry registry) {
+            WorkerPool.get().forEach(registry, minChunkSize, action);
+        } else {
+            int count = simulatables.size();
+            snapshot = simulatables.toArray(snapshot);
+            WorkerPool.get().forEach(snapshot, count, minChunkSize, action);
+            Arrays.fill(snapshot, 0, count, null);
+        }
+    }
+
+    /**
+     * Returns a description of the configuration this tuner currently runs its phase with
+     *
+     * @return the description
+     */
+    String describe() {
+        return describe(current);
+    }
+
+    private static String describe(int configuration) {
+        return CONFIGURATIONS[configuration] == SERIAL ? "serial" : "parallel (chunks of " + CONFIGURATIONS[configuration] + ")";
+    }
+}
@@ -2,7 +2,6 @@ package com.charrey.game.simulator;
 
 import com.charrey.game.model.simulatable.Simulatable;
 
-import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -10,8 +9,10 @@ import java.util.Set;
  */
 public class SerialSemanticSimulationStep implements SemanticSimulationStep {
 
+    private final TypeBuckets buckets = new TypeBuckets();
+
     @Override
     public void executeOneStep(Set<Simulatable> simulatables) {
-        new HashSet<>(simulatables).forEach(Simulatable::simulateStep);
+        buckets.simulateStep(simulatables);
     }
 }
@@ -1,8 +1,11 @@
 package com.charrey.game.simulator;
 
 import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.RandomExplorer;
 import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableRegistry;
 import com.charrey.game.model.simulatable.subgrid.SubGrid;
+import com.charrey.game.model.simulatable.subgrid.TransitCache;
 import com.charrey.game.settings.Settings;
 
 import java.util.*;
@@ -13,19 +16,43 @@ import java.util.logging.Logger;
  */
 public class Simulator {
 
-    private static final int CORRECTION_SAMPLES = 100;
+    private static final long STORE_INTERVAL_NANOS = 1_000_000_000L / 60;
+    /**
+     * Memory that the copies of the states of a cycle may take up together, so that any step of the cycle can be
+     * restored at once. Cycles whose copies would take up more are advanced through step by step instead.
+     */
+    private static final long MAX_PHASE_SNAPSHOT_BYTES = Runtime.getRuntime().maxMemory() / 8;
+    /**
+     * Approximate size of a copy of a grid per cell and per simulatable in it, as measured on copies of 256x256 and
+     * 1024x1024 grids with up to 60000 WeakExplorers (8 bytes per cell, 200 to 260 bytes per simulatable)
+     */
+    private static final long SNAPSHOT_BYTES_PER_CELL = 8;
+    private static final long SNAPSHOT_BYTES_PER_SIMULATABLE = 256;
+
     private final Set<Grid> grids = new HashSet<>();
-    private final Set<Simulatable> masterSet = Collections.synchronizedSet(new HashSet<>());
+    private final List<SubGrid> subGrids = new ArrayList<>();
+    private final SimulatableRegistry masterSet = new SimulatableRegistry();
     private final Grid masterGrid;
     private final SemanticSimulationStep semanticStep;
     private final StateSwitchSimulationStep stateSwitchStep;
-    private final List<Long> lastStartTimes = new LinkedList<>();
+    private final StepPacer pacer = new StepPacer();
+    private final CycleDetector cycleDetector = new CycleDetector();
+    private final TransitCache transitCache = new TransitCache();
+    private final List<Grid> phaseSnapshots = new ArrayList<>();
+    private boolean phaseSnapshotsFit; //whether the copies of the states of the current cycle fit in memory
+    private Grid witness; //state after witnessStep, against which a cycle is checked before it is trusted
+    private long witnessStep;
+    private boolean cycleConfirmed;
+    private boolean deterministic;
+    private long totalSteps = 0;
+    private GridEngine gridEngine;
+    private long lastStore = 0;
     private Thread simulatorThread;
     private long lastLog = 0;
     private long stepCount = 0;
     private double average = 0;
     private double sampleCount = 0;
-    private double simsPerSecondCache = Settings.requestedSimulationsPerSecond;
+    private double lastTargetSpeed = Double.NaN;
 
     /**
      * Creates a new simulator that simulates the provided model
@@ -37,53 +64,75 @@ public class Simulator {
         this.semanticStep = switch (Settings.simulationStep) {
             case SERIAL -> new SerialSemanticSimulationStep();
             case PARALLEL -> new ParallelSemanticSimulationStep();
+            case TILED -> new TiledSemanticSimulationStep();
+            case VIRTUAL -> new VirtualSemanticSimulationStep();
+            case ADAPTIVE -> new AdaptiveSemanticSimulationStep();
         };
         this.stateSwitchStep = switch (Settings.stateSwitchStep) {
             case SERIAL -> new SerialStateSwitchSimulationStep();
             case PARALLEL -> new ParallelStateSwitchSimulationStep();
+            case TILED -> new TiledStateSwitchSimulationStep();
+            case VIRTUAL -> new VirtualStateSwitchSimulationStep();
+            case ADAPTIVE -> new AdaptiveStateSwitchSimulationStep();
         };
     }
 
-    private void setGrids() {
+    /**
+     * Collects all grids and subgrids of the model, and fills the masterset with the simulatables that are not static.
+     * Static simulatables are given the masterset as well, so that they can add themselves once they stop being static.
+     * The grids are only needed to hash the state: which grids need to be updated after a step is tracked by the
+     * masterset itself, as simulatables move within, enter and leave grids.
+     */
+    private void collectModel() {
+        masterSet.clear();
         grids.clear();
-        Queue<Simulatable> queue = new LinkedList<>(masterSet);
-        while (!queue.isEmpty()) {
-            Simulatable sim = queue.poll();
-            grids.add(sim.getContainerGrid());
+        subGrids.clear();
+        collectModel(masterGrid);
+    }
+
+    private void collectModel(Grid grid) {
+        grids.add(grid);
+        for (Simulatable sim : new ArrayList<>(grid.getSimulatables())) {
+            sim.setMasterSet(masterSet);
+            if (!sim.isStatic()) {
+                masterSet.add(sim);
+            }
             if (sim instanceof SubGrid subGrid) {
-                grids.add(subGrid.getContainerGrid());
+                subGrids.add(subGrid);
+                collectModel(subGrid.getSubgrid());
             }
         }
     }
 
-    private void setMasterSet(Grid grid) {
-        grid.getSimulatables().forEach(sim -> {
-            masterSet.add(sim);
-            if (sim instanceof SubGrid subGrid) {
-                setMasterSet(subGrid.getSubgrid());
-            }
-        });
+    private void attachTransitCache() {
+        if (Settings.subgridTransitCache) {
+            transitCache.attach(masterGrid);
+        } else {
+            TransitCache.detach(masterGrid);
+        }
     }
 
     /**
      * Starts the simulation
      */
     public void start() {
-        masterSet.clear();
-        setMasterSet(masterGrid);
-        setGrids();
+        collectModel();
+        RandomExplorer.seedStreams(masterSet, masterGrid.getRandomSeed());
+        transitCache.clear();
+        attachTransitCache();
+        synchronized (masterGrid) {
+            gridEngine = createGridEngine();
+            resetCycleDetection();
+        }
         simulatorThread = new Thread(() -> {
             stepCount = 0;
             average = 0;
             sampleCount = 0;
-            masterSet.forEach(simulatable -> simulatable.setMasterSet(masterSet));
+            pacer.reset();
             while (!Thread.currentThread().isInterrupted()) {
                 try {
-                    initializeIteration();
                     synchronized (masterGrid) {
-                        semanticStep.executeOneStep(masterSet);
-                        stateSwitchStep.nextStep(masterSet);
-                        grids.forEach(Grid::updateMapAndDeduplicate);
+                        step();
                     }
                     finalizeIteration();
                 } catch (InterruptedException e) {
@@ -94,6 +143,235 @@ public class Simulator {
         simulatorThread.start();
     }
 
+    private void step() {
+        if (gridEngine != null) {
+            gridEngine.step();
+        } else {
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            masterSet.forEachChangedGrid(Grid::updateMapAndDeduplicate);
+            masterSet.compact();
+        }
+        totalSteps++;
+        observeState();
+        if (gridEngine != null) {
+            storeGridEngine(false);
+        }
+    }
+
+    private void resetCycleDetection() {
+        totalSteps = 0;
+        //random explorers may leave a state differently each time it is reached
+        deterministic = masterSet.stream().noneMatch(RandomExplorer.class::isInstance);
+        restartCycleDetection();
+    }
+
+    /**
+     * Returns whether cycles are looked for: the simulation must be deterministic, and the state must be cheap to hash
+     * after every step
+     */
+    private boolean searchesCycles() {
+        return deterministic && (gridEngine == null || gridEngine.hashesIncrementally());
+    }
+
+    /**
+     * Forgets the recorded states and any cycle found among them, and starts recording at the current step
+     */
+    private void restartCycleDetection() {
+        cycleDetector.reset();
+        phaseSnapshots.clear();
+        cycleConfirmed = false;
+        witness = null;
+        Settings.detectedPeriod = null;
+        Settings.firstRepeatStep = null;
+        if (searchesCycles()) {
+            witness = snapshot();
+            witnessStep = totalSteps;
+        }
+        observeState();
+    }
+
+    /**
+     * Records the state after the current step, publishes a cycle once it is confirmed, and keeps a copy of the state
+     * of each step of the cycle (if the copies fit in memory) so that it can later be restored at once. Two steps whose
+     * states hash alike are only taken to start a cycle once their states are found to be equal: if the earlier step
+     * is the first one recorded, its state is compared at once, and otherwise the state one period later is compared
+     * with the current one. If the states differ, the hashes collided, and the search for a cycle starts over.
+     */
+    private void observeState() {
+        if (!searchesCycles()) {
+            return;
+        }
+        if (cycleDetector.record(totalSteps, stateHash())) {
+            if (cycleDetector.getCycleStart() != witnessStep) {
+                witness = snapshot();
+                witnessStep = totalSteps;
+            }
+        }
+        if (cycleDetector.hasCycle() && !cycleConfirmed && totalSteps - witnessStep == cycleDetector.getPeriod()) {
+            if (gridEngine != null) {
+                storeGridEngine(true);
+            }
+            if (!masterGrid.sameState(witness)) {
+                Logger.getLogger(getClass().getName()).warning(() -> "The states after steps " + witnessStep + " and " + totalSteps + " have the same hash, but differ.");
+                restartCycleDetection();
+                return;
+            }
+            cycleConfirmed = true;
+            witness = null;
+            Settings.detectedPeriod = cycleDetector.getPeriod();
+            Settings.firstRepeatStep = cycleDetector.getFirstRepeat();
+            Logger.getLogger(getClass().getName()).info(() -> "Step " + cycleDetector.getFirstRepeat() + " repeats step " + cycleDetector.getCycleStart() + "; the simulation has a period of " + cycleDetector.getPeriod() + " steps.");
+        }
+        if (cycleDetector.hasCycle() && phaseSnapshots.isEmpty()) {
+            phaseSnapshotsFit = cycleDetector.getPeriod() <= MAX_PHASE_SNAPSHOT_BYTES / snapshotBytes();
+        }
+        if (cycleDetector.hasCycle() && phaseSnapshotsFit && phaseSnapshots.size() < cycleDetector.getPeriod()) {
+            phaseSnapshots.add(witness != null && witnessStep == totalSteps ? witness : snapshot());
+        }
+    }
+
+    /**
+     * Estimates the memory a copy of the current state takes up, from the number of cells and simulatables of all grids
+     *
+     * @return the estimated number of bytes
+     */
+    private long snapshotBytes() {
+        if (gridEngine != null) {
+            storeGridEngine(true);
+        }
+        long res = 0;
+        for (Grid grid : grids) {
+            res += SNAPSHOT_BYTES_PER_CELL * grid.getWidth() * grid.getHeight() + SNAPSHOT_BYTES_PER_SIMULATABLE * grid.getSimulatables().size();
+        }
+        return Math.max(1, res);
+    }
+
+    private Grid snapshot() {
+        if (gridEngine != null) {
+            storeGridEngine(true);
+        }
+        Grid snapshot = new Grid(masterGrid.getWidth(), masterGrid.getHeight());
+        snapshot.copy(masterGrid);
+        return snapshot;
+    }
+
+    private long stateHash() {
+        if (gridEngine != null) {
+            return gridEngine.stateHash();
+        }
+        long res = masterGrid.getStateHash();
+        for (Grid grid : grids) {
+            if (grid != masterGrid) {
+                res ^= grid.getStateHash();
+            }
+        }
+        for (SubGrid subGrid : subGrids) {
+            res ^= subGrid.getTransitHash();
+        }
+        return res;
+    }
+
+    /**
+     * Returns the first step from which on the simulation is known to be periodic: the step where the cycle was found
+     * to start if its state was compared, or otherwise the step at which it was found to repeat
+     */
+    private long trustedCycleStart() {
+        return witnessStep == cycleDetector.getCycleStart() ? cycleDetector.getCycleStart() : cycleDetector.getFirstRepeat();
+    }
+
+    /**
+     * Returns the number of steps simulated since the simulation was started
+     *
+     * @return the number of steps
+     */
+    public long getStep() {
+        synchronized (masterGrid) {
+            return totalSteps;
+        }
+    }
+
+    /**
+     * Brings the simulation to the state after some step. Once the simulation is known to be periodic and the state of
+     * each step in its cycle has been recorded, any step in the cycle is restored directly, no matter how far away it
+     * is. Otherwise, the simulation is advanced step by step, skipping whole periods if a cycle is known. If no cycle is
+     * known and the grid is simulated by a {@link GridEngine}, the engine advances to the step at once (see
+     * {@link GridEngine#advance(long)}), and only the state after that step is stored in the grid. Only the
+     * {@link CorridorEngine} skips the steps between its events; on grids it does not support, reaching a step without a
+     * known cycle takes time proportional to the number of steps.
+     *
+     * @param step number of the step to go to
+     * @throws IllegalArgumentException if the step lies before the current step and before the cycle
+     */
+    public void jumpToStep(long step) {
+        synchronized (masterGrid) {
+            boolean periodic = cycleConfirmed && step >= trustedCycleStart();
+            if (!periodic && step < totalSteps) {
+                throw new IllegalArgumentException("Cannot go back to step " + step + " from step " + totalSteps + ".");
+            }
+            long period = cycleDetector.getPeriod();
+            if (periodic && phaseSnapshots.size() == period) {
+                masterGrid.copy(phaseSnapshots.get((int) Math.floorMod(step - cycleDetector.getFirstRepeat(), period)));
+                reload();
+            } else if (periodic || gridEngine == null) {
+                long target = periodic ? totalSteps + Math.floorMod(step - totalSteps, period) : step;
+                while (totalSteps < target) {
+                    step();
+                }
+                if (gridEngine != null) {
+                    storeGridEngine(true);
+                }
+            } else {
+                //the engine jumps over the steps in between without producing their states, so no cycle can be found
+                //among them: the search for one starts over at the target step
+                gridEngine.advance(step - totalSteps);
+                totalSteps = step;
+                restartCycleDetection();
+                storeGridEngine(true);
+            }
+            totalSteps = step;
+        }
+    }
+
+    /**
+     * Rebuilds the bookkeeping of the simulator after the master grid has been replaced by a different state
+     */
+    private void reload() {
+        collectModel();
+        attachTransitCache();
+        if (gridEngine != null) {
+            gridEngine = createGridEngine();
+        }
+    }
+
+    private GridEngine createGridEngine() {
+        GridEngine engine = null;
+        if (Settings.corridorJumps && CorridorEngine.supports(masterGrid)) {
+            engine = new CorridorEngine(masterGrid);
+        } else if (Settings.bitboards && BitboardEngine.supports(masterGrid)) {
+            engine = new BitboardEngine(masterGrid);
+        } else if (Settings.explorerArrays && ExplorerArrayEngine.supports(masterGrid)) {
+            engine = new ExplorerArrayEngine(masterGrid);
+        }
+        String engineName = engine == null ? "simulatable objects" : engine.getClass().getSimpleName();
+        Logger.getLogger(getClass().getName()).info(() -> "Simulating with " + engineName + ".");
+        return engine;
+    }
+
+    /**
+     * Copies the state of the grid engine back into the simulatables of the master grid, so that it can be rendered.
+     * Unless forced, this happens at most once per frame, since it allocates new simulatables. The frame is counted from
+     * the end of the previous store, so that grids that take longer than a frame to store still get stepped in between.
+     *
+     * @param force whether to store regardless of the time since the previous store
+     */
+    private void storeGridEngine(boolean force) {
+        if (force || System.nanoTime() - lastStore > STORE_INTERVAL_NANOS) {
+            gridEngine.store(masterGrid);
+            lastStore = System.nanoTime();
+        }
+    }
+
     private void finalizeIteration() throws InterruptedException {
         if (System.currentTimeMillis() - lastLog > 1000) {
             lastLog = System.currentTimeMillis();
@@ -101,56 +379,36 @@ public class Simulator {
             sampleCount++;
             Settings.actualSimulationsPerSecond = stepCount;
             Logger.getLogger(getClass().getName()).info(() -> "Simulating at " + stepCount + " steps per second (average = " + average + ").");
+            publishAdaptiveExecution();
             stepCount = 0;
         }
-        simsPerSecondCache = stopClock(simsPerSecondCache);
-        stepCount++;
-    }
-
-    private void initializeIteration() {
-        lastStartTimes.add(System.nanoTime());
-        while (lastStartTimes.size() > CORRECTION_SAMPLES) {
-            lastStartTimes.remove(0);
-        }
-    }
-
-
-    private double stopClock(double lastRequestedSpeed) throws InterruptedException {
-        long mostRecentStart = lastStartTimes.get(lastStartTimes.size() - 1);
-        if (lastRequestedSpeed != Settings.requestedSimulationsPerSecond) {
+        double targetSpeed = Settings.turboSimulation ? Double.POSITIVE_INFINITY : Settings.requestedSimulationsPerSecond;
+        if (targetSpeed != lastTargetSpeed) {
             sampleCount = 0;
             average = 0;
             stepCount = 0;
-            lastRequestedSpeed = Settings.requestedSimulationsPerSecond;
-            lastStartTimes.clear();
+            lastTargetSpeed = targetSpeed;
         }
-        long end = System.nanoTime();
-        if (lastStartTimes.size() < CORRECTION_SAMPLES) {
-            sleepBasedOnSpentTime(end - mostRecentStart);
+        if (Settings.turboSimulation) {
+            pacer.reset();
         } else {
-            sleepBasedOnLastSamples(lastStartTimes.get(0));
+            pacer.awaitNextStep(targetSpeed);
         }
-        return lastRequestedSpeed;
+        stepCount++;
     }
 
-    private void sleepBasedOnSpentTime(long duration) throws InterruptedException {
-        double shouldSleep = ((1000000000d / Settings.requestedSimulationsPerSecond) - duration);
-        if (shouldSleep > 0) {
-            long millis = (long) (shouldSleep / 1000000);
-            int nanos = Math.floorMod((long) shouldSleep, 1000000);
-            Thread.sleep(millis, nanos);
+    /**
+     * Publishes how the adaptive steps (if any) currently execute, so that it can be shown to the user
+     */
+    private void publishAdaptiveExecution() {
+        List<String> descriptions = new ArrayList<>(2);
+        if (semanticStep instanceof AdaptiveSemanticSimulationStep adaptive) {
+            descriptions.add("step " + adaptive.describe());
         }
-    }
-
-    private void sleepBasedOnLastSamples(long startOfEarliestSample) throws InterruptedException {
-        double expectedDurationNanos = CORRECTION_SAMPLES * (1000000000d / Settings.requestedSimulationsPerSecond);
-        double actualDurationNanos = System.nanoTime() - (double) startOfEarliestSample;
-        double shouldSleep = expectedDurationNanos - actualDurationNanos;
-        if (shouldSleep > 0) {
-            long millis = (long) (shouldSleep / 1000000);
-            int nanos = Math.floorMod((long) shouldSleep, 1000000);
-            Thread.sleep(millis, nanos);
+        if (stateSwitchStep instanceof AdaptiveStateSwitchSimulationStep adaptive) {
+            descriptions.add("switch " + adaptive.describe());
         }
+        Settings.adaptiveExecution = descriptions.isEmpty() ? null : String.join(", ", descriptions);
     }
 
     /**
@@ -162,10 +420,18 @@ public class Simulator {
                 simulatorThread.interrupt();
                 simulatorThread.join();
             }
+            if (gridEngine != null) {
+                synchronized (masterGrid) {
+                    storeGridEngine(true);
+                }
+            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         } finally {
             Settings.actualSimulationsPerSecond = null;
+            Settings.adaptiveExecution = null;
+            Settings.detectedPeriod = null;
+            Settings.firstRepeatStep = null;
         }
     }
 }
@@ -0,0 +1,58 @@
+package com.charrey.game.simulator;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a simulation loop to a requested number of steps per second. Steps are scheduled against absolute deadlines so
+ * that timing errors of individual steps do not accumulate into drift. The calling thread is parked until shortly before
+ * each deadline and spin-waits for the remainder, since parking and sleeping alone are too coarse to hold rates of tens
+ * of thousands of steps per second.
+ */
+public class StepPacer {
+
+    private static final long SPIN_NANOS = 100_000;
+    private static final int MAX_BACKLOG_STEPS = 100;
+    private static final long MIN_BACKLOG_NANOS = 250_000_000;
+
+    private double stepsPerSecond = Double.NaN;
+    private long period;
+    private long nextDeadline;
+
+    /**
+     * Blocks until the next step is due. If the simulation cannot keep up, at most a limited backlog of steps is
+     * caught up on by not waiting; beyond that the schedule is moved forward instead.
+     *
+     * @param requestedStepsPerSecond number of steps per second to aim for
+     * @throws InterruptedException thrown when the thread is interrupted while waiting
+     */
+    public void awaitNextStep(double requestedStepsPerSecond) throws InterruptedException {
+        long now = System.nanoTime();
+        if (requestedStepsPerSecond != stepsPerSecond) {
+            stepsPerSecond = requestedStepsPerSecond;
+            period = Math.max(1, Math.round(1000000000d / requestedStepsPerSecond));
+            nextDeadline = now;
+        }
+        nextDeadline += period;
+        if (now - nextDeadline > Math.max(MAX_BACKLOG_STEPS * period, MIN_BACKLOG_NANOS)) {
+            nextDeadline = now;
+        }
+        long remaining;
+        while ((remaining = nextDeadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        while (nextDeadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Forgets the current schedule, for example because pacing was suspended. The next call to
+     * {@link #awaitNextStep(double)} starts a new schedule.
+     */
+    public void reset() {
+        stepsPerSecond = Double.NaN;
+    }
+}
@@ -0,0 +1,141 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Splits every grid of a simulation into square tiles and orders the simulatables of a step by the tile their
+ * left-bottommost square lies in. The tiles are then processed as ForkJoinPool tasks, so that each task works on
+ * simulatables that are close to each other in the grid and a busy region of the board is split over several threads
+ * while sparse regions are processed together.
+ */
+class TilePartition {
+
+    /**
+     * Number of cells in a single row or column of a tile
+     */
+    static final int TILE_SIZE = 32;
+    /**
+     * Number of simulatables below which a range of tiles is processed by a single task instead of being split further
+     */
+    static final int SEQUENTIAL_THRESHOLD = 512;
+
+    private final Map<Grid, Integer> firstTileOfGrid = new IdentityHashMap<>();
+    private Simulatable[] snapshot = new Simulatable[0];
+    private Simulatable[] sorted = new Simulatable[0];
+    private int[] tileOfSimulatable = new int[0];
+    private int[] tileStart = new int[1];
+    private int[] tileCursor = new int[0];
+    private int tileCount;
+    private Grid lastGrid;
+    private int lastFirstTile;
+    private int tilesPerRow;
+
+    /**
+     * Applies an action to every simulatable of a set, one ForkJoinPool task per range of tiles. Returns once the action
+     * has been applied to all of them.
+     *
+     * @param simulatables simulatables to process
+     * @param action       action to apply
+     */
+    void forEach(Set<Simulatable> simulatables, Consumer<Simulatable> action) {
+        int count = partition(simulatables);
+        if (count <= SEQUENTIAL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                action.accept(sorted[i]);
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new TileTask(0, tileCount, action));
+        }
+        Arrays.fill(sorted, 0, count, null);
+    }
+
+    private int partition(Set<Simulatable> simulatables) {
+        int count = simulatables.size();
+        snapshot = simulatables.toArray(snapshot);
+        if (sorted.length < count) {
+            sorted = new Simulatable[snapshot.length];
+            tileOfSimulatable = new int[snapshot.length];
+        }
+        firstTileOfGrid.clear();
+        tileCount = 0;
+        for (int i = 0; i < count; i++) {
+            tileOfSimulatable[i] = tileOf(snapshot[i]);
+        }
+        if (tileStart.length < tileCount + 1) {
+            tileStart = new int[tileCount + 1];
+        } else {
+            Arrays.fill(tileStart, 0, tileCount + 1, 0);
+        }
+        for (int i = 0; i < count; i++) {
+            tileStart[tileOfSimulatable[i] + 1]++;
+        }
+        for (int tile = 0; tile < tileCount; tile++) {
+            tileStart[tile + 1] += tileStart[tile];
+        }
+        if (tileCursor.length < tileCount) {
+            tileCursor = new int[tileStart.length];
+        }
+        System.arraycopy(tileStart, 0, tileCursor, 0, tileCount);
+        for (int i = 0; i < count; i++) {
+            sorted[tileCursor[tileOfSimulatable[i]]++] = snapshot[i];
+        }
+        Arrays.fill(snapshot, 0, count, null);
+        return count;
+    }
+
+    private int tileOf(Simulatable simulatable) {
+        Grid grid = simulatable.getContainerGrid();
+        if (grid != lastGrid || tileCount == 0) {
+            lastGrid = grid;
+            tilesPerRow = grid == null ? 1 : (grid.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+            Integer firstTile = firstTileOfGrid.get(grid);
+            if (firstTile == null) {
+                firstTile = tileCount;
+                firstTileOfGrid.put(grid, firstTile);
+                tileCount += grid == null ? 1 : tilesPerRow * ((grid.getHeight() + TILE_SIZE - 1) / TILE_SIZE);
+            }
+            lastFirstTile = firstTile;
+        }
+        if (grid == null) {
+            return lastFirstTile;
+        }
+        int x = Math.floorMod(simulatable.getLocation().x(), grid.getWidth());
+        int y = Math.floorMod(simulatable.getLocation().y(), grid.getHeight());
+        return lastFirstTile + (y / TILE_SIZE) * tilesPerRow + x / TILE_SIZE;
+    }
+
+    private class TileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int fromTile;
+        private final int toTile;
+        private final transient Consumer<Simulatable> action;
+
+        TileTask(int fromTile, int toTile, Consumer<Simulatable> action) {
+            this.fromTile = fromTile;
+            this.toTile = toTile;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            int from = tileStart[fromTile];
+            int to = tileStart[toTile];
+            if (toTile - fromTile <= 1 || to - from <= SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    action.accept(sorted[i]);
+                }
+            } else {
+                int middle = (fromTile + toTile) >>> 1;
+                invokeAll(new TileTask(fromTile, middle, action), new TileTask(middle, toTile, action));
+            }
+        }
+    }
+}
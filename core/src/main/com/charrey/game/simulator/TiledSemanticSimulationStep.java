@@ -0,0 +1,18 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.Set;
+
+/**
+ * Performs the simulation step of the simulator per tile of the grid, with each range of tiles being a ForkJoinPool task
+ */
+public class TiledSemanticSimulationStep implements SemanticSimulationStep {
+
+    private final TilePartition partition = new TilePartition();
+
+    @Override
+    public void executeOneStep(Set<Simulatable> simulatables) {
+        partition.forEach(simulatables, Simulatable::simulateStep);
+    }
+}
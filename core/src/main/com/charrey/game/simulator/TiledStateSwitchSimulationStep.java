@@ -0,0 +1,20 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.Set;
+
+/**
+ * This class performs the switch from current state to next state per tile of the grid, with each range of tiles being
+ * a ForkJoinPool task. Simulatables that move to another tile are exchanged through the pending changes of their grid,
+ * which are applied after the state switch.
+ */
+public class TiledStateSwitchSimulationStep implements StateSwitchSimulationStep {
+
+    private final TilePartition partition = new TilePartition();
+
+    @Override
+    public void nextStep(Set<Simulatable> simulatables) {
+        partition.forEach(simulatables, Simulatable::stateSwitchStep);
+    }
+}
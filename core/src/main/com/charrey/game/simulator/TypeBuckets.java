@@ -0,0 +1,121 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.RandomExplorer;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SplitExplorer;
+import com.charrey.game.model.simulatable.WeakExplorer;
+import com.charrey.game.model.simulatable.subgrid.SubGrid;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Sorts the simulatables of a step into one bucket per concrete class and runs each bucket in a loop of its own. Each
+ * loop is a separate call site that only ever sees a single class, so the JIT can inline the step of that class, where
+ * a single loop over all simulatables sees every class and has to dispatch virtually. Simulatables of any other class
+ * (or of a subclass) are processed by a final loop over the mixed remainder.
+ */
+class TypeBuckets {
+
+    private WeakExplorer[] weakExplorers = new WeakExplorer[0];
+    private SplitExplorer[] splitExplorers = new SplitExplorer[0];
+    private RandomExplorer[] randomExplorers = new RandomExplorer[0];
+    private SubGrid[] subGrids = new SubGrid[0];
+    private Simulatable[] others = new Simulatable[0];
+    private int weakCount;
+    private int splitCount;
+    private int randomCount;
+    private int subGridCount;
+    private int otherCount;
+
+    /**
+     * Computes the next state of every simulatable of a set, one loop per class
+     *
+     * @param simulatables simulatables to simulate
+     */
+    void simulateStep(Set<Simulatable> simulatables) {
+        partition(simulatables);
+        for (int i = 0; i < weakCount; i++) {
+            weakExplorers[i].simulateStep();
+        }
+        for (int i = 0; i < splitCount; i++) {
+            splitExplorers[i].simulateStep();
+        }
+        for (int i = 0; i < randomCount; i++) {
+            randomExplorers[i].simulateStep();
+        }
+        for (int i = 0; i < subGridCount; i++) {
+            subGrids[i].simulateStep();
+        }
+        for (int i = 0; i < otherCount; i++) {
+            others[i].simulateStep();
+        }
+        clear();
+    }
+
+    /**
+     * Sets the current state of every simulatable of a set to its computed state, one loop per class
+     *
+     * @param simulatables simulatables to switch
+     */
+    void stateSwitchStep(Set<Simulatable> simulatables) {
+        partition(simulatables);
+        for (int i = 0; i < weakCount; i++) {
+            weakExplorers[i].stateSwitchStep();
+        }
+        for (int i = 0; i < splitCount; i++) {
+            splitExplorers[i].stateSwitchStep();
+        }
+        for (int i = 0; i < randomCount; i++) {
+            randomExplorers[i].stateSwitchStep();
+        }
+        for (int i = 0; i < subGridCount; i++) {
+            subGrids[i].stateSwitchStep();
+        }
+        for (int i = 0; i < otherCount; i++) {
+            others[i].stateSwitchStep();
+        }
+        clear();
+    }
+
+    private void partition(Set<Simulatable> simulatables) {
+        clear(); //in case a previous step threw halfway
+        int size = simulatables.size();
+        if (others.length < size) {
+            //every bucket can hold all simulatables, so that none needs to be checked for growth while sorting
+            weakExplorers = new WeakExplorer[size];
+            splitExplorers = new SplitExplorer[size];
+            randomExplorers = new RandomExplorer[size];
+            subGrids = new SubGrid[size];
+            others = new Simulatable[size];
+        }
+        //a registry visits its members below the extent it had when the iteration started, even if others are added
+        for (Simulatable simulatable : simulatables) {
+            Class<?> type = simulatable.getClass();
+            if (type == WeakExplorer.class) {
+                weakExplorers[weakCount++] = (WeakExplorer) simulatable;
+            } else if (type == SplitExplorer.class) {
+                splitExplorers[splitCount++] = (SplitExplorer) simulatable;
+            } else if (type == RandomExplorer.class) {
+                randomExplorers[randomCount++] = (RandomExplorer) simulatable;
+            } else if (type == SubGrid.class) {
+                subGrids[subGridCount++] = (SubGrid) simulatable;
+            } else {
+                others[otherCount++] = simulatable;
+            }
+        }
+    }
+
+    private void clear() {
+        Arrays.fill(weakExplorers, 0, weakCount, null);
+        Arrays.fill(splitExplorers, 0, splitCount, null);
+        Arrays.fill(randomExplorers, 0, randomCount, null);
+        Arrays.fill(subGrids, 0, subGridCount, null);
+        Arrays.fill(others, 0, otherCount, null);
+        weakCount = 0;
+        splitCount = 0;
+        randomCount = 0;
+        subGridCount = 0;
+        otherCount = 0;
+    }
+}
@@ -0,0 +1,18 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.Set;
+
+/**
+ * Performs the simulation step of the simulator per grid, with each grid being simulated on a virtual thread of its own
+ */
+public class VirtualSemanticSimulationStep implements SemanticSimulationStep {
+
+    private final GridPartition partition = new GridPartition();
+
+    @Override
+    public void executeOneStep(Set<Simulatable> simulatables) {
+        partition.forEach(simulatables, Simulatable::simulateStep);
+    }
+}
@@ -0,0 +1,18 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+
+import java.util.Set;
+
+/**
+ * This class performs the switch from current state to next state per grid, with each grid on a virtual thread of its own.
+ */
+public class VirtualStateSwitchSimulationStep implements StateSwitchSimulationStep {
+
+    private final GridPartition partition = new GridPartition();
+
+    @Override
+    public void nextStep(Set<Simulatable> simulatables) {
+        partition.forEach(simulatables, Simulatable::stateSwitchStep);
+    }
+}
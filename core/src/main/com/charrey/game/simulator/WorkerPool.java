@@ -0,0 +1,219 @@
+package com.charrey.game.simulator;
+
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+/**
+ * Fixed set of long-lived worker threads, sized to the available processors, that apply an action to contiguous chunks
+ * of an array of simulatables or of the slots of a {@link SimulatableRegistry}. Each call is one phase: the workers are
+ * released through a Phaser, each processes its own chunk (the calling thread processes the first one) and the call
+ * returns once every thread has arrived at the end of the phase. This avoids submitting a task per simulatable, whose
+ * overhead dominates the simulation logic itself.
+ * <p>
+ * Whether a phase pays off on the pool depends on how long the hand-off through the Phaser takes, which depends on the
+ * number of cores and how fast they wake up, so the pool measures it when it starts (see {@link #getMinChunkSize()})
+ * instead of relying on a fixed crossover. With a single core the pool has no workers and runs every phase serially.
+ * The ADAPTIVE execution type measures the crossover of the actual phases online instead.
+ */
+public class WorkerPool {
+
+    /**
+     * Serial cost of the cheaper phase of a step, the state switch, per simulatable in nanoseconds. Measured with the
+     * serial steps on 65536 explorers (half of them SplitExplorers) on a 1024x1024 grid: about 230 ns for the semantic
+     * step and 100 ns for the state switch. Unlike the cost of a hand-off, this does not depend on the number of cores.
+     */
+    static final double NANOS_PER_SIMULATABLE = 100;
+    private static final int CALIBRATION_PHASES = 1000;
+
+    private static WorkerPool instance;
+
+    private final int parallelism;
+    private final int minChunkSize;
+    private final Phaser phaser;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private IntFunction<Simulatable> items;
+    private int count;
+    private int chunks;
+    private Consumer<Simulatable> action;
+
+    private WorkerPool(int parallelism) {
+        this.parallelism = parallelism;
+        this.phaser = new Phaser(parallelism);
+        for (int index = 1; index < parallelism; index++) {
+            int chunkIndex = index;
+            Thread worker = new Thread(() -> work(chunkIndex), "simulation-worker-" + index);
+            worker.setDaemon(true);
+            worker.start();
+        }
+        this.minChunkSize = parallelism > 1 ? calibrate() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Measures the median time an empty phase takes to be handed off to all workers and back, and derives from it the
+     * smallest chunk whose work (at {@link #NANOS_PER_SIMULATABLE} per simulatable) covers that time. With two chunks of
+     * that size, the parallel phase breaks even with the serial one.
+     *
+     * @return the smallest number of simulatables handed to a single thread
+     */
+    private int calibrate() {
+        long[] nanos = new long[CALIBRATION_PHASES];
+        for (int phase = 0; phase < CALIBRATION_PHASES; phase++) {
+            long start = System.nanoTime();
+            forEach(index -> null, parallelism, 1, simulatable -> {
+            });
+            nanos[phase] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        long handOff = nanos[CALIBRATION_PHASES / 2];
+        int res = (int) Math.max(1, Math.ceil(handOff / NANOS_PER_SIMULATABLE));
+        Logger.getLogger(getClass().getName()).info(() -> "A phase on " + parallelism + " threads is handed off in " + handOff
+                + " ns; handing each thread at least " + res + " simulatables.");
+        return res;
+    }
+
+    /**
+     * Returns the worker pool shared by all parallel simulation steps
+     *
+     * @return the singleton worker pool
+     */
+    public static synchronized WorkerPool get() {
+        if (instance == null) {
+            instance = new WorkerPool(Runtime.getRuntime().availableProcessors());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the number of threads (including the calling thread) that share the work of a phase
+     *
+     * @return the number of threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the smallest number of simulatables handed to a single thread, as measured when this pool started. Phases
+     * with fewer than twice this number of simulatables are executed serially on the calling thread, since below that
+     * count the hand-off costs more than it saves. With a single thread, this is {@link Integer#MAX_VALUE}.
+     *
+     * @return the smallest number of simulatables per thread
+     */
+    public int getMinChunkSize() {
+        return minChunkSize;
+    }
+
+    /**
+     * Applies an action to each of the first {@code count} simulatables of an array, using all threads of this pool.
+     * Returns once the action has been applied to all of them. If the action throws for any simulatable, the first
+     * such exception is rethrown after all threads have finished.
+     *
+     * @param items  simulatables
+     * @param count  number of simulatables of the array to process
+     * @param action action to apply
+     */
+    public void forEach(Simulatable[] items, int count, Consumer<Simulatable> action) {
+        forEach(index -> items[index], count, minChunkSize, action);
+    }
+
+    /**
+     * Applies an action to each of the first {@code count} simulatables of an array, as
+     * {@link #forEach(Simulatable[], int, Consumer)}, but with a different smallest number of simulatables per thread
+     *
+     * @param items        simulatables
+     * @param count        number of simulatables of the array to process
+     * @param minChunkSize smallest number of simulatables handed to a single thread
+     * @param action       action to apply
+     */
+    public void forEach(Simulatable[] items, int count, int minChunkSize, Consumer<Simulatable> action) {
+        forEach(index -> items[index], count, minChunkSize, action);
+    }
+
+    /**
+     * Applies an action to each member of a registry that occupies a slot below its current extent, using all threads
+     * of this pool. The slots are split into contiguous ranges in place, without copying them. Returns once the action
+     * has been applied to all of them. If the action throws for any simulatable, the first such exception is rethrown
+     * after all threads have finished.
+     *
+     * @param registry registry whose members to process
+     * @param action   action to apply
+     */
+    public void forEach(SimulatableRegistry registry, Consumer<Simulatable> action) {
+        forEach(registry::get, registry.extent(), minChunkSize, action);
+    }
+
+    /**
+     * Applies an action to each member of a registry, as {@link #forEach(SimulatableRegistry, Consumer)}, but with a
+     * different smallest number of simulatables per thread
+     *
+     * @param registry     registry whose members to process
+     * @param minChunkSize smallest number of simulatables handed to a single thread
+     * @param action       action to apply
+     */
+    public void forEach(SimulatableRegistry registry, int minChunkSize, Consumer<Simulatable> action) {
+        forEach(registry::get, registry.extent(), minChunkSize, action);
+    }
+
+    private synchronized void forEach(IntFunction<Simulatable> items, int count, int minChunkSize, Consumer<Simulatable> action) {
+        int chunkCount = Math.min(parallelism, count / minChunkSize);
+        if (chunkCount <= 1) {
+            for (int i = 0; i < count; i++) {
+                accept(items.apply(i), action);
+            }
+            return;
+        }
+        this.items = items;
+        this.count = count;
+        this.chunks = chunkCount;
+        this.action = action;
+        phaser.arriveAndAwaitAdvance();
+        runChunk(0);
+        phaser.arriveAndAwaitAdvance();
+        this.items = null;
+        this.action = null;
+        Throwable thrown = failure.getAndSet(null);
+        if (thrown instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (thrown instanceof Error error) {
+            throw error;
+        } else if (thrown != null) {
+            throw new IllegalStateException(thrown);
+        }
+    }
+
+    private void work(int chunkIndex) {
+        while (!Thread.currentThread().isInterrupted()) {
+            phaser.arriveAndAwaitAdvance();
+            runChunk(chunkIndex);
+            phaser.arriveAndAwaitAdvance();
+        }
+    }
+
+    private void runChunk(int chunkIndex) {
+        if (chunkIndex >= chunks) {
+            return;
+        }
+        int from = (int) ((long) count * chunkIndex / chunks);
+        int to = (int) ((long) count * (chunkIndex + 1) / chunks);
+        try {
+            for (int i = from; i < to; i++) {
+                accept(items.apply(i), action);
+            }
+        } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+    }
+
+    private static void accept(Simulatable simulatable, Consumer<Simulatable> action) {
+        if (simulatable != null) {
+            action.accept(simulatable);
+        }
+    }
+}
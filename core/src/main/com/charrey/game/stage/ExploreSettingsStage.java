@@ -1,17 +1,52 @@
 package com.charrey.game.stage;
 
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.ui.CheckBox;
+import com.badlogic.gdx.scenes.scene2d.ui.Table;
+import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
+import com.badlogic.gdx.utils.Align;
 import com.charrey.game.StageSwitcher;
+import com.charrey.game.settings.Settings;
+import com.charrey.game.ui.MainMenuButton;
+import com.charrey.game.util.SkinUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
- * Stage in which options are given to the user that can be modified to change game behaviour.
+ * Stage in which options are given to the user that can be modified to change game behaviour. The options take effect
+ * the next time a simulation is started.
  */
 public class ExploreSettingsStage extends HideableStage {
+
+    private final Table table = new Table();
+
     /**
      * Creates a new settings stage
      *
      * @param switcher Stage switcher used to change back to the main menu
      */
-    public ExploreSettingsStage(StageSwitcher switcher) {
+    public ExploreSettingsStage(@NotNull StageSwitcher switcher) {
         super();
+        addToggle("Store explorer-only grids in arrays", () -> Settings.explorerArrays, value -> Settings.explorerArrays = value);
+        addToggle("Replay traversals of subgrids from a cache", () -> Settings.subgridTransitCache, value -> Settings.subgridTransitCache = value);
+        addToggle("Let explorers jump along corridors", () -> Settings.corridorJumps, value -> Settings.corridorJumps = value);
+        table.add(new MainMenuButton(() -> switcher.changeToStage(ExploreStage.MENU))).width(100).pad(10);
+        addActor(table);
+        table.setX((getWidth() / 2f) - (table.getWidth() / 2f));
+        table.setY((getHeight() / 2f) - (table.getHeight() / 2f));
+    }
+
+    private void addToggle(String text, BooleanSupplier getter, Consumer<Boolean> setter) {
+        CheckBox checkBox = new CheckBox(" " + text, SkinUtils.getSkin());
+        checkBox.setChecked(getter.getAsBoolean());
+        checkBox.addListener(new ChangeListener() {
+            @Override
+            public void changed(ChangeEvent event, Actor actor) {
+                setter.accept(checkBox.isChecked());
+            }
+        });
+        table.add(checkBox).align(Align.left).pad(5).row();
     }
 }
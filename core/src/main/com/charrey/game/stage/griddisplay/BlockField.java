@@ -9,6 +9,7 @@ import com.charrey.game.model.simulatable.DirectionalSimulatable;
 import com.charrey.game.model.simulatable.Simulatable;
 import com.charrey.game.settings.Settings;
 import com.charrey.game.simulator.Simulator;
+import com.charrey.game.util.ErrorUtils;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -98,6 +99,20 @@ public class BlockField extends Group {
         Settings.currentlySimulating = false;
     }
 
+    /**
+     * Brings the running simulation to the state after some step (see {@link Simulator#jumpToStep(long)}), or tells the
+     * user why it cannot.
+     *
+     * @param step number of the step to go to
+     */
+    public void jumpToStep(long step) {
+        try {
+            simulator.jumpToStep(step);
+        } catch (IllegalArgumentException e) {
+            ErrorUtils.showErrorMessage(e.getMessage(), getStage());
+        }
+    }
+
     /**
      * Toggles the simulation, i.e. starts it if inactive and stops it if active.
      */
@@ -5,6 +5,8 @@ import com.badlogic.gdx.scenes.scene2d.InputEvent;
 import com.badlogic.gdx.scenes.scene2d.InputListener;
 import com.charrey.game.model.condition.BlockExists;
 import com.charrey.game.model.condition.NotBlockExists;
+import com.charrey.game.model.condition.RegionCountAtLeast;
+import com.charrey.game.model.condition.RegionEmpty;
 import com.charrey.game.model.simulatable.ConditionalBarrier;
 import com.charrey.game.model.simulatable.Simulatable;
 import com.charrey.game.settings.Settings;
@@ -13,6 +15,7 @@ import com.charrey.game.ui.context.ContextMenuItem;
 import com.charrey.game.ui.context.GroupContextMenuItem;
 import com.charrey.game.ui.context.LeafContextMenuItem;
 import com.charrey.game.util.GridItem;
+import com.charrey.game.util.InputUtils;
 
 import java.util.List;
 import java.util.Set;
@@ -58,25 +61,49 @@ class GameFieldClickHandler extends InputListener {
                         blockField.setSelectionMode(true);
                         uponSelection = gridItem -> conditionalBarrier.setCondition(new NotBlockExists(blockField.getGrid(), gridItem));
                     });
-                    contextMenu.add(new GroupContextMenuItem("Set transparent condition", List.of(existsBlock, notExistsBlock)));
+                    Supplier<ContextMenuItem> emptyRegion = () -> new LeafContextMenuItem("No explorers in region from... to...", () ->
+                            selectRegion((corner, width, height) -> conditionalBarrier.setCondition(new RegionEmpty(blockField.getGrid(), corner, width, height))));
+                    Supplier<ContextMenuItem> countInRegion = () -> new LeafContextMenuItem("Explorers in region from... to...", () ->
+                            selectRegion((corner, width, height) -> InputUtils.askNumber("Explorers in region", "Least number of explorers in the region", 1, width * height,
+                                    threshold -> conditionalBarrier.setCondition(new RegionCountAtLeast(blockField.getGrid(), corner, width, height, (int) threshold)), blockField.getStage())));
+                    contextMenu.add(new GroupContextMenuItem("Set transparent condition", List.of(existsBlock, notExistsBlock, emptyRegion, countInRegion)));
                 }
             }
         } else {
             contextMenu.add(new LeafContextMenuItem("Stop simulation", blockField::stopSimulation));
+            contextMenu.add(new LeafContextMenuItem("Jump to step...", () -> InputUtils.askNumber("Jump to step", "Step to jump to", 0, Long.MAX_VALUE,
+                    blockField::jumpToStep, blockField.getStage())));
         }
         blockField.getStage().getRoot().addActor(contextMenu);
         contextMenu.setX(stageCoordinates.x + 1);
         contextMenu.setY(stageCoordinates.y + 1);
     }
 
+    /**
+     * Lets the user select two opposite corners of a region of the grid, one click each
+     *
+     * @param uponRegion what to do with the selected region
+     */
+    private void selectRegion(RegionSelection uponRegion) {
+        blockField.setSelectionMode(true);
+        uponSelection = first -> {
+            blockField.setSelectionMode(true);
+            uponSelection = second -> uponRegion.accept(
+                    new GridItem(Math.min(first.x(), second.x()), Math.min(first.y(), second.y())),
+                    Math.abs(first.x() - second.x()) + 1,
+                    Math.abs(first.y() - second.y()) + 1);
+        };
+    }
+
     private void leftMouseClick(Vector2 localCoordinates) {
         if (!Settings.currentlySimulating) {
             int columnIndex = (int) (blockField.getGrid().getWidth() * (localCoordinates.x / blockField.getWidth()));
             int rowIndex = (int) (blockField.getGrid().getHeight() * (localCoordinates.y / blockField.getHeight()));
             if (blockField.getSelectionMode()) {
-                uponSelection.accept(new GridItem(columnIndex, rowIndex));
+                Consumer<GridItem> selection = uponSelection;
                 uponSelection = null;
                 blockField.setSelectionMode(false);
+                selection.accept(new GridItem(columnIndex, rowIndex)); //may start selecting another location
             } else {
                 if (Settings.newBlockFactory != null) {
                     int blockHeight = Settings.newBlockFactory.getHeight();
@@ -99,4 +126,19 @@ class GameFieldClickHandler extends InputListener {
         }
     }
 
+    /**
+     * Action on a region of the grid that the user selected
+     */
+    @FunctionalInterface
+    private interface RegionSelection {
+
+        /**
+         * Performs the action
+         *
+         * @param corner left-bottommost cell of the region
+         * @param width  width of the region
+         * @param height height of the region
+         */
+        void accept(GridItem corner, int width, int height);
+    }
 }
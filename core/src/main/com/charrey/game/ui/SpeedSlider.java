@@ -1,6 +1,7 @@
 package com.charrey.game.ui;
 
 import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.ui.CheckBox;
 import com.badlogic.gdx.scenes.scene2d.ui.Label;
 import com.badlogic.gdx.scenes.scene2d.ui.Slider;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
@@ -11,12 +12,19 @@ import com.charrey.game.util.SkinUtils;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Slider UI element that allows the user to specify the speed of the simulation
+ * Slider UI element that allows the user to specify the speed of the simulation. The slider is logarithmic, so that both
+ * slow, observable speeds and speeds of many thousands of steps per second can be selected. A turbo checkbox lets the
+ * simulation run as fast as possible. Below it, the period of the simulation is shown once it is found to repeat itself,
+ * as well as how the adaptive execution type currently runs the steps.
  */
 public class SpeedSlider extends Table {
 
+    private static final int MAX_STEPS_PER_SECOND_EXPONENT = 5;
+
     private final @NotNull Slider slider;
     private final Label middle;
+    private final Label cycle;
+    private final Label execution;
 
     /**
      * Creates a new Slider
@@ -25,19 +33,33 @@ public class SpeedSlider extends Table {
      */
     public SpeedSlider(float width) {
         Label label = new Label("Steps / second", SkinUtils.getSkin());
-        slider = new Slider(1, 1000, 1, false, SkinUtils.getSkin());
+        slider = new Slider(0, MAX_STEPS_PER_SECOND_EXPONENT, 0.01f, false, SkinUtils.getSkin());
         Label start = new Label("1", SkinUtils.getSkin());
         middle = new Label("-/1", SkinUtils.getSkin());
-        Label end = new Label("1000", SkinUtils.getSkin());
+        Label end = new Label(String.valueOf(Math.round(Math.pow(10, MAX_STEPS_PER_SECOND_EXPONENT))), SkinUtils.getSkin());
+        cycle = new Label("", SkinUtils.getSkin());
+        execution = new Label("", SkinUtils.getSkin());
+        CheckBox turbo = new CheckBox(" Turbo", SkinUtils.getSkin());
+        turbo.setChecked(Settings.turboSimulation);
         add(label).colspan(3).row();
         add(slider).width(width - 40).colspan(3).row();
         add(start).align(Align.topLeft);
         add(middle).align(Align.center);
-        add(end).align(Align.topRight);
+        add(end).align(Align.topRight).row();
+        add(turbo).colspan(3).row();
+        add(cycle).colspan(3).row();
+        add(execution).colspan(3);
         slider.addListener(new ChangeListener() {
             @Override
             public void changed(ChangeEvent event, Actor actor) {
-                Settings.requestedSimulationsPerSecond = slider.getValue();
+                Settings.requestedSimulationsPerSecond = Math.round(Math.pow(10, slider.getValue()));
+            }
+        });
+        turbo.addListener(new ChangeListener() {
+            @Override
+            public void changed(ChangeEvent event, Actor actor) {
+                Settings.turboSimulation = turbo.isChecked();
+                slider.setDisabled(turbo.isChecked());
             }
         });
     }
@@ -49,6 +71,12 @@ public class SpeedSlider extends Table {
         if (Settings.actualSimulationsPerSecond != null) {
             simsPerSecondString = Settings.actualSimulationsPerSecond.toString();
         }
-        middle.setText(simsPerSecondString + "/" + Settings.requestedSimulationsPerSecond);
+        String requestedString = Settings.turboSimulation ? "max" : String.valueOf(Math.round(Settings.requestedSimulationsPerSecond));
+        middle.setText(simsPerSecondString + "/" + requestedString);
+        Long period = Settings.detectedPeriod;
+        Long firstRepeat = Settings.firstRepeatStep;
+        cycle.setText(period == null || firstRepeat == null ? "" : "Period " + period + " (from step " + firstRepeat + ")");
+        String adaptiveExecution = Settings.adaptiveExecution;
+        execution.setText(adaptiveExecution == null ? "" : adaptiveExecution);
     }
 }
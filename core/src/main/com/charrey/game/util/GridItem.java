@@ -7,7 +7,9 @@ import java.util.Comparator;
 import java.util.function.ToIntFunction;
 
 /**
- * Stores the location of something inside a 2D grid.
+ * Stores the location of something inside a 2D grid. The simulation addresses the cells of a grid by int keys instead
+ * (see {@link com.charrey.game.model.Grid#cell(int, int)}); where a location is needed as an object, each grid hands
+ * out a single instance per cell through {@link com.charrey.game.model.Grid#item(int)}.
  */
 public record GridItem(int x, int y) implements Comparable<GridItem> {
 
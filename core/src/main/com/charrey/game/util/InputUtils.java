@@ -0,0 +1,94 @@
+package com.charrey.game.util;
+
+import com.badlogic.gdx.scenes.scene2d.Stage;
+import com.badlogic.gdx.scenes.scene2d.ui.Button;
+import com.badlogic.gdx.scenes.scene2d.ui.Dialog;
+import com.badlogic.gdx.scenes.scene2d.ui.Label;
+import com.badlogic.gdx.scenes.scene2d.ui.TextButton;
+import com.badlogic.gdx.scenes.scene2d.ui.TextField;
+
+import java.util.function.LongConsumer;
+
+import static com.badlogic.gdx.utils.Align.center;
+
+/**
+ * Class that provides utility methods to ask the user for input
+ */
+public class InputUtils {
+
+    /**
+     * Asks the user for a whole number in some range. The dialog stays open until the user enters a number in the range.
+     *
+     * @param title    title of the dialog
+     * @param question question to show above the text field
+     * @param min      smallest number that is accepted
+     * @param max      largest number that is accepted, or {@link Long#MAX_VALUE} if the range has no upper bound
+     * @param onAnswer what to do with the number the user entered
+     * @param stage    stage to show the dialog on
+     */
+    public static void askNumber(String title, String question, long min, long max, LongConsumer onAnswer, Stage stage) {
+        Blocker.block(stage);
+        String range = max == Long.MAX_VALUE ? " (at least " + min + ")" : " (" + min + " to " + max + ")";
+        new NumberDialog(title, question + range, min, max, onAnswer, stage);
+    }
+
+    private static class NumberDialog extends Dialog {
+
+        private final Label label;
+        private final TextField field;
+        private final String question;
+        private final long min;
+        private final long max;
+        private final LongConsumer onAnswer;
+
+        public NumberDialog(String title, String question, long min, long max, LongConsumer onAnswer, Stage stage) {
+            super(title, SkinUtils.getSkin());
+            this.question = question;
+            this.min = min;
+            this.max = max;
+            this.onAnswer = onAnswer;
+            label = new Label(question, SkinUtils.getSkin());
+            getContentTable().add(label).pad(30, 30, 10, 30).row();
+            field = new TextField(String.valueOf(min), SkinUtils.getSkin());
+            getContentTable().add(field).pad(0, 30, 30, 30);
+
+            Button button = new TextButton("Ok", SkinUtils.getSkin());
+            button.pad(10, 40, 10, 40);
+            getButtonTable().add(button);
+            setObject(button, null);
+
+            show(stage, null);
+            setKeepWithinStage(false);
+            setMovable(false);
+            setPosition(getStage().getWidth() / 2, getStage().getHeight() / 2, center);
+            stage.setKeyboardFocus(field);
+        }
+
+        @Override
+        protected void result(Object object) {
+            long answer;
+            boolean inRange;
+            try {
+                answer = Long.parseLong(field.getText().trim());
+                inRange = answer >= min && answer <= max;
+            } catch (NumberFormatException e) {
+                answer = min;
+                inRange = false;
+            }
+            if (!inRange) {
+                label.setText(question + "\n" + field.getText().trim() + " is not a number in that range.");
+                pack();
+                setPosition(getStage().getWidth() / 2, getStage().getHeight() / 2, center);
+                cancel();
+                return;
+            }
+            Blocker.unblock();
+            onAnswer.accept(answer);
+        }
+
+        @Override
+        public void hide() {
+            super.hide(null);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.DefaultBarrier;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SplitExplorer;
+import com.charrey.game.simulator.SemanticSimulationStep;
+import com.charrey.game.simulator.SerialSemanticSimulationStep;
+import com.charrey.game.simulator.SerialStateSwitchSimulationStep;
+import com.charrey.game.simulator.StateSwitchSimulationStep;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares stepping every simulatable of a board against stepping only its active (non-static) simulatables, on a board
+ * where barriers outnumber explorers 50 to 1.
+ */
+@Tag("benchmark")
+class ActiveSetBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int EXPLORERS = 2_000;
+    private static final int BARRIERS = 50 * EXPLORERS;
+    private static final int STEPS = 20;
+
+    @Test
+    void compareAllAndActive() {
+        run(false);
+        run(true);
+        Grid allGrid = populate();
+        long allNanos = run(allGrid, false);
+        Grid activeGrid = populate();
+        long activeNanos = run(activeGrid, true);
+        System.out.printf("all simulatables: %.2f ms/step, active simulatables: %.2f ms/step%n", allNanos / 1e6 / STEPS, activeNanos / 1e6 / STEPS);
+        assertEquals(allGrid.getSimulatables().size(), activeGrid.getSimulatables().size());
+    }
+
+    private static void run(boolean activeOnly) {
+        run(populate(), activeOnly);
+    }
+
+    private static long run(Grid grid, boolean activeOnly) {
+        Set<Simulatable> masterSet = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        for (Simulatable simulatable : grid.getSimulatables()) {
+            simulatable.setMasterSet(masterSet);
+            if (!activeOnly || !simulatable.isStatic()) {
+                masterSet.add(simulatable);
+            }
+        }
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        long start = System.nanoTime();
+        for (int i = 0; i < STEPS; i++) {
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            grid.updateMapAndDeduplicate();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Grid populate() {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(SIZE, SIZE);
+        for (int i = 0; i < BARRIERS; i++) {
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        for (int i = 0; i < EXPLORERS; i++) {
+            grid.add(SplitExplorer.factory(directions[random.nextInt(directions.length)]).makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,145 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.*;
+import com.charrey.game.settings.Settings;
+import com.charrey.game.simulator.SerialSemanticSimulationStep;
+import com.charrey.game.simulator.SerialStateSwitchSimulationStep;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures how many bytes the serial steps allocate once the population has settled. On a board of WeakExplorers that
+ * wrap around the edges and RandomExplorers that turn at barriers, nothing splits or breaks, so every allocation would
+ * be overhead of the step itself; the step must allocate nothing there. On a board where SplitExplorers split and
+ * WeakExplorers break, the new explorers themselves are allocated, and the step may only allocate a bounded number of
+ * bytes for each of them.
+ */
+@Tag("benchmark")
+class AllocationBenchmark {
+
+    private static final int SIZE = 512;
+    private static final int EXPLORERS = 20_000;
+    private static final int BARRIERS = 5_000;
+    private static final int WARMUP_STEPS = 200;
+    private static final int STEPS = 100;
+    private static final int SPLITTING_SIZE = 128;
+    private static final int SPLITTING_BARRIERS = 1_500;
+    private static final long MAX_BYTES_PER_CREATED = 256;
+
+    @Test
+    void measureAllocationPerExplorerStep() {
+        Measurement measurement = measure(populate());
+        assertEquals(0, measurement.allocated(), "the steady state of the serial steps allocates");
+    }
+
+    @Test
+    void measureAllocationPerCreatedExplorer() {
+        Measurement measurement = measure(populateSplitting());
+        assertTrue(measurement.created() > 0, "no explorer split in the measured steps");
+        assertTrue(measurement.allocated() <= MAX_BYTES_PER_CREATED * measurement.created(), "the serial steps allocate more than the explorers they create");
+    }
+
+    private static Measurement measure(Grid grid) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int cell = 0; cell < grid.getWidth() * grid.getHeight(); cell++) {
+            //the flyweight locations are created on first use, which would count towards the steady state otherwise
+            grid.item(cell);
+        }
+        SimulatableRegistry masterSet = new SimulatableRegistry();
+        for (Simulatable simulatable : grid.getSimulatables()) {
+            simulatable.setMasterSet(masterSet);
+            if (!simulatable.isStatic()) {
+                masterSet.add(simulatable);
+            }
+        }
+        RandomExplorer.seedStreams(masterSet, 1904735);
+        SerialSemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        SerialStateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        long explorerSteps = 0;
+        long before = 0;
+        long firstId = 0;
+        for (int step = 0; step < WARMUP_STEPS + STEPS; step++) {
+            if (step == WARMUP_STEPS) {
+                firstId = nextId();
+                before = threads.getThreadAllocatedBytes(Thread.currentThread().threadId());
+            }
+            if (step >= WARMUP_STEPS) {
+                explorerSteps += masterSet.size();
+            }
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            masterSet.forEachChangedGrid(Grid::updateMapAndDeduplicate);
+            masterSet.compact();
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().threadId()) - before;
+        long created = nextId() - firstId - 1;
+        System.out.printf("%d explorers: %d bytes in %d explorer-steps, %d simulatables created%n", masterSet.size(), allocated, explorerSteps, created);
+        return new Measurement(allocated, created);
+    }
+
+    /**
+     * Returns the id that the next simulatable will receive, by creating one; ids are allocated densely, so the
+     * difference between two calls counts the simulatables created in between
+     */
+    private static long nextId() {
+        return DefaultBarrier.factory().makeSimulatable(new GridItem(0, 0)).getId();
+    }
+
+    private static Grid populate() {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(SIZE, SIZE);
+        for (int i = 0; i < BARRIERS; i++) {
+            //every eighth column is kept free of barriers, for the weak explorers to travel along forever
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(8 * random.nextInt(SIZE / 8) + 1 + random.nextInt(7), random.nextInt(SIZE))));
+        }
+        for (int i = 0; i < EXPLORERS; i++) {
+            if (i % 2 == 0) {
+                GridItem location = new GridItem(random.nextInt(SIZE), random.nextInt(SIZE));
+                grid.add(RandomExplorer.factory(directions[random.nextInt(directions.length)]).makeSimulatable(location));
+            } else {
+                Settings.newBlockDirection = random.nextBoolean() ? Direction.UP : Direction.DOWN;
+                grid.add(WeakExplorer.factory().makeSimulatable(new GridItem(8 * random.nextInt(SIZE / 8), random.nextInt(SIZE))));
+            }
+        }
+        return grid;
+    }
+
+    private static Grid populateSplitting() {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(SPLITTING_SIZE, SPLITTING_SIZE);
+        for (int i = 0; i < SPLITTING_BARRIERS; i++) {
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(SPLITTING_SIZE), random.nextInt(SPLITTING_SIZE))));
+        }
+        for (int i = 0; i < SPLITTING_BARRIERS; i++) {
+            GridItem location = new GridItem(random.nextInt(SPLITTING_SIZE), random.nextInt(SPLITTING_SIZE));
+            Direction direction = directions[random.nextInt(directions.length)];
+            if (i % 2 == 0) {
+                grid.add(SplitExplorer.factory(direction).makeSimulatable(location));
+            } else {
+                Settings.newBlockDirection = direction;
+                grid.add(WeakExplorer.factory().makeSimulatable(location));
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Result of measuring the steady state of the serial steps
+     *
+     * @param allocated bytes allocated in the measured steps
+     * @param created   number of simulatables created in the measured steps
+     */
+    private record Measurement(long allocated, long created) {
+    }
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.DefaultBarrier;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SplitExplorer;
+import com.charrey.game.model.simulatable.WeakExplorer;
+import com.charrey.game.settings.Settings;
+import com.charrey.game.simulator.*;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+/**
+ * Compares the steps per second of the object model, the ExplorerArrayEngine and the BitboardEngine on a 4096x4096
+ * stress board of barriers, WeakExplorers and SplitExplorers.
+ */
+@Tag("benchmark")
+class BitboardBenchmark {
+
+    private static final int SIZE = 4096;
+    private static final int BARRIERS = 1 << 18;
+    private static final int EXPLORERS = 1 << 18;
+
+    @Test
+    void compareEngines() {
+        Grid grid = populate();
+        Set<Simulatable> masterSet = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        masterSet.addAll(grid.getSimulatables());
+        masterSet.forEach(simulatable -> simulatable.setMasterSet(masterSet));
+        GridEngine arrays = new ExplorerArrayEngine(grid);
+        GridEngine bitboards = new BitboardEngine(grid);
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        report("Objects", 3, () -> {
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            grid.updateMapAndDeduplicate();
+        });
+        report("Explorer arrays", 20, arrays::step);
+        report("Bitboards", 100, bitboards::step);
+        System.out.printf("%d explorers on the bitboards after 101 steps%n", bitboards.size());
+    }
+
+    private static void report(String name, int steps, Runnable step) {
+        step.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            step.run();
+        }
+        System.out.printf("%s: %.1f steps/s%n", name, steps / ((System.nanoTime() - start) / 1e9));
+    }
+
+    private static Grid populate() {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(SIZE, SIZE);
+        for (int i = 0; i < BARRIERS; i++) {
+            grid.spawn(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        for (int i = 0; i < EXPLORERS; i++) {
+            Direction direction = directions[random.nextInt(directions.length)];
+            GridItem location = new GridItem(random.nextInt(SIZE), random.nextInt(SIZE));
+            Settings.newBlockDirection = direction;
+            grid.spawn(i % 2 == 0 ? WeakExplorer.factory().makeSimulatable(location) : SplitExplorer.factory(direction).makeSimulatable(location));
+        }
+        grid.updateMapAndDeduplicate();
+        return grid;
+    }
+}
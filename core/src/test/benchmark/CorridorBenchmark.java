@@ -0,0 +1,96 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.DefaultBarrier;
+import com.charrey.game.model.simulatable.SplitExplorer;
+import com.charrey.game.model.simulatable.WeakExplorer;
+import com.charrey.game.settings.Settings;
+import com.charrey.game.simulator.BitboardEngine;
+import com.charrey.game.simulator.CorridorEngine;
+import com.charrey.game.simulator.GridEngine;
+import com.charrey.game.simulator.Simulator;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * Compares the steps per second of the BitboardEngine and the CorridorEngine on a sparse 4096x4096 board, where few
+ * explorers travel hundreds of cells between the barriers: once by stepping the engines directly, and once through a
+ * running Simulator, which also stores the engine for rendering and looks for cycles after each step.
+ */
+@Tag("benchmark")
+class CorridorBenchmark {
+
+    private static final int SIZE = 4096;
+    private static final int BARRIERS = 1 << 14;
+    private static final int EXPLORERS = 1 << 12;
+    private static final int SIMULATOR_SIZE = 1024;
+    private static final int SIMULATOR_BARRIERS = 1 << 10;
+    private static final long WARMUP_MILLIS = 5_000;
+    private static final long MEASURE_MILLIS = 10_000;
+
+    @Test
+    void compareEngines() {
+        Grid grid = populate(SIZE, BARRIERS);
+        GridEngine bitboards = new BitboardEngine(grid);
+        GridEngine corridors = new CorridorEngine(grid);
+        report("Bitboards", 100, bitboards::step);
+        report("Corridor jumps", 100, corridors::step);
+        System.out.printf("%d explorers on the corridors after 101 steps%n", corridors.size());
+    }
+
+    @Test
+    void compareSimulators() throws InterruptedException {
+        boolean corridorJumps = Settings.corridorJumps;
+        Settings.turboSimulation = true;
+        try {
+            for (boolean jumps : new boolean[]{false, true}) {
+                Settings.corridorJumps = jumps;
+                Simulator simulator = new Simulator(populate(SIMULATOR_SIZE, SIMULATOR_BARRIERS));
+                simulator.start();
+                try {
+                    Thread.sleep(WARMUP_MILLIS);
+                    long firstStep = simulator.getStep();
+                    long start = System.nanoTime();
+                    Thread.sleep(MEASURE_MILLIS);
+                    long steps = simulator.getStep() - firstStep;
+                    System.out.printf("%s through the simulator: %.1f steps/s%n", jumps ? "Corridor jumps" : "Bitboards", steps / ((System.nanoTime() - start) / 1e9));
+                } finally {
+                    simulator.stop();
+                }
+            }
+        } finally {
+            Settings.corridorJumps = corridorJumps;
+            Settings.turboSimulation = false;
+        }
+    }
+
+    private static void report(String name, int steps, Runnable step) {
+        step.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            step.run();
+        }
+        System.out.printf("%s: %.1f steps/s%n", name, steps / ((System.nanoTime() - start) / 1e9));
+    }
+
+    private static Grid populate(int size, int barriers) {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(size, size);
+        for (int i = 0; i < barriers; i++) {
+            grid.spawn(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(size), random.nextInt(size))));
+        }
+        for (int i = 0; i < EXPLORERS; i++) {
+            Direction direction = directions[random.nextInt(directions.length)];
+            GridItem location = new GridItem(random.nextInt(size), random.nextInt(size));
+            Settings.newBlockDirection = direction;
+            grid.spawn(i % 2 == 0 ? WeakExplorer.factory().makeSimulatable(location) : SplitExplorer.factory(direction).makeSimulatable(location));
+        }
+        grid.updateMapAndDeduplicate();
+        return grid;
+    }
+}
@@ -0,0 +1,98 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.*;
+import com.charrey.game.settings.Settings;
+import com.charrey.game.simulator.ExplorerArrayEngine;
+import com.charrey.game.simulator.SerialSemanticSimulationStep;
+import com.charrey.game.simulator.SerialStateSwitchSimulationStep;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares stepping explorers as objects against stepping them with the ExplorerArrayEngine, and verifies that the
+ * engine allocates nothing per step once its arrays have grown to the size of the population.
+ */
+@Tag("benchmark")
+class ExplorerArrayBenchmark {
+
+    private static final int SIZE = 512;
+    private static final int EXPLORERS = 16384;
+    private static final int BARRIERS = 4096;
+    private static final int STEPS = 50;
+
+    @Test
+    void compareObjectsAndArrays() {
+        Grid objectGrid = populate(true);
+        Set<Simulatable> masterSet = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        masterSet.addAll(objectGrid.getSimulatables());
+        masterSet.forEach(simulatable -> simulatable.setMasterSet(masterSet));
+        SerialSemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        SerialStateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        long start = System.nanoTime();
+        for (int step = 0; step < STEPS; step++) {
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            objectGrid.updateMapAndDeduplicate();
+        }
+        long objectNanos = System.nanoTime() - start;
+        ExplorerArrayEngine engine = new ExplorerArrayEngine(populate(true));
+        start = System.nanoTime();
+        for (int step = 0; step < STEPS; step++) {
+            engine.step();
+        }
+        long arrayNanos = System.nanoTime() - start;
+        System.out.printf("Objects: %.2f ms/step, arrays: %.2f ms/step (%d explorers after %d steps)%n",
+                objectNanos / 1e6 / STEPS, arrayNanos / 1e6 / STEPS, engine.size(), STEPS);
+    }
+
+    @Test
+    void allocateNothingPerStep() {
+        ExplorerArrayEngine engine = new ExplorerArrayEngine(populate(false));
+        for (int step = 0; step < STEPS; step++) {
+            engine.step();
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int step = 0; step < STEPS; step++) {
+            engine.step();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        System.out.printf("Allocated %d bytes in %d steps%n", allocated, STEPS);
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Creates a grid with randomly placed barriers and explorers. Since SplitExplorers multiply, a population that
+     * should stay the same size is made of WeakExplorers and RandomExplorers only.
+     *
+     * @param splitExplorers whether a third of the explorers are SplitExplorers
+     * @return the grid
+     */
+    private static Grid populate(boolean splitExplorers) {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(SIZE, SIZE);
+        for (int i = 0; i < BARRIERS; i++) {
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        for (int i = 0; i < EXPLORERS; i++) {
+            Direction direction = directions[random.nextInt(directions.length)];
+            GridItem location = new GridItem(random.nextInt(SIZE), random.nextInt(SIZE));
+            Settings.newBlockDirection = direction;
+            grid.add(switch (i % 3) {
+                case 0 -> WeakExplorer.factory().makeSimulatable(location);
+                case 1 -> RandomExplorer.factory(direction).makeSimulatable(location);
+                default -> splitExplorers ? SplitExplorer.factory(direction).makeSimulatable(location) : RandomExplorer.factory(direction).makeSimulatable(location);
+            });
+        }
+        return grid;
+    }
+}
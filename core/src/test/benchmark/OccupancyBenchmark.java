@@ -0,0 +1,69 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.Barrier;
+import com.charrey.game.model.simulatable.DefaultBarrier;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the dense occupancy index of Grid against the map-based layout it replaced
+ * (a ConcurrentHashMap from every GridItem to a set of simulatables).
+ */
+@Tag("benchmark")
+class OccupancyBenchmark {
+
+    private static final int SIZE = 512;
+    private static final int BARRIERS = 2048;
+    private static final int QUERIES = 5_000_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void compareLookups() {
+        Random random = new Random(1904735);
+        Grid grid = new Grid(SIZE, SIZE);
+        Map<GridItem, Set<Simulatable>> map = new ConcurrentHashMap<>();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                map.put(new GridItem(x, y), new CopyOnWriteArraySet<>());
+            }
+        }
+        for (int i = 0; i < BARRIERS; i++) {
+            Simulatable barrier = DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE)));
+            grid.add(barrier);
+            map.get(barrier.getLocation()).add(barrier);
+        }
+        int[] xs = random.ints(QUERIES, -1, SIZE + 1).toArray();
+        int[] ys = random.ints(QUERIES, -1, SIZE + 1).toArray();
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int mapHits = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                GridItem above = new GridItem(Math.floorMod(xs[i], SIZE), Math.floorMod(ys[i], SIZE)).copyInDirection(Direction.UP);
+                if (map.get(new GridItem(Math.floorMod(above.x(), SIZE), Math.floorMod(above.y(), SIZE))).stream().anyMatch(obj -> obj instanceof Barrier barrier && barrier.isBlocking())) {
+                    mapHits++;
+                }
+            }
+            long mapNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            int indexHits = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                if (grid.blockedInDirection(new GridItem(Math.floorMod(xs[i], SIZE), Math.floorMod(ys[i], SIZE)), Direction.UP, 1, 1)) {
+                    indexHits++;
+                }
+            }
+            long indexNanos = System.nanoTime() - start;
+            System.out.printf("Round %d: map %.1f ns/query, dense index %.1f ns/query%n", round, mapNanos / (double) QUERIES, indexNanos / (double) QUERIES);
+            assertEquals(mapHits, indexHits);
+        }
+    }
+}
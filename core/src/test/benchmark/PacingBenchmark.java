@@ -0,0 +1,36 @@
+package benchmark;
+
+import com.charrey.game.simulator.StepPacer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures how closely StepPacer holds high requested step rates over a longer run. Since steps are scheduled against
+ * absolute deadlines, the pacer can never run ahead of the requested rate, no matter how loaded the machine is; how far
+ * it falls behind does depend on the load, so only a large shortfall fails.
+ */
+@Tag("benchmark")
+class PacingBenchmark {
+
+    private static final double[] RATES = {1_000, 10_000, 50_000};
+    private static final double SECONDS = 2;
+    private static final double MAX_SHORTFALL = 0.1;
+
+    @Test
+    void holdRequestedRates() throws InterruptedException {
+        for (double rate : RATES) {
+            StepPacer pacer = new StepPacer();
+            long steps = (long) (rate * SECONDS);
+            long start = System.nanoTime();
+            for (long i = 0; i < steps; i++) {
+                pacer.awaitNextStep(rate);
+            }
+            double achieved = steps / ((System.nanoTime() - start) / 1e9);
+            System.out.printf("Requested %.0f steps/s, achieved %.1f steps/s%n", rate, achieved);
+            assertTrue(achieved <= rate * 1.001, "ran ahead of the requested rate");
+            assertTrue(achieved >= rate * (1 - MAX_SHORTFALL), "fell far behind the requested rate");
+        }
+    }
+}
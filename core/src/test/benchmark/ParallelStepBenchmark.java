@@ -0,0 +1,89 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SplitExplorer;
+import com.charrey.game.simulator.*;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the serial simulation steps against the parallel ones backed by the shared WorkerPool and the tiled ones for
+ * increasing numbers of explorers, and prints the entity count from which the multithreaded steps pay off on this
+ * machine. Below {@link WorkerPool#getMinChunkSize()} explorers per thread, which the pool measures when it starts, the
+ * parallel steps run serially, so both columns should match there.
+ */
+@Tag("benchmark")
+class ParallelStepBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int[] COUNTS = {256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536};
+    private static final int STEPS = 100;
+    private static final double MARGIN = 0.05; //fraction by which a step must be faster to count as beating serial steps
+
+    @Test
+    void compareSerialAndParallel() {
+        System.out.printf("Worker pool parallelism: %d, at least %d explorers per thread%n", WorkerPool.get().getParallelism(), WorkerPool.get().getMinChunkSize());
+        for (int count : COUNTS) {
+            run(populate(count), new SerialSemanticSimulationStep(), new SerialStateSwitchSimulationStep());
+            run(populate(count), new ParallelSemanticSimulationStep(), new ParallelStateSwitchSimulationStep());
+            run(populate(count), new TiledSemanticSimulationStep(), new TiledStateSwitchSimulationStep());
+        }
+        int parallelCrossover = -1;
+        int tiledCrossover = -1;
+        for (int count : COUNTS) {
+            Grid serialGrid = populate(count);
+            long serialNanos = run(serialGrid, new SerialSemanticSimulationStep(), new SerialStateSwitchSimulationStep());
+            Grid parallelGrid = populate(count);
+            long parallelNanos = run(parallelGrid, new ParallelSemanticSimulationStep(), new ParallelStateSwitchSimulationStep());
+            Grid tiledGrid = populate(count);
+            long tiledNanos = run(tiledGrid, new TiledSemanticSimulationStep(), new TiledStateSwitchSimulationStep());
+            System.out.printf("%6d explorers: serial %7.1f, parallel %7.1f, tiled %7.1f ns/explorer-step%n",
+                    count, serialNanos / (double) count / STEPS, parallelNanos / (double) count / STEPS, tiledNanos / (double) count / STEPS);
+            assertEquals(serialGrid.getSimulatables().size(), parallelGrid.getSimulatables().size());
+            assertEquals(serialGrid.getSimulatables().size(), tiledGrid.getSimulatables().size());
+            parallelCrossover = parallelNanos < (1 - MARGIN) * serialNanos ? (parallelCrossover == -1 ? count : parallelCrossover) : -1;
+            tiledCrossover = tiledNanos < (1 - MARGIN) * serialNanos ? (tiledCrossover == -1 ? count : tiledCrossover) : -1;
+        }
+        reportCrossover("Parallel", parallelCrossover);
+        reportCrossover("Tiled", tiledCrossover);
+    }
+
+    private static void reportCrossover(String name, int crossover) {
+        if (crossover == -1) {
+            System.out.printf("%s steps do not beat serial steps up to %d explorers%n", name, COUNTS[COUNTS.length - 1]);
+        } else {
+            System.out.printf("%s steps beat serial steps from %d explorers%n", name, crossover);
+        }
+    }
+
+    private static Grid populate(int count) {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(SIZE, SIZE);
+        for (int i = 0; i < count; i++) {
+            Direction direction = directions[random.nextInt(directions.length)];
+            grid.add(SplitExplorer.factory(direction).makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        return grid;
+    }
+
+    private static long run(Grid grid, SemanticSimulationStep semanticStep, StateSwitchSimulationStep stateSwitchStep) {
+        Set<Simulatable> masterSet = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        masterSet.addAll(grid.getSimulatables());
+        masterSet.forEach(simulatable -> simulatable.setMasterSet(masterSet));
+        long start = System.nanoTime();
+        for (int step = 0; step < STEPS; step++) {
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            grid.updateMapAndDeduplicate();
+        }
+        return System.nanoTime() - start;
+    }
+}
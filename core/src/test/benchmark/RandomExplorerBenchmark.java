@@ -0,0 +1,126 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.DefaultBarrier;
+import com.charrey.game.model.simulatable.RandomExplorer;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.simulator.SerialStateSwitchSimulationStep;
+import com.charrey.game.simulator.StateSwitchSimulationStep;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures the throughput of the semantic step of 100k RandomExplorers on 1, 4 and 16 threads, where each explorer
+ * draws from its own random stream. For reference, the same number of threads draws the same number of choices from a
+ * single shared Random, as the explorers used to through Collections.shuffle.
+ */
+@Tag("benchmark")
+class RandomExplorerBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int EXPLORERS = 100_000;
+    private static final int BARRIERS = 200_000;
+    private static final int[] THREADS = {1, 4, 16};
+    private static final int STEPS = 20;
+
+    @Test
+    void compareThreadCounts() throws InterruptedException, ExecutionException {
+        for (int threads : THREADS) {
+            run(populate(), threads);
+        }
+        int expectedSize = -1;
+        for (int threads : THREADS) {
+            Grid grid = populate();
+            long streamNanos = run(grid, threads);
+            long sharedNanos = drawShared(threads);
+            System.out.printf("%2d threads: own streams %6.1f, shared Random %6.1f ns/explorer-step%n",
+                    threads, streamNanos / (double) EXPLORERS / STEPS, sharedNanos / (double) EXPLORERS / STEPS);
+            if (expectedSize == -1) {
+                expectedSize = grid.getSimulatables().size();
+            }
+            assertEquals(expectedSize, grid.getSimulatables().size());
+        }
+    }
+
+    private static Grid populate() {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(SIZE, SIZE);
+        grid.setRandomSeed(1904735);
+        for (int i = 0; i < BARRIERS; i++) {
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        for (int i = 0; i < EXPLORERS; i++) {
+            grid.add(RandomExplorer.factory(directions[random.nextInt(directions.length)]).makeSimulatable(new GridItem(random.nextInt(SIZE), random.nextInt(SIZE))));
+        }
+        return grid;
+    }
+
+    private static long run(Grid grid, int threads) throws InterruptedException, ExecutionException {
+        Set<Simulatable> masterSet = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        for (Simulatable simulatable : grid.getSimulatables()) {
+            simulatable.setMasterSet(masterSet);
+            if (!simulatable.isStatic()) {
+                masterSet.add(simulatable);
+            }
+        }
+        RandomExplorer.seedStreams(masterSet, grid.getRandomSeed());
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long total = 0;
+        try {
+            for (int i = 0; i < STEPS; i++) {
+                List<Simulatable> snapshot = new ArrayList<>(masterSet);
+                List<Callable<Void>> chunks = new ArrayList<>();
+                for (int thread = 0; thread < threads; thread++) {
+                    List<Simulatable> chunk = snapshot.subList(snapshot.size() * thread / threads, snapshot.size() * (thread + 1) / threads);
+                    chunks.add(() -> {
+                        chunk.forEach(Simulatable::simulateStep);
+                        return null;
+                    });
+                }
+                long start = System.nanoTime();
+                for (Future<Void> future : executor.invokeAll(chunks)) {
+                    future.get();
+                }
+                total += System.nanoTime() - start;
+                stateSwitchStep.nextStep(masterSet);
+                grid.updateMapAndDeduplicate();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return total;
+    }
+
+    private static long drawShared(int threads) throws InterruptedException, ExecutionException {
+        Random shared = new Random(1904735);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> chunks = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int draws = EXPLORERS * STEPS / threads;
+                chunks.add(() -> {
+                    for (int i = 0; i < draws; i++) {
+                        shared.nextBoolean();
+                    }
+                    return null;
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Void> future : executor.invokeAll(chunks)) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
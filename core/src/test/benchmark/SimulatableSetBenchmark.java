@@ -0,0 +1,117 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableSet;
+import com.charrey.game.model.simulatable.SplitExplorer;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the set that holds the simulatables of a model in the way a simulation uses it (every step, some explorers
+ * die, others are spawned and some are looked up; all are copied), with 100,000 explorers. The baseline is a HashSet in
+ * which all explorers share a hash code, as they did when their hash code was that of their class.
+ */
+@Tag("benchmark")
+class SimulatableSetBenchmark {
+
+    private static final int EXPLORERS = 100_000;
+    private static final int ROUNDS = 5;
+    private static final int CHURN = EXPLORERS / 100;
+
+    @Test
+    void compareSets() {
+        Supplier<Set<Simulatable>> classHashed = () -> new AbstractSet<>() {
+            private final Set<ClassHashed> set = new HashSet<>();
+
+            @Override
+            public boolean add(Simulatable simulatable) {
+                return set.add(new ClassHashed(simulatable));
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return o instanceof Simulatable simulatable && set.remove(new ClassHashed(simulatable));
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Simulatable simulatable && set.contains(new ClassHashed(simulatable));
+            }
+
+            @Override
+            public Iterator<Simulatable> iterator() {
+                return set.stream().map(ClassHashed::simulatable).iterator();
+            }
+
+            @Override
+            public int size() {
+                return set.size();
+            }
+        };
+        Supplier<Set<Simulatable>> identity = () -> Collections.newSetFromMap(new IdentityHashMap<>());
+        Supplier<Set<Simulatable>> indexed = SimulatableSet::new;
+        run(identity);
+        run(indexed);
+        long classHashedNanos = run(classHashed);
+        long identityNanos = run(identity);
+        long indexedNanos = run(indexed);
+        System.out.printf("class-hashed HashSet: %.2f ms/round, identity set: %.2f ms/round, SimulatableSet: %.2f ms/round%n",
+                classHashedNanos / 1e6 / ROUNDS, identityNanos / 1e6 / ROUNDS, indexedNanos / 1e6 / ROUNDS);
+    }
+
+    private static long run(Supplier<Set<Simulatable>> setFactory) {
+        Random random = new Random(29_873);
+        Set<Simulatable> set = setFactory.get();
+        List<Simulatable> alive = new ArrayList<>(EXPLORERS);
+        for (int i = 0; i < EXPLORERS; i++) {
+            Simulatable explorer = explorer(random);
+            alive.add(explorer);
+            set.add(explorer);
+        }
+        Simulatable[] snapshot = new Simulatable[0];
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < CHURN; i++) {
+                int index = random.nextInt(alive.size());
+                set.remove(alive.get(index));
+                Simulatable spawned = explorer(random);
+                alive.set(index, spawned);
+                set.add(spawned);
+            }
+            for (int i = 0; i < CHURN; i++) {
+                if (!set.contains(alive.get(random.nextInt(alive.size())))) {
+                    throw new IllegalStateException();
+                }
+            }
+            snapshot = set.toArray(snapshot);
+        }
+        long res = System.nanoTime() - start;
+        assertEquals(EXPLORERS, set.size());
+        assertEquals(EXPLORERS, (int) Arrays.stream(snapshot).filter(Objects::nonNull).count());
+        return res;
+    }
+
+    private static Simulatable explorer(Random random) {
+        return SplitExplorer.factory(Direction.values()[random.nextInt(4)]).makeSimulatable(new GridItem(random.nextInt(1024), random.nextInt(1024)));
+    }
+
+    private record ClassHashed(Simulatable simulatable) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ClassHashed other && other.simulatable == simulatable;
+        }
+
+        @Override
+        public int hashCode() {
+            return simulatable.getClass().hashCode();
+        }
+    }
+}
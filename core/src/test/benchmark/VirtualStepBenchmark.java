@@ -0,0 +1,130 @@
+package benchmark;
+
+import com.charrey.game.model.Direction;
+import com.charrey.game.model.Grid;
+import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableRegistry;
+import com.charrey.game.model.simulatable.SplitExplorer;
+import com.charrey.game.model.simulatable.subgrid.SubGrid;
+import com.charrey.game.simulator.*;
+import com.charrey.game.util.GridItem;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the serial, parallel and virtual-thread simulation steps on designs of thousands of small SubGrids nested
+ * a few levels deep. Every grid is padded all around, so explorers keep circling inside the grid they start in and each
+ * step consists of many small grid interiors with a handful of explorers each.
+ */
+@Tag("benchmark")
+class VirtualStepBenchmark {
+
+    private static final int LEAF_SIZE = 4;
+    private static final int FAN_OUT = 3;
+    private static final int[] DEPTHS = {1, 2, 3};
+    private static final int ROOT_SUBGRIDS = 400;
+    private static final int STEPS = 50;
+
+    @Test
+    void compareSerialParallelAndVirtual() {
+        for (int depth : DEPTHS) {
+            run(populate(depth), new SerialSemanticSimulationStep(), new SerialStateSwitchSimulationStep());
+            run(populate(depth), new ParallelSemanticSimulationStep(), new ParallelStateSwitchSimulationStep());
+            run(populate(depth), new VirtualSemanticSimulationStep(), new VirtualStateSwitchSimulationStep());
+        }
+        for (int depth : DEPTHS) {
+            Grid serialGrid = populate(depth);
+            long serialNanos = run(serialGrid, new SerialSemanticSimulationStep(), new SerialStateSwitchSimulationStep());
+            Grid parallelGrid = populate(depth);
+            long parallelNanos = run(parallelGrid, new ParallelSemanticSimulationStep(), new ParallelStateSwitchSimulationStep());
+            Grid virtualGrid = populate(depth);
+            long virtualNanos = run(virtualGrid, new VirtualSemanticSimulationStep(), new VirtualStateSwitchSimulationStep());
+            System.out.printf("depth %d, %6d grids: serial %7.2f, parallel %7.2f, virtual %7.2f ms/step%n",
+                    depth, grids(serialGrid).size(), serialNanos / 1e6 / STEPS, parallelNanos / 1e6 / STEPS, virtualNanos / 1e6 / STEPS);
+            assertEquals(count(serialGrid), count(parallelGrid));
+            assertEquals(count(serialGrid), count(virtualGrid));
+        }
+    }
+
+    private static long run(Grid grid, SemanticSimulationStep semanticStep, StateSwitchSimulationStep stateSwitchStep) {
+        SimulatableRegistry masterSet = new SimulatableRegistry();
+        for (Grid nested : grids(grid)) {
+            for (Simulatable simulatable : nested.getSimulatables()) {
+                simulatable.setMasterSet(masterSet);
+                if (!simulatable.isStatic()) {
+                    masterSet.add(simulatable);
+                }
+            }
+        }
+        long start = System.nanoTime();
+        for (int step = 0; step < STEPS; step++) {
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            masterSet.forEachChangedGrid(Grid::updateMapAndDeduplicate);
+            masterSet.compact();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Grid populate(int depth) {
+        Random random = new Random(1904735);
+        int childSize = nestedSize(depth - 1);
+        int rootSize = (int) Math.ceil(Math.sqrt(ROOT_SUBGRIDS)) * (childSize + 1);
+        Grid root = new Grid(rootSize, rootSize);
+        for (int x = 0; x + childSize <= rootSize; x += childSize + 1) {
+            for (int y = 0; y + childSize <= rootSize; y += childSize + 1) {
+                root.add(new SubGrid(new GridItem(x, y), nested(depth - 1, random), null));
+            }
+        }
+        return root;
+    }
+
+    private static int nestedSize(int depth) {
+        return depth == 0 ? LEAF_SIZE : FAN_OUT * (nestedSize(depth - 1) + 1);
+    }
+
+    private static Grid nested(int depth, Random random) {
+        int size = nestedSize(depth);
+        Grid grid = new Grid(size, size);
+        for (Direction direction : Direction.values()) {
+            for (int i = 0; i < size; i++) {
+                grid.setPad(i, direction, true);
+            }
+        }
+        if (depth > 0) {
+            int childSize = nestedSize(depth - 1);
+            for (int x = 0; x < FAN_OUT; x++) {
+                for (int y = 0; y < FAN_OUT; y++) {
+                    grid.add(new SubGrid(new GridItem(x * (childSize + 1), y * (childSize + 1)), nested(depth - 1, random), null));
+                }
+            }
+        }
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < LEAF_SIZE; i++) {
+            GridItem location = new GridItem(random.nextInt(size), random.nextInt(size));
+            if (grid.getAtStrictGridLocation(location).isEmpty()) {
+                grid.add(SplitExplorer.factory(directions[random.nextInt(directions.length)]).makeSimulatable(location));
+            }
+        }
+        return grid;
+    }
+
+    private static List<Grid> grids(Grid grid) {
+        List<Grid> res = new ArrayList<>();
+        res.add(grid);
+        for (Simulatable simulatable : grid.getSimulatables()) {
+            if (simulatable instanceof SubGrid subGrid) {
+                res.addAll(grids(subGrid.getSubgrid()));
+            }
+        }
+        return res;
+    }
+
+    private static long count(Grid grid) {
+        return grids(grid).stream().mapToLong(nested -> nested.getSimulatables().size()).sum();
+    }
+}
@@ -79,6 +79,20 @@ class SaveFileTest {
         }
     }
 
+    @Test
+    void testRandomSeedStoredInGrid() {
+        Grid grid = new Grid(1, 1);
+        grid.setRandomSeed(-1904735L);
+        new SaveCallback(grid).onFileChosen(SAVE_DIRECTORY.child("test.explore"));
+        try {
+            Grid gotten = GridLoader.get().load(SAVE_DIRECTORY.child("test.explore"));
+            assertEquals(-1904735L, gotten.getRandomSeed());
+        } catch (SaveFormatException e) {
+            e.printStackTrace();
+            fail();
+        }
+    }
+
     @Test
     void testBarrierStoredInGrid() {
         Grid grid = new Grid(1, 1);
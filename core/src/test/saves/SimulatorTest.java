@@ -2,19 +2,39 @@ package saves;
 
 import com.charrey.game.model.Direction;
 import com.charrey.game.model.Grid;
+import com.charrey.game.model.condition.BlockExists;
+import com.charrey.game.model.condition.False;
+import com.charrey.game.model.condition.NotBlockExists;
+import com.charrey.game.model.condition.RegionCondition;
+import com.charrey.game.model.condition.RegionCountAtLeast;
+import com.charrey.game.model.condition.RegionEmpty;
+import com.charrey.game.model.condition.True;
+import com.charrey.game.model.simulatable.ConditionalBarrier;
 import com.charrey.game.model.simulatable.DefaultBarrier;
+import com.charrey.game.model.simulatable.RandomExplorer;
 import com.charrey.game.model.simulatable.Simulatable;
+import com.charrey.game.model.simulatable.SimulatableRegistry;
 import com.charrey.game.model.simulatable.SplitExplorer;
-import com.charrey.game.simulator.ParallelSemanticSimulationStep;
-import com.charrey.game.simulator.ParallelStateSwitchSimulationStep;
-import com.charrey.game.simulator.SerialSemanticSimulationStep;
-import com.charrey.game.simulator.SerialStateSwitchSimulationStep;
+import com.charrey.game.model.simulatable.WeakExplorer;
+import com.charrey.game.model.simulatable.DirectionalSimulatable;
+import com.charrey.game.model.simulatable.EdgeType;
+import com.charrey.game.model.simulatable.subgrid.SubGrid;
+import com.charrey.game.model.simulatable.subgrid.TransitCache;
+import com.charrey.game.settings.Settings;
+import com.charrey.game.simulator.*;
 import com.charrey.game.util.GridItem;
 import org.junit.jupiter.api.Test;
 
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 class SimulatorTest {
 
@@ -54,6 +74,38 @@ class SimulatorTest {
         grid.updateMapAndDeduplicate();
     }
 
+    @Test
+    void testExplorersOnlyLeaveThroughExportedEdges() {
+        Settings.newBlockDirection = Direction.RIGHT;
+        Grid grid = new Grid(3, 3);
+        grid.setExport(0, Direction.RIGHT, true);
+        grid.add(WeakExplorer.factory().makeSimulatable(new GridItem(0, 1)));
+        grid.add(WeakExplorer.factory().makeSimulatable(new GridItem(2, 0)));
+        Set<Simulatable> masterSet = new HashSet<>(grid.getSimulatables());
+        masterSet.forEach(simulatable -> simulatable.setMasterSet(masterSet));
+        List<Simulatable> simulatables = new ArrayList<>(masterSet);
+        simulatables.forEach(Simulatable::simulateStep);
+        simulatables.forEach(Simulatable::stateSwitchStep);
+        grid.updateMapAndDeduplicate();
+        assertEquals(1, grid.getSimulatables().size());
+        assertEquals(new GridItem(1, 1), grid.getSimulatables().iterator().next().getLocation());
+    }
+
+    @Test
+    void testSplitOutsideOfASimulator() {
+        //no Simulator has given these simulatables a masterset
+        Grid grid = new Grid(3, 3);
+        grid.add(SplitExplorer.factory(Direction.UP).makeSimulatable(new GridItem(1, 1)));
+        grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(1, 2)));
+        List<Simulatable> simulatables = new ArrayList<>(grid.getSimulatables());
+        simulatables.forEach(Simulatable::simulateStep);
+        simulatables.forEach(Simulatable::stateSwitchStep);
+        grid.updateMapAndDeduplicate();
+        assertEquals(3, grid.getSimulatables().size());
+        assertEquals(1, grid.getAtStrictGridLocation(new GridItem(0, 1)).size());
+        assertEquals(1, grid.getAtStrictGridLocation(new GridItem(2, 1)).size());
+    }
+
     @Test
     void testParallelStateSwitch() {
         for (int j = 0; j < 50; j++) {
@@ -71,4 +123,745 @@ class SimulatorTest {
             }
         }
     }
+
+    @Test
+    void testFollowingExplorersDoNotCollapse() {
+        Grid grid = new Grid(5, 1);
+        List<Simulatable> simulatables = new ArrayList<>();
+        simulatables.add(SplitExplorer.factory(Direction.RIGHT).makeSimulatable(new GridItem(0, 0)));
+        simulatables.add(SplitExplorer.factory(Direction.RIGHT).makeSimulatable(new GridItem(1, 0)));
+        simulatables.forEach(grid::add);
+        for (int i = 0; i < 10; i++) {
+            simulatables.forEach(Simulatable::simulateStep);
+            simulatables.forEach(Simulatable::stateSwitchStep);
+            grid.updateMapAndDeduplicate();
+            assertEquals(2, grid.getSimulatables().size());
+            assertEquals(2, grid.getSimulatables().stream().mapToInt(simulatable -> grid.getAtStrictGridLocation(simulatable.getLocation()).size()).sum());
+        }
+    }
+
+    @Test
+    void testCellKeysWrapLikeCoordinates() {
+        Grid grid = new Grid(5, 3);
+        for (int x = 0; x < grid.getWidth(); x++) {
+            for (int y = 0; y < grid.getHeight(); y++) {
+                int cell = grid.cell(x, y);
+                assertEquals(new GridItem(x, y), grid.item(cell));
+                assertSame(grid.item(cell), grid.item(cell));
+                assertEquals(grid.cell(x, y + 1), grid.neighbour(cell, Direction.UP));
+                assertEquals(grid.cell(x, y - 1), grid.neighbour(cell, Direction.DOWN));
+                assertEquals(grid.cell(x - 1, y), grid.neighbour(cell, Direction.LEFT));
+                assertEquals(grid.cell(x + 1, y), grid.neighbour(cell, Direction.RIGHT));
+            }
+        }
+        grid.clear(3, 5);
+        assertEquals(new GridItem(2, 1), grid.item(grid.cell(-1, 6)));
+    }
+
+    @Test
+    void testLookupTablesFollowChanges() {
+        Grid inner = new Grid(2, 2);
+        for (Direction direction : Direction.values()) {
+            inner.setPad(0, direction, true);
+            inner.setPad(1, direction, true);
+        }
+        inner.setPad(0, Direction.LEFT, false);
+        inner.setExport(0, Direction.LEFT, true);
+        inner.setPad(1, Direction.UP, false);
+        assertEquals(EdgeType.EXPORT, inner.gridEdgeInDirection(inner.cell(0, 0), Direction.LEFT));
+        assertEquals(EdgeType.PAD, inner.gridEdgeInDirection(inner.cell(0, 1), Direction.LEFT));
+        assertEquals(EdgeType.UNMARKED, inner.gridEdgeInDirection(inner.cell(1, 1), Direction.UP));
+        inner.setPad(1, Direction.UP, true);
+        assertEquals(EdgeType.PAD, inner.gridEdgeInDirection(inner.cell(1, 1), Direction.UP));
+
+        Grid grid = new Grid(6, 6);
+        int facing = grid.cell(1, 2);
+        assertEquals(null, grid.portal(facing, Direction.RIGHT));
+        SubGrid subGrid = new SubGrid(new GridItem(2, 2), inner, null);
+        grid.add(subGrid);
+        assertEquals(inner.cell(0, 0), grid.portal(facing, Direction.RIGHT).cell());
+        assertTrue(!grid.portal(grid.cell(1, 3), Direction.RIGHT).isLinked());
+        assertTrue(grid.blockedInDirection(grid.cell(1, 3), Direction.RIGHT, 1, 1));
+        assertEquals(facing, inner.exitCell(inner.cell(0, 0), Direction.LEFT));
+        grid.remove(subGrid);
+        assertEquals(null, grid.portal(facing, Direction.RIGHT));
+    }
+
+    @Test
+    void testConditionalBarriersFollowWatchedCells() {
+        Grid grid = new Grid(8, 8);
+        ConditionalBarrier opensOnExplorer = ConditionalBarrier.factory().makeSimulatable(new GridItem(4, 2));
+        opensOnExplorer.setCondition(new BlockExists(grid, new GridItem(1, 5)));
+        ConditionalBarrier closesOnExplorer = ConditionalBarrier.factory().makeSimulatable(new GridItem(6, 6));
+        closesOnExplorer.setCondition(new NotBlockExists(grid, new GridItem(3, 5)));
+        grid.add(opensOnExplorer);
+        grid.add(closesOnExplorer);
+        Settings.newBlockDirection = Direction.RIGHT;
+        grid.add(WeakExplorer.factory().makeSimulatable(new GridItem(0, 5)));
+        Set<Simulatable> masterSet = masterSet(grid);
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        int opened = 0;
+        for (int i = 0; i < 24; i++) {
+            for (ConditionalBarrier barrier : List.of(opensOnExplorer, closesOnExplorer)) {
+                assertEquals(!barrier.getCondition().test(), barrier.isBlocking());
+                int left = grid.cell(barrier.getLocation().x() - 1, barrier.getLocation().y());
+                assertEquals(barrier.isBlocking(), grid.blockingBarrierInDirection(left, Direction.RIGHT, 1, 1));
+            }
+            opened += opensOnExplorer.isBlocking() ? 0 : 1;
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            grid.updateMapAndDeduplicate();
+        }
+        assertEquals(3, opened);
+        closesOnExplorer.setCondition(new BlockExists(grid, new GridItem(7, 7)));
+        assertTrue(grid.blockingBarrierInDirection(grid.cell(5, 6), Direction.RIGHT, 1, 1));
+        grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(7, 7)));
+        assertFalse(grid.blockingBarrierInDirection(grid.cell(5, 6), Direction.RIGHT, 1, 1));
+        grid.remove(grid.getAtStrictGridLocation(new GridItem(7, 7)).iterator().next());
+        assertTrue(grid.blockingBarrierInDirection(grid.cell(5, 6), Direction.RIGHT, 1, 1));
+        grid.remove(closesOnExplorer);
+        assertFalse(grid.blockingBarrierInDirection(grid.cell(5, 6), Direction.RIGHT, 1, 1));
+    }
+
+    @Test
+    void testRegionConditionsCountExplorers() {
+        Grid grid = randomGrid(32, 60);
+        Random random = new Random(1904735);
+        List<ConditionalBarrier> barriers = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            ConditionalBarrier barrier = ConditionalBarrier.factory().makeSimulatable(new GridItem(random.nextInt(32), random.nextInt(32)));
+            GridItem corner = new GridItem(random.nextInt(40) - 4, random.nextInt(40) - 4);
+            int width = 1 + random.nextInt(12);
+            int height = 1 + random.nextInt(12);
+            barrier.setCondition(i % 2 == 0 ? new RegionEmpty(grid, corner, width, height) : new RegionCountAtLeast(grid, corner, width, height, 1 + random.nextInt(4)));
+            grid.remove(barrier.getLocation());
+            grid.add(barrier);
+            barriers.add(barrier);
+        }
+        Set<Simulatable> masterSet = masterSet(grid);
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        for (int i = 0; i < 40; i++) {
+            for (ConditionalBarrier barrier : barriers) {
+                RegionCondition region = (RegionCondition) barrier.getCondition();
+                int count = 0;
+                for (int x = region.getLocation().x(); x < region.getLocation().x() + region.getWidth(); x++) {
+                    for (int y = region.getLocation().y(); y < region.getLocation().y() + region.getHeight(); y++) {
+                        count += (int) grid.getAtStrictGridLocation(new GridItem(x, y)).stream().filter(DirectionalSimulatable.class::isInstance).count();
+                    }
+                }
+                boolean open = region instanceof RegionCountAtLeast atLeast ? count >= atLeast.getThreshold() : count == 0;
+                assertEquals(open, !barrier.isBlocking());
+                assertEquals(open, region.test());
+            }
+            semanticStep.executeOneStep(masterSet);
+            stateSwitchStep.nextStep(masterSet);
+            grid.updateMapAndDeduplicate();
+        }
+    }
+
+    @Test
+    void testTiledMatchesSerial() {
+        Grid serialGrid = randomGrid(200, 3000);
+        Grid tiledGrid = randomGrid(200, 3000);
+        SemanticSimulationStep serialSemantic = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep serialStateSwitch = new SerialStateSwitchSimulationStep();
+        SemanticSimulationStep tiledSemantic = new TiledSemanticSimulationStep();
+        StateSwitchSimulationStep tiledStateSwitch = new TiledStateSwitchSimulationStep();
+        Set<Simulatable> serialSet = masterSet(serialGrid);
+        Set<Simulatable> tiledSet = masterSet(tiledGrid);
+        for (int i = 0; i < 20; i++) {
+            serialSemantic.executeOneStep(serialSet);
+            serialStateSwitch.nextStep(serialSet);
+            serialGrid.updateMapAndDeduplicate();
+            tiledSemantic.executeOneStep(tiledSet);
+            tiledStateSwitch.nextStep(tiledSet);
+            tiledGrid.updateMapAndDeduplicate();
+            assertEquals(describe(serialGrid), describe(tiledGrid));
+        }
+    }
+
+    @Test
+    void testThreadedStateSwitchMatchesSerial() throws InterruptedException {
+        Grid serialGrid = randomGrid(64, 400);
+        Grid threadedGrid = randomGrid(64, 400);
+        Set<Simulatable> serialSet = masterSet(serialGrid);
+        Set<Simulatable> threadedSet = masterSet(threadedGrid);
+        for (int i = 0; i < 30; i++) {
+            new SerialSemanticSimulationStep().executeOneStep(serialSet);
+            new SerialStateSwitchSimulationStep().nextStep(serialSet);
+            serialGrid.updateMapAndDeduplicate();
+            new SerialSemanticSimulationStep().executeOneStep(threadedSet);
+            List<Simulatable> snapshot = new ArrayList<>(threadedSet);
+            List<Thread> threads = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                List<Simulatable> chunk = snapshot.subList(snapshot.size() * thread / 4, snapshot.size() * (thread + 1) / 4);
+                threads.add(new Thread(() -> chunk.forEach(Simulatable::stateSwitchStep)));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            threadedGrid.updateMapAndDeduplicate();
+            assertEquals(describe(serialGrid), describe(threadedGrid));
+            assertEquals(serialSet.size(), threadedSet.size());
+        }
+    }
+
+    @Test
+    void testExplorerArraysMatchObjects() {
+        assertEngineMatchesObjects(ExplorerArrayEngine::new);
+    }
+
+    @Test
+    void testExplorerArraysMatchSeededRandomExplorers() {
+        for (long seed : new long[]{0, 1904735}) {
+            assertEngineMatchesObjects(ExplorerArrayEngine::new, () -> {
+                Grid grid = randomGrid(40, 200);
+                Random random = new Random(seed);
+                for (int i = 0; i < 150; i++) {
+                    grid.add(RandomExplorer.factory(Direction.values()[random.nextInt(4)]).makeSimulatable(new GridItem(random.nextInt(40), random.nextInt(40))));
+                }
+                for (int i = 0; i < 40; i += 7) {
+                    grid.setExport(i, Direction.values()[i % 4], true);
+                }
+                RandomExplorer.seedStreams(grid.getSimulatables(), seed);
+                return grid;
+            }, 60);
+        }
+    }
+
+    @Test
+    void testBitboardsMatchObjects() {
+        assertEngineMatchesObjects(BitboardEngine::new);
+    }
+
+    @Test
+    void testCorridorJumpsMatchObjects() {
+        assertEngineMatchesObjects(CorridorEngine::new);
+        //few explorers on a sparse board, which run long corridors and loop around rows and columns without barriers
+        assertEngineMatchesObjects(CorridorEngine::new, SimulatorTest::corridorGrid, 300);
+    }
+
+    @Test
+    void testCorridorJumpsAdvanceBetweenDecisions() {
+        Grid objectGrid = corridorGrid();
+        Grid engineGrid = corridorGrid();
+        Set<Simulatable> objectSet = masterSet(objectGrid);
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        GridEngine engine = new CorridorEngine(engineGrid);
+        for (int steps : new int[]{1, 7, 0, 50, 3, 120, 1, 1, 200}) {
+            for (int i = 0; i < steps; i++) {
+                semanticStep.executeOneStep(objectSet);
+                stateSwitchStep.nextStep(objectSet);
+                objectGrid.updateMapAndDeduplicate();
+            }
+            engine.advance(steps);
+            engine.store(engineGrid);
+            assertEquals(describe(objectGrid), describe(engineGrid));
+            assertEquals(objectGrid.getStateHash(), engine.stateHash());
+        }
+        //a WeakExplorer in a row without barriers never decides, however far the engine advances
+        Grid loopGrid = new Grid(10, 3);
+        loopGrid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(4, 0)));
+        Settings.newBlockDirection = Direction.RIGHT;
+        loopGrid.add(WeakExplorer.factory().makeSimulatable(new GridItem(2, 1)));
+        GridEngine loopEngine = new CorridorEngine(loopGrid);
+        loopEngine.advance(1_000_000_000_003L);
+        loopEngine.store(loopGrid);
+        assertEquals(1, loopEngine.size());
+        assertEquals(new GridItem(5, 1), loopGrid.getSimulatables().stream().filter(WeakExplorer.class::isInstance).findAny().orElseThrow().getLocation());
+    }
+
+    @Test
+    void testCorridorJumpsScheduleBarriersSubGridsAndRandomExplorers() {
+        for (long seed : new long[]{0, 1904735}) {
+            assertEngineMatchesObjects(CorridorEngine::new, () -> conditionalCorridorGrid(seed), 120);
+            assertAdvanceMatchesObjects(() -> conditionalCorridorGrid(seed), new int[]{1, 7, 0, 50, 3, 40, 1, 1, 90});
+            //a crowded board on which RandomExplorers with different streams merge, so that the lowest id must survive
+            assertEngineMatchesObjects(CorridorEngine::new, () -> {
+                Grid grid = new Grid(9, 9);
+                Random random = new Random(seed);
+                for (int i = 0; i < 60; i++) {
+                    GridItem location = new GridItem(random.nextInt(9), random.nextInt(9));
+                    if (i % 5 == 0) {
+                        grid.remove(location);
+                        grid.add(DefaultBarrier.factory().makeSimulatable(location));
+                    } else if (grid.getAtStrictGridLocation(location).stream().noneMatch(DefaultBarrier.class::isInstance)) {
+                        grid.add(RandomExplorer.factory(Direction.values()[random.nextInt(4)]).makeSimulatable(location));
+                    }
+                }
+                RandomExplorer.seedStreams(grid.getSimulatables(), seed);
+                return grid;
+            }, 80);
+        }
+        assertEngineMatchesObjects(CorridorEngine::new, SimulatorTest::nestedGrid, 120);
+        assertAdvanceMatchesObjects(SimulatorTest::nestedGrid, new int[]{2, 0, 13, 1, 60, 5, 100});
+        Supplier<Grid> watchedNestedGrid = () -> {
+            Grid grid = nestedGrid();
+            Grid inner = grids(grid).get(1);
+            ConditionalBarrier barrier = ConditionalBarrier.factory().makeSimulatable(new GridItem(14, 3));
+            barrier.setCondition(new RegionEmpty(inner, new GridItem(1, 1), 4, 3));
+            grid.add(barrier);
+            ConditionalBarrier innerBarrier = ConditionalBarrier.factory().makeSimulatable(new GridItem(4, 3));
+            innerBarrier.setCondition(new BlockExists(grid, new GridItem(2, 14)));
+            inner.add(innerBarrier);
+            RandomExplorer.seedStreams(grid.getSimulatables(), 77);
+            return grid;
+        };
+        assertEngineMatchesObjects(CorridorEngine::new, watchedNestedGrid, 120);
+        assertAdvanceMatchesObjects(watchedNestedGrid, new int[]{4, 31, 0, 1, 84});
+    }
+
+    private static Grid conditionalCorridorGrid(long seed) {
+        Grid grid = corridorGrid();
+        Random random = new Random(seed);
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < 20; i++) {
+            ConditionalBarrier barrier = ConditionalBarrier.factory().makeSimulatable(new GridItem(random.nextInt(48), random.nextInt(48)));
+            GridItem corner = new GridItem(random.nextInt(56) - 4, random.nextInt(56) - 4);
+            int width = 1 + random.nextInt(12);
+            int height = 1 + random.nextInt(12);
+            barrier.setCondition(switch (i % 6) {
+                case 0 -> new RegionEmpty(grid, corner, width, height);
+                case 1 -> new RegionCountAtLeast(grid, corner, width, height, 1 + random.nextInt(3));
+                case 2 -> new BlockExists(grid, corner);
+                case 3 -> new NotBlockExists(grid, corner);
+                case 4 -> new True();
+                default -> new False();
+            });
+            grid.remove(barrier.getLocation());
+            grid.add(barrier);
+        }
+        for (int i = 0; i < 30; i++) {
+            GridItem location = new GridItem(random.nextInt(48), random.nextInt(48));
+            if (i % 3 == 0) {
+                Settings.newBlockDirection = directions[random.nextInt(4)];
+                grid.add(WeakExplorer.factory().makeSimulatable(location));
+            } else {
+                grid.add(RandomExplorer.factory(directions[random.nextInt(4)]).makeSimulatable(location));
+            }
+        }
+        RandomExplorer.seedStreams(grid.getSimulatables(), seed);
+        return grid;
+    }
+
+    private static void assertAdvanceMatchesObjects(Supplier<Grid> scenario, int[] chunks) {
+        Grid objectGrid = scenario.get();
+        Grid engineGrid = scenario.get();
+        Set<Simulatable> objectSet = nestedMasterSet(objectGrid);
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        GridEngine engine = new CorridorEngine(engineGrid);
+        for (int steps : chunks) {
+            for (int i = 0; i < steps; i++) {
+                semanticStep.executeOneStep(objectSet);
+                stateSwitchStep.nextStep(objectSet);
+                grids(objectGrid).forEach(Grid::updateMapAndDeduplicate);
+            }
+            engine.advance(steps);
+            engine.store(engineGrid);
+            List<Grid> objectGrids = grids(objectGrid);
+            List<Grid> engineGrids = grids(engineGrid);
+            for (int j = 0; j < objectGrids.size(); j++) {
+                assertEquals(describe(objectGrids.get(j)), describe(engineGrids.get(j)));
+            }
+            assertEquals(stateHash(objectGrid), engine.stateHash());
+        }
+    }
+
+    private static Grid corridorGrid() {
+        Grid grid = randomGrid(48, 24);
+        for (int i = 0; i < 48; i += 5) {
+            grid.setExport(i, Direction.values()[i % 4], true);
+        }
+        return grid;
+    }
+
+    private static void assertEngineMatchesObjects(Function<Grid, GridEngine> engineFactory) {
+        assertEngineMatchesObjects(engineFactory, () -> {
+            Grid grid = new Grid(3, 3);
+            grid.add(SplitExplorer.factory(Direction.RIGHT).makeSimulatable(new GridItem(0, 1)));
+            grid.add(SplitExplorer.factory(Direction.UP).makeSimulatable(new GridItem(1, 0)));
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(2, 1)));
+            return grid;
+        }, 10);
+        assertEngineMatchesObjects(engineFactory, () -> {
+            Grid grid = new Grid(5, 5);
+            grid.add(SplitExplorer.factory(Direction.UP).makeSimulatable(new GridItem(1, 1)));
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(1, 3)));
+            grid.add(SplitExplorer.factory(Direction.LEFT).makeSimulatable(new GridItem(2, 2)));
+            return grid;
+        }, 5);
+        assertEngineMatchesObjects(engineFactory, () -> {
+            Grid grid = new Grid(5, 1);
+            grid.add(SplitExplorer.factory(Direction.RIGHT).makeSimulatable(new GridItem(0, 0)));
+            grid.add(SplitExplorer.factory(Direction.RIGHT).makeSimulatable(new GridItem(1, 0)));
+            return grid;
+        }, 10);
+        assertEngineMatchesObjects(engineFactory, () -> {
+            Grid grid = new Grid(3, 3);
+            grid.setExport(0, Direction.RIGHT, true);
+            grid.add(SplitExplorer.factory(Direction.UP).makeSimulatable(new GridItem(2, 0)));
+            grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(2, 1)));
+            return grid;
+        }, 5);
+        assertEngineMatchesObjects(engineFactory, () -> randomGrid(200, 3000), 20);
+        assertEngineMatchesObjects(engineFactory, () -> randomGrid(64, 400), 30);
+        assertEngineMatchesObjects(engineFactory, () -> {
+            Grid grid = randomGrid(20, 150);
+            Random random = new Random(1904735);
+            for (int i = 0; i < 20; i++) {
+                for (Direction direction : Direction.values()) {
+                    grid.setExport(i, direction, true);
+                }
+                Settings.newBlockDirection = Direction.values()[random.nextInt(4)];
+                grid.add(WeakExplorer.factory().makeSimulatable(new GridItem(random.nextInt(20), random.nextInt(20))));
+            }
+            return grid;
+        }, 50);
+    }
+
+    private static void assertEngineMatchesObjects(Function<Grid, GridEngine> engineFactory, Supplier<Grid> scenario, int steps) {
+        Grid objectGrid = scenario.get();
+        Grid engineGrid = scenario.get();
+        Set<Simulatable> objectSet = nestedMasterSet(objectGrid);
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        GridEngine engine = engineFactory.apply(engineGrid);
+        for (int i = 0; i < steps; i++) {
+            semanticStep.executeOneStep(objectSet);
+            stateSwitchStep.nextStep(objectSet);
+            grids(objectGrid).forEach(Grid::updateMapAndDeduplicate);
+            engine.step();
+            engine.store(engineGrid);
+            assertEquals(grids(objectGrid).stream().mapToLong(grid -> grid.getSimulatables().stream().filter(DirectionalSimulatable.class::isInstance).count()).sum(), engine.size());
+            List<Grid> objectGrids = grids(objectGrid);
+            List<Grid> engineGrids = grids(engineGrid);
+            for (int j = 0; j < objectGrids.size(); j++) {
+                assertEquals(describe(objectGrids.get(j)), describe(engineGrids.get(j)), "step " + (i + 1));
+            }
+            assertEquals(stateHash(objectGrid), engine.stateHash());
+            if (objectGrids.size() == 1) {
+                assertEquals(copyOf(objectGrid).getStateHash(), objectGrid.getStateHash());
+            }
+        }
+    }
+
+    @Test
+    void testJumpToStepWithinCycle() throws InterruptedException {
+        boolean bitboards = Settings.bitboards;
+        Settings.turboSimulation = true;
+        try {
+            for (boolean useBitboards : new boolean[]{false, true}) {
+                Settings.bitboards = useBitboards;
+                Grid grid = periodicGrid();
+                Simulator simulator = new Simulator(grid);
+                simulator.start();
+                try {
+                    long deadline = System.currentTimeMillis() + 10_000;
+                    while (simulator.getStep() < 140 && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    assertEquals(Long.valueOf(70), Settings.detectedPeriod);
+                    assertEquals(Long.valueOf(70), Settings.firstRepeatStep);
+                    for (long step : new long[]{1_000_000_000_007L, 75, 3}) {
+                        synchronized (grid) {
+                            simulator.jumpToStep(step);
+                            assertEquals(step, simulator.getStep());
+                            assertEquals(describe(stepped(periodicGrid(), (int) (step % 70))), describe(grid));
+                        }
+                    }
+                } finally {
+                    simulator.stop();
+                }
+            }
+        } finally {
+            Settings.bitboards = bitboards;
+            Settings.turboSimulation = false;
+        }
+    }
+
+    @Test
+    void testSameStateTellsStatesApart() {
+        Grid grid = periodicGrid();
+        assertTrue(grid.sameState(copyOf(grid)));
+        assertTrue(stepped(periodicGrid(), 70).sameState(grid));
+        assertFalse(stepped(periodicGrid(), 1).sameState(grid));
+        Grid turned = new Grid(10, 7);
+        turned.add(SplitExplorer.factory(Direction.LEFT).makeSimulatable(new GridItem(0, 0)));
+        turned.add(SplitExplorer.factory(Direction.UP).makeSimulatable(new GridItem(5, 3)));
+        assertFalse(turned.sameState(grid));
+    }
+
+    @Test
+    void testNewGridsDrawTheirOwnSeeds() {
+        Grid grid = new Grid(3, 3);
+        assertNotEquals(grid.getRandomSeed(), new Grid(3, 3).getRandomSeed());
+        grid.setRandomSeed(0);
+        assertEquals(0L, copyOf(grid).getRandomSeed());
+        grid.clear(3, 3);
+        assertNotEquals(0L, grid.getRandomSeed());
+    }
+
+    @Test
+    void testTransitCacheMatchesTraversal() {
+        Grid traversedGrid = nestedGrid();
+        Grid cachedGrid = nestedGrid();
+        TransitCache cache = new TransitCache();
+        cache.attach(cachedGrid);
+        Set<Simulatable> traversedSet = nestedMasterSet(traversedGrid);
+        Set<Simulatable> cachedSet = nestedMasterSet(cachedGrid);
+        SemanticSimulationStep semanticStep = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep stateSwitchStep = new SerialStateSwitchSimulationStep();
+        for (int i = 0; i < 150; i++) {
+            semanticStep.executeOneStep(traversedSet);
+            stateSwitchStep.nextStep(traversedSet);
+            grids(traversedGrid).forEach(Grid::updateMapAndDeduplicate);
+            semanticStep.executeOneStep(cachedSet);
+            stateSwitchStep.nextStep(cachedSet);
+            grids(cachedGrid).forEach(Grid::updateMapAndDeduplicate);
+            assertEquals(describe(traversedGrid), describe(cachedGrid));
+        }
+        assertTrue(cache.size() > 0);
+    }
+
+    @Test
+    void testRegistryMatchesSet() {
+        for (Supplier<Grid> scenario : List.<Supplier<Grid>>of(SimulatorTest::nestedGrid, () -> randomGrid(200, 3000))) {
+            Grid setGrid = scenario.get();
+            Grid registryGrid = scenario.get();
+            Set<Simulatable> set = nestedMasterSet(setGrid);
+            SimulatableRegistry registry = new SimulatableRegistry();
+            nestedMasterSet(registryGrid, registry);
+            SemanticSimulationStep semanticStep = new ParallelSemanticSimulationStep();
+            StateSwitchSimulationStep stateSwitchStep = new ParallelStateSwitchSimulationStep();
+            for (int i = 0; i < 60; i++) {
+                semanticStep.executeOneStep(set);
+                stateSwitchStep.nextStep(set);
+                grids(setGrid).forEach(Grid::updateMapAndDeduplicate);
+                semanticStep.executeOneStep(registry);
+                stateSwitchStep.nextStep(registry);
+                registry.forEachChangedGrid(Grid::updateMapAndDeduplicate);
+                registry.compact();
+                assertEquals(grids(setGrid).stream().map(SimulatorTest::describe).toList(), grids(registryGrid).stream().map(SimulatorTest::describe).toList());
+                assertEquals(set.size(), registry.size());
+                assertEquals(registry.size(), registry.extent());
+            }
+        }
+    }
+
+    @Test
+    void testRegistryVisitsEveryChangedGrid() throws InterruptedException {
+        SimulatableRegistry registry = new SimulatableRegistry();
+        List<Grid> grids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            grids.add(new Grid(1, 1));
+        }
+        for (int round = 0; round < 2; round++) {
+            //more grids than the registry has room for in the first round, which it must grow to fit in the second
+            List<Thread> threads = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                List<Grid> part = grids.subList(25 * thread, 25 * (thread + 1));
+                threads.add(Thread.ofPlatform().start(() -> part.forEach(registry::changed)));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Set<Grid> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            registry.forEachChangedGrid(visited::add);
+            assertEquals(grids.size(), visited.size());
+            registry.forEachChangedGrid(grid -> fail("visited a grid twice"));
+        }
+    }
+
+    @Test
+    void testParallelMatchesSerialStepByStep() {
+        assertMatchesSerialStepByStep(ParallelSemanticSimulationStep::new, ParallelStateSwitchSimulationStep::new);
+    }
+
+    @Test
+    void testVirtualMatchesSerialStepByStep() {
+        assertMatchesSerialStepByStep(VirtualSemanticSimulationStep::new, VirtualStateSwitchSimulationStep::new);
+    }
+
+    @Test
+    void testAdaptiveMatchesSerialStepByStep() {
+        assertMatchesSerialStepByStep(AdaptiveSemanticSimulationStep::new, AdaptiveStateSwitchSimulationStep::new);
+    }
+
+    private static void assertMatchesSerialStepByStep(Supplier<SemanticSimulationStep> semanticStep, Supplier<StateSwitchSimulationStep> stateSwitchStep) {
+        assertMatchesSerial(() -> {
+            Grid grid = nestedGrid();
+            new TransitCache().attach(grid);
+            return grid;
+        }, 150, semanticStep.get(), stateSwitchStep.get());
+        assertMatchesSerial(() -> randomGrid(200, 3000), 40, semanticStep.get(), stateSwitchStep.get());
+        assertMatchesSerial(() -> {
+            Grid grid = randomGrid(64, 400);
+            Random random = new Random(1904735);
+            Direction[] directions = Direction.values();
+            for (int i = 0; i < 2000; i++) {
+                grid.add(RandomExplorer.factory(directions[random.nextInt(directions.length)]).makeSimulatable(new GridItem(random.nextInt(64), random.nextInt(64))));
+            }
+            return grid;
+        }, 60, semanticStep.get(), stateSwitchStep.get());
+    }
+
+    /**
+     * Differential harness: simulates two copies of a scenario side by side, one with the serial steps and one with the
+     * given steps, both seeded alike, and requires the state hashes of both to agree after every step.
+     */
+    private static void assertMatchesSerial(Supplier<Grid> scenario, int steps, SemanticSimulationStep semanticStep, StateSwitchSimulationStep stateSwitchStep) {
+        Grid serialGrid = scenario.get();
+        Grid otherGrid = scenario.get();
+        SimulatableRegistry serialSet = new SimulatableRegistry();
+        SimulatableRegistry otherSet = new SimulatableRegistry();
+        nestedMasterSet(serialGrid, serialSet);
+        nestedMasterSet(otherGrid, otherSet);
+        RandomExplorer.seedStreams(serialSet, 1904735);
+        RandomExplorer.seedStreams(otherSet, 1904735);
+        SemanticSimulationStep serialSemantic = new SerialSemanticSimulationStep();
+        StateSwitchSimulationStep serialStateSwitch = new SerialStateSwitchSimulationStep();
+        assertEquals(stateHash(serialGrid), stateHash(otherGrid));
+        for (int i = 0; i < steps; i++) {
+            serialSemantic.executeOneStep(serialSet);
+            serialStateSwitch.nextStep(serialSet);
+            serialSet.forEachChangedGrid(Grid::updateMapAndDeduplicate);
+            serialSet.compact();
+            semanticStep.executeOneStep(otherSet);
+            stateSwitchStep.nextStep(otherSet);
+            otherSet.forEachChangedGrid(Grid::updateMapAndDeduplicate);
+            otherSet.compact();
+            assertEquals(stateHash(serialGrid), stateHash(otherGrid), "step " + (i + 1));
+            assertEquals(serialSet.size(), otherSet.size(), "step " + (i + 1));
+        }
+    }
+
+    private static long stateHash(Grid grid) {
+        long res = 0;
+        for (Grid nested : grids(grid)) {
+            res ^= nested.getStateHash();
+            for (Simulatable simulatable : nested.getSimulatables()) {
+                if (simulatable instanceof SubGrid subGrid) {
+                    res ^= subGrid.getTransitHash();
+                }
+            }
+        }
+        return res;
+    }
+
+    private static Grid nestedGrid() {
+        Grid innermost = exportedGrid(3);
+        innermost.add(DefaultBarrier.factory().makeSimulatable(new GridItem(1, 1)));
+        Grid inner = exportedGrid(7);
+        inner.add(new SubGrid(new GridItem(2, 2), innermost, null));
+        inner.add(DefaultBarrier.factory().makeSimulatable(new GridItem(1, 5)));
+        inner.add(DefaultBarrier.factory().makeSimulatable(new GridItem(5, 0)));
+        Grid grid = new Grid(17, 17);
+        grid.add(new SubGrid(new GridItem(5, 5), inner, null));
+        grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(4, 7)));
+        grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(9, 12)));
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        for (int i = 0; i < 40; i++) {
+            GridItem location = new GridItem(random.nextInt(17), random.nextInt(17));
+            if (grid.getAtStrictGridLocation(location).isEmpty() && (location.x() < 4 || location.x() > 12 || location.y() < 4 || location.y() > 12)) {
+                grid.add(SplitExplorer.factory(directions[random.nextInt(directions.length)]).makeSimulatable(location));
+            }
+        }
+        return grid;
+    }
+
+    private static Grid exportedGrid(int size) {
+        Grid grid = new Grid(size, size);
+        for (Direction direction : Direction.values()) {
+            for (int i = 0; i < size; i++) {
+                grid.setExport(i, direction, true);
+            }
+        }
+        return grid;
+    }
+
+    private static List<Grid> grids(Grid grid) {
+        List<Grid> res = new ArrayList<>();
+        res.add(grid);
+        for (Simulatable simulatable : grid.getSimulatables()) {
+            if (simulatable instanceof SubGrid subGrid) {
+                res.addAll(grids(subGrid.getSubgrid()));
+            }
+        }
+        return res;
+    }
+
+    private static Set<Simulatable> nestedMasterSet(Grid grid) {
+        return nestedMasterSet(grid, Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>())));
+    }
+
+    private static Set<Simulatable> nestedMasterSet(Grid grid, Set<Simulatable> masterSet) {
+        for (Grid nested : grids(grid)) {
+            for (Simulatable simulatable : nested.getSimulatables()) {
+                simulatable.setMasterSet(masterSet);
+                if (!simulatable.isStatic()) {
+                    masterSet.add(simulatable);
+                }
+            }
+        }
+        return masterSet;
+    }
+
+    private static Grid periodicGrid() {
+        Grid grid = new Grid(10, 7);
+        grid.add(SplitExplorer.factory(Direction.RIGHT).makeSimulatable(new GridItem(0, 0)));
+        grid.add(SplitExplorer.factory(Direction.UP).makeSimulatable(new GridItem(5, 3)));
+        return grid;
+    }
+
+    private static Grid stepped(Grid grid, int steps) {
+        Set<Simulatable> masterSet = masterSet(grid);
+        for (int i = 0; i < steps; i++) {
+            new SerialSemanticSimulationStep().executeOneStep(masterSet);
+            new SerialStateSwitchSimulationStep().nextStep(masterSet);
+            grid.updateMapAndDeduplicate();
+        }
+        return grid;
+    }
+
+    private static Grid copyOf(Grid grid) {
+        Grid res = new Grid(grid.getWidth(), grid.getHeight());
+        res.copy(grid);
+        return res;
+    }
+
+    private static Grid randomGrid(int size, int explorers) {
+        Random random = new Random(1904735);
+        Direction[] directions = Direction.values();
+        Grid grid = new Grid(size, size);
+        for (int i = 0; i < explorers; i++) {
+            grid.add(SplitExplorer.factory(directions[random.nextInt(directions.length)]).makeSimulatable(new GridItem(random.nextInt(size), random.nextInt(size))));
+            if (i % 4 == 0) {
+                grid.add(DefaultBarrier.factory().makeSimulatable(new GridItem(random.nextInt(size), random.nextInt(size))));
+            }
+        }
+        return grid;
+    }
+
+    private static Set<Simulatable> masterSet(Grid grid) {
+        Set<Simulatable> masterSet = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        masterSet.addAll(grid.getSimulatables());
+        masterSet.forEach(simulatable -> simulatable.setMasterSet(masterSet));
+        return masterSet;
+    }
+
+    private static List<String> describe(Grid grid) {
+        List<String> res = new ArrayList<>();
+        for (Simulatable simulatable : grid.getSimulatables()) {
+            String direction = simulatable instanceof DirectionalSimulatable directional ? directional.getDirection().toString() : "";
+            res.add(simulatable.getClass().getSimpleName() + simulatable.getLocation() + direction);
+        }
+        Collections.sort(res);
+        return res;
+    }
 }